@@ -0,0 +1,304 @@
+package quasiorder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * A square matrix of bits, i.e. a relation on Order elements, where entry(i, j) holds iff i is related to j.
+ *
+ * It holds the same pairs as a BitSet indexed by {@link FixOrderSet#ToSerialIndex}, but each row starts on a
+ *  word boundary, so rows can be combined, compared and searched a word (64 columns) at a time.
+ *  The bits of a row beyond Order are always clear.
+ */
+public class BitMatrix
+{
+    public final int Order;
+    private final int rowWords;
+    private final long[] words;
+
+    public BitMatrix(int order)
+    {
+        this.Order = order;
+        this.rowWords = (order + Long.SIZE - 1) / Long.SIZE;
+        this.words = new long[order * rowWords];
+    }
+
+    /**
+     * @param relation A relation, indexed by {@link FixOrderSet#ToSerialIndex}.
+     * @param order The number of elements of the relation.
+     * @return The relation as a matrix.
+     */
+    public static BitMatrix FromBitSet(BitSet relation, int order)
+    {
+        BitMatrix matrix = new BitMatrix(order);
+        for (int k=relation.nextSetBit(0); k>=0 && k<order*order; k=relation.nextSetBit(k+1))
+            matrix.Set(k / order, k % order);
+        return matrix;
+    }
+
+    /** @return The relation, indexed by {@link FixOrderSet#ToSerialIndex}. */
+    public BitSet ToBitSet()
+    {
+        BitSet relation = new BitSet(Order * Order);
+        for (int i=0;i<Order;i++)
+            for (int j=NextSetBit(i, 0); j>=0; j=NextSetBit(i, j+1))
+                relation.set(FixOrderSet.ToSerialIndex(i, j, Order));
+        return relation;
+    }
+
+    public boolean Get(int i, int j)
+    {
+        return (words[i * rowWords + j / Long.SIZE] & (1L << j)) != 0;
+    }
+
+    public void Set(int i, int j)
+    {
+        words[i * rowWords + j / Long.SIZE] |= (1L << j);
+    }
+
+    /** @return The number of related pairs. */
+    public int Cardinality()
+    {
+        int cardinality = 0;
+        for (long word : words) cardinality += Long.bitCount(word);
+        return cardinality;
+    }
+
+    /** Or row b of another matrix (of the same order) into row a of this one. */
+    public void OrRow(int a, BitMatrix other, int b)
+    {
+        for (int w=0;w<rowWords;w++) words[a * rowWords + w] |= other.words[b * rowWords + w];
+    }
+
+    /** Or words (as BitSet.toLongArray(), at least as many as a row holds) into row a. */
+    public void OrRow(int a, long[] row)
+    {
+        for (int w=0;w<rowWords;w++) words[a * rowWords + w] |= row[w];
+    }
+
+    /** And row b of another matrix (of the same order) into row a of this one. */
+    public void AndRow(int a, BitMatrix other, int b)
+    {
+        for (int w=0;w<rowWords;w++) words[a * rowWords + w] &= other.words[b * rowWords + w];
+    }
+
+    /** @return Whether row a of this matrix is a subset of row b of another (of the same order). */
+    public boolean IsRowSubsetOf(int a, BitMatrix other, int b)
+    {
+        for (int w=0;w<rowWords;w++)
+            if ((words[a * rowWords + w] & ~other.words[b * rowWords + w]) != 0) return false;
+        return true;
+    }
+
+    /** @return The first column j >= from where entry(i, j) is set, or -1 if there is none. */
+    public int NextSetBit(int i, int from)
+    {
+        return NextSetBitOfAndNot(i, i, -1, from);
+    }
+
+    /** @return The first column j >= from where entry(a, j) and entry(b, j) are both set, or -1 if there is none. */
+    public int NextSetBitOfAnd(int a, int b, int from)
+    {
+        return NextSetBitOfAndNot(a, b, -1, from);
+    }
+
+    /** @return The last column j <= from where entry(a, j) and entry(b, j) are both set, or -1 if there is none. */
+    public int PreviousSetBitOfAnd(int a, int b, int from)
+    {
+        return PreviousSetBitOfAndNot(a, b, -1, from);
+    }
+
+    /**
+     * @param c The row whose columns to exclude, or -1 to exclude none.
+     * @return The first column j >= from where entry(a, j) and entry(b, j) are set but entry(c, j) is not,
+     *  or -1 if there is none.
+     */
+    public int NextSetBitOfAndNot(int a, int b, int c, int from)
+    {
+        if (from < 0) from = 0;
+        if (from >= Order) return -1;
+
+        int w = from / Long.SIZE;
+        long word = WordOf(a, b, c, w) & (-1L << from);
+        while (true)
+        {
+            if (word != 0) return w * Long.SIZE + Long.numberOfTrailingZeros(word);
+            if (++w == rowWords) return -1;
+            word = WordOf(a, b, c, w);
+        }
+    }
+
+    /**
+     * @param c The row whose columns to exclude, or -1 to exclude none.
+     * @return The last column j <= from where entry(a, j) and entry(b, j) are set but entry(c, j) is not,
+     *  or -1 if there is none.
+     */
+    public int PreviousSetBitOfAndNot(int a, int b, int c, int from)
+    {
+        if (from < 0) return -1;
+        if (from >= Order) from = Order - 1;
+
+        int w = from / Long.SIZE;
+        long word = WordOf(a, b, c, w) & (-1L >>> (Long.SIZE - 1 - from % Long.SIZE));
+        while (true)
+        {
+            if (word != 0) return (w + 1) * Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+            if (w-- == 0) return -1;
+            word = WordOf(a, b, c, w);
+        }
+    }
+
+    private long WordOf(int a, int b, int c, int w)
+    {
+        long word = words[a * rowWords + w] & words[b * rowWords + w];
+        return (c < 0) ? word : word & ~words[c * rowWords + w];
+    }
+
+    /**
+     * @return The transpose (converse relation), where entry(j, i) is set iff entry(i, j) is set here.
+     *  Transposed a 64 x 64 block of words at a time.
+     */
+    public BitMatrix Transpose()
+    {
+        BitMatrix transpose = new BitMatrix(Order);
+        long[] block = new long[Long.SIZE];
+        for (int bi=0;bi<rowWords;bi++)
+        {
+            for (int bj=0;bj<rowWords;bj++)
+            {
+                for (int r=0;r<Long.SIZE;r++)
+                {
+                    int row = bi * Long.SIZE + r;
+                    block[r] = (row < Order) ? words[row * rowWords + bj] : 0L;
+                }
+
+                TransposeBlock(block);
+
+                for (int r=0;r<Long.SIZE;r++)
+                {
+                    int row = bj * Long.SIZE + r;
+                    if (row < Order) transpose.words[row * rowWords + bi] = block[r];
+                }
+            }
+        }
+        return transpose;
+    }
+
+    private static final long[] BLOCK_MASKS = {
+            0x00000000FFFFFFFFL, 0x0000FFFF0000FFFFL, 0x00FF00FF00FF00FFL,
+            0x0F0F0F0F0F0F0F0FL, 0x3333333333333333L, 0x5555555555555555L };
+
+    /** Transpose a 64 x 64 block in place, by swapping its off-diagonal quarters, then theirs, and so on. */
+    private static void TransposeBlock(long[] block)
+    {
+        for (int m=0, j=Long.SIZE/2; j>0; m++, j>>=1)
+        {
+            long mask = BLOCK_MASKS[m];
+            for (int k=0;k<Long.SIZE;k=(k + j + 1) & ~j)
+            {
+                long t = ((block[k] >>> j) ^ block[k + j]) & mask;
+                block[k] ^= t << j;
+                block[k + j] ^= t;
+            }
+        }
+    }
+
+    /**
+     * @return The transitive reduction (Hasse diagram) of this relation, which must be a quasi-order
+     *  (reflexive and transitive). Each class of equivalent elements is represented by its first element,
+     *  and entry(i, j) is set iff representative j covers representative i: i < j, with nothing strictly between.
+     *  The other elements of a class are joined to its representative in a cycle, each related to the next and the
+     *  last to the first. So the reduction has no loops, and its transitive closure is this relation
+     *  (but for the loops of single elements).
+     */
+    public BitMatrix TransitiveReduction()
+    {
+        BitMatrix reduction = new BitMatrix(Order);
+        BitMatrix converse = Transpose();
+
+        // the representatives, and the size of each up-set.
+        long[] representatives = new long[rowWords];
+        final int[] upSize = new int[Order];
+        for (int i=0;i<Order;i++)
+        {
+            int first = NextSetBitOfAnd(i, converse, i, 0);
+            if (first == i || first == -1) representatives[i / Long.SIZE] |= 1L << i;
+            for (int w=0;w<rowWords;w++) upSize[i] += Long.bitCount(words[i * rowWords + w]);
+        }
+
+        // a smaller element has a larger up-set, so comes before every element above it.
+        Integer[] byUpSet = new Integer[Order];
+        for (int i=0;i<Order;i++) byUpSet[i] = i;
+        Arrays.sort(byUpSet, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return upSize[b] - upSize[a];
+            }
+        });
+
+        long[] row = new long[rowWords];
+        for (int i=0;i<Order;i++)
+        {
+            if ((representatives[i / Long.SIZE] & (1L << i)) == 0) continue;
+
+            // the cycle through the class of i.
+            int last = i;
+            for (int j=NextSetBitOfAnd(i, converse, i, i + 1); j>=0; j=NextSetBitOfAnd(i, converse, i, j + 1))
+            {
+                reduction.Set(last, j);
+                last = j;
+            }
+            if (last != i) reduction.Set(last, i);
+
+            // the representatives strictly above i, less those above another: taken smallest first,
+            //  an element is still in the row iff it is a cover, and then the elements above it are removed.
+            for (int w=0;w<rowWords;w++)
+                row[w] = words[i * rowWords + w] & ~converse.words[i * rowWords + w] & representatives[w];
+
+            for (int j : byUpSet)
+            {
+                if ((row[j / Long.SIZE] & (1L << j)) == 0) continue;
+
+                reduction.Set(i, j);
+                for (int w=0;w<rowWords;w++) row[w] &= ~words[j * rowWords + w];
+            }
+        }
+        return reduction;
+    }
+
+    /** @return The first column k >= from where entry(a, k) is set here and entry(b, k) is set in the other matrix, or -1. */
+    private int NextSetBitOfAnd(int a, BitMatrix other, int b, int from)
+    {
+        if (from >= Order) return -1;
+
+        int w = from / Long.SIZE;
+        long word = words[a * rowWords + w] & other.words[b * rowWords + w] & (-1L << from);
+        while (true)
+        {
+            if (word != 0) return w * Long.SIZE + Long.numberOfTrailingZeros(word);
+            if (++w == rowWords) return -1;
+            word = words[a * rowWords + w] & other.words[b * rowWords + w];
+        }
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return (other instanceof BitMatrix) && this.Order == ((BitMatrix)other).Order
+                && Arrays.equals(this.words, ((BitMatrix)other).words);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString()
+    {
+        return ToBitSet().toString();
+    }
+}
@@ -0,0 +1,459 @@
+package quasiorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Computes everything a {@link Group} is built from, given only its multiplication (Cayley) table:
+ *  its subgroups, their conjugacy classes (and so which are normal), and its outer automorphisms.
+ *  This replaces the export by GAP (see gap-script.g) for groups small enough to hold their table.
+ *
+ * Sets of elements are BitSets throughout.
+ *  Every subgroup is generated by the cyclic subgroups it contains, so the subgroups are found by joining each
+ *  subgroup found so far with each cyclic subgroup it does not contain, until no new subgroup turns up.
+ *  An automorphism is fixed by its images of a chain of generators of the group, and is found by a backtracking
+ *  search over those images. Only generators of the automorphism group are kept: working up a stabilizer chain,
+ *  one automorphism for each image of each generator which the automorphisms found so far cannot reach.
+ *  Of those, the inner ones are dropped, as they fix every fix-order. Group closes the rest into the group they span,
+ *  as it does for the generators in an input file.
+ */
+class CayleyGroup
+{
+    private final int numElem;
+    private final int[][] table;
+    private final int[] inverses;
+    private final int[] orders;
+
+    private CayleyGroup(int[][] table)
+    {
+        this.numElem = table.length;
+        this.table = table;
+        this.inverses = new int[numElem];
+        this.orders = new int[numElem];
+
+        // the powers of an element reach the identity only in a group.
+        ValidateTable();
+        for (int x=0;x<numElem;x++)
+        {
+            for (int y=0;y<numElem;y++)
+                if (table[x][y] == 0) inverses[x] = y;
+
+            int order = 1;
+            for (int power = x; power != 0; power = table[power][x]) order++;
+            orders[x] = order;
+        }
+    }
+
+    /**
+     * Create a group from its multiplication table.
+     *
+     * @param table The table, where entry(x, y) is the index of the product xy.
+     * @param elementNames The name of each element, or null to name each by its index.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, rather than
+     *  keeping the whole table. See {@link GroupUtil#LazyIntersections}.
+     * @throws IllegalArgumentException When the table is not the multiplication table of a group.
+     * @return A fully processed group, whose first element is the identity.
+     */
+    public static Group ToGroup(int[][] table, String[] elementNames, boolean lazyIntersections) throws IllegalArgumentException
+    {
+        int numElem = table.length;
+        if (elementNames == null)
+        {
+            elementNames = new String[numElem];
+            for (int x=0;x<numElem;x++) elementNames[x] = Integer.toString(x);
+        }
+        if (elementNames.length != numElem)
+            throw new IllegalArgumentException(String.format("%d names for %d elements", elementNames.length, numElem));
+
+        // Group expects the identity first.
+        int[] order = IdentityFirst(table, IdentityOf(table));
+        int[] position = new int[numElem];
+        for (int x=0;x<numElem;x++) position[order[x]] = x;
+
+        int[][] relabelled = new int[numElem][numElem];
+        String[] names = new String[numElem];
+        for (int x=0;x<numElem;x++)
+        {
+            names[x] = elementNames[order[x]];
+            for (int y=0;y<numElem;y++)
+            {
+                int product = table[order[x]][order[y]];
+                if (product < 0 || product >= numElem)
+                    throw new IllegalArgumentException(String.format("Product %d.%d is not an element", order[x], order[y]));
+                relabelled[x][y] = position[product];
+            }
+        }
+
+        return new CayleyGroup(relabelled).ToGroup(names, lazyIntersections);
+    }
+
+    private Group ToGroup(String[] elementNames, boolean lazyIntersections)
+    {
+        ArrayList<ArrayList<BitSet>> conjugacyClasses = ConjugacyClassesOf(AllSubgroups());
+
+        ArrayList<BitSet> subgroupMasks = new ArrayList<BitSet>();
+        int[] conjugacyClassSizes = new int[conjugacyClasses.size()];
+        for (int m=0;m<conjugacyClassSizes.length;m++)
+        {
+            subgroupMasks.addAll(conjugacyClasses.get(m));
+            conjugacyClassSizes[m] = conjugacyClasses.get(m).size();
+        }
+
+        String[] subgroupNames = new String[subgroupMasks.size()];
+        for (int s=0;s<subgroupNames.length;s++)
+        {
+            StringBuilder subgroupName = new StringBuilder();
+            BitSet subgroup = subgroupMasks.get(s);
+            for (int x=subgroup.nextSetBit(0); x>=0; x=subgroup.nextSetBit(x+1))
+            {
+                subgroupName.append(elementNames[x]);
+                subgroupName.append(' ');
+            }
+            subgroupNames[s] = subgroupName.toString().trim();
+        }
+
+        ArrayList<int[]> outerGenerators = OuterAutomorphismGenerators();
+        int[][][] automorphismGenerators = new int[outerGenerators.size()][][];
+        for (int a=0;a<automorphismGenerators.length;a++)
+        {
+            int[] image = outerGenerators.get(a);
+            automorphismGenerators[a] = new int[numElem][];
+            for (int x=0;x<numElem;x++) automorphismGenerators[a][x] = new int[]{x, image[x]};
+        }
+
+        return Group.FromSubgroups(elementNames, subgroupMasks.toArray(new BitSet[subgroupMasks.size()]), subgroupNames,
+                conjugacyClassSizes, new int[0][][], automorphismGenerators, lazyIntersections);
+    }
+
+    private static int IdentityOf(int[][] table) throws IllegalArgumentException
+    {
+        for (int e=0;e<table.length;e++)
+        {
+            if (table[e].length != table.length)
+                throw new IllegalArgumentException("Table is not square");
+
+            boolean isIdentity = true;
+            for (int x=0;x<table.length && isIdentity;x++)
+                isIdentity = (table[e][x] == x);
+            if (isIdentity) return e;
+        }
+        throw new IllegalArgumentException("Table has no identity");
+    }
+
+    // The elements in order, but with the identity moved to the front.
+    private static int[] IdentityFirst(int[][] table, int identity)
+    {
+        int[] order = new int[table.length];
+        order[0] = identity;
+        for (int x=0, i=1;x<table.length;x++)
+            if (x != identity) order[i++] = x;
+        return order;
+    }
+
+    /** Check that the (relabelled) table is closed, has inverses and is associative, with the identity at 0. */
+    private void ValidateTable() throws IllegalArgumentException
+    {
+        for (int x=0;x<numElem;x++)
+        {
+            BitSet row = new BitSet(numElem);
+            for (int y=0;y<numElem;y++)
+            {
+                if (table[x][y] < 0 || table[x][y] >= numElem)
+                    throw new IllegalArgumentException(String.format("Product %d.%d is not an element", x, y));
+                if (table[x][y] != table[0][table[x][y]] || table[y][0] != y)
+                    throw new IllegalArgumentException("Identity is not two-sided");
+                row.set(table[x][y]);
+            }
+            if (row.cardinality() != numElem)
+                throw new IllegalArgumentException(String.format("Element %d has no inverse", x));
+        }
+
+        for (int x=0;x<numElem;x++)
+            for (int y=0;y<numElem;y++)
+                for (int z=0;z<numElem;z++)
+                    if (table[table[x][y]][z] != table[x][table[y][z]])
+                        throw new IllegalArgumentException(String.format("Table is not associative at %d.%d.%d", x, y, z));
+    }
+
+    /** @return The subgroup generated by the given elements. */
+    private BitSet SubgroupGeneratedBy(int[] generators, int numGenerators)
+    {
+        BitSet subgroup = new BitSet(numElem);
+        int[] queue = new int[numElem];
+        int head = 0, tail = 0;
+
+        subgroup.set(0);
+        queue[tail++] = 0;
+        while (head < tail)
+        {
+            int x = queue[head++];
+            for (int i=0;i<numGenerators;i++)
+            {
+                int y = table[x][generators[i]];
+                if (subgroup.get(y)) continue;
+
+                subgroup.set(y);
+                queue[tail++] = y;
+            }
+        }
+        return subgroup;
+    }
+
+    /**
+     * Find every subgroup, by joining each subgroup found so far with each cyclic subgroup it does not contain.
+     * @return The subgroups, in order of discovery. The first is the trivial subgroup.
+     */
+    private ArrayList<BitSet> AllSubgroups()
+    {
+        // the cyclic subgroups, each by one element which generates it.
+        ArrayList<Integer> cyclicGenerators = new ArrayList<Integer>();
+        HashMap<BitSet, Integer> subgroupIndex = new HashMap<BitSet, Integer>();
+        ArrayList<BitSet> subgroups = new ArrayList<BitSet>();
+        ArrayList<int[]> subgroupGenerators = new ArrayList<int[]>();
+        for (int x=0;x<numElem;x++)
+        {
+            int[] generators = (x == 0) ? new int[0] : new int[]{x};
+            BitSet cyclic = SubgroupGeneratedBy(generators, generators.length);
+            if (subgroupIndex.containsKey(cyclic)) continue;
+
+            subgroupIndex.put(cyclic, subgroups.size());
+            subgroups.add(cyclic);
+            subgroupGenerators.add(generators);
+            if (x != 0) cyclicGenerators.add(x);
+        }
+
+        int[] joinGenerators = new int[numElem];
+        for (int s=0;s<subgroups.size();s++)
+        {
+            BitSet subgroup = subgroups.get(s);
+            int[] generators = subgroupGenerators.get(s);
+            System.arraycopy(generators, 0, joinGenerators, 0, generators.length);
+
+            for (int c : cyclicGenerators)
+            {
+                if (subgroup.get(c)) continue;
+
+                joinGenerators[generators.length] = c;
+                BitSet join = SubgroupGeneratedBy(joinGenerators, generators.length + 1);
+                if (subgroupIndex.containsKey(join)) continue;
+
+                subgroupIndex.put(join, subgroups.size());
+                subgroups.add(join);
+                subgroupGenerators.add(Arrays.copyOf(joinGenerators, generators.length + 1));
+            }
+        }
+        return subgroups;
+    }
+
+    /** @return The subgroup {g x g^-1 : x in subgroup}. */
+    private BitSet ConjugateOf(BitSet subgroup, int g)
+    {
+        BitSet conjugate = new BitSet(numElem);
+        for (int x=subgroup.nextSetBit(0); x>=0; x=subgroup.nextSetBit(x+1))
+            conjugate.set(table[table[g][x]][inverses[g]]);
+        return conjugate;
+    }
+
+    /**
+     * Partition the subgroups into conjugacy classes.
+     * @return The classes, in order of the size of their subgroups (so the trivial subgroup is first, and the
+     *  whole group last), each holding its subgroups in order of discovery.
+     */
+    private ArrayList<ArrayList<BitSet>> ConjugacyClassesOf(ArrayList<BitSet> subgroups)
+    {
+        ArrayList<BitSet> bySize = new ArrayList<BitSet>(subgroups);
+        Collections.sort(bySize, new Comparator<BitSet>()
+        {
+            public int compare(BitSet o1, BitSet o2)
+            {
+                return o1.cardinality() - o2.cardinality();
+            }
+        });
+
+        HashMap<BitSet, Integer> subgroupIndex = GroupUtil.IndexSubgroups(bySize.toArray(new BitSet[bySize.size()]));
+        boolean[] isClassified = new boolean[bySize.size()];
+        ArrayList<ArrayList<BitSet>> conjugacyClasses = new ArrayList<ArrayList<BitSet>>();
+        for (int s=0;s<bySize.size();s++)
+        {
+            if (isClassified[s]) continue;
+
+            // the conjugates of a subgroup are all of its size, so they follow it in bySize.
+            ArrayList<BitSet> conjugacyClass = new ArrayList<BitSet>();
+            for (int g=0;g<numElem;g++)
+            {
+                int conjugate = subgroupIndex.get(ConjugateOf(bySize.get(s), g));
+                if (isClassified[conjugate]) continue;
+
+                isClassified[conjugate] = true;
+                conjugacyClass.add(bySize.get(conjugate));
+            }
+            conjugacyClasses.add(conjugacyClass);
+        }
+        return conjugacyClasses;
+    }
+
+    /**
+     * Choose generators of the group, each outside the subgroup generated by the ones before it
+     *  (preferring elements of larger order, so that there are few of them).
+     */
+    private int[] GeneratorChain()
+    {
+        Integer[] byOrder = new Integer[numElem];
+        for (int x=0;x<numElem;x++) byOrder[x] = x;
+        Arrays.sort(byOrder, new Comparator<Integer>()
+        {
+            public int compare(Integer o1, Integer o2)
+            {
+                return orders[o2] - orders[o1];
+            }
+        });
+
+        int[] chain = new int[numElem];
+        int chainLength = 0;
+        BitSet generated = SubgroupGeneratedBy(chain, 0);
+        for (int x : byOrder)
+        {
+            if (generated.get(x)) continue;
+
+            chain[chainLength++] = x;
+            generated = SubgroupGeneratedBy(chain, chainLength);
+        }
+        return Arrays.copyOf(chain, chainLength);
+    }
+
+    /**
+     * Extend the map of the first k generators of the chain onto the given images to the subgroup they generate.
+     * @return The map, with -1 for each element outside the subgroup, or null if there is no such injective homomorphism.
+     */
+    private int[] HomomorphismOn(int[] chain, int[] images, int k)
+    {
+        int[] map = new int[numElem];
+        Arrays.fill(map, -1);
+        BitSet used = new BitSet(numElem);
+        int[] queue = new int[numElem];
+        int head = 0, tail = 0;
+
+        map[0] = 0;
+        used.set(0);
+        queue[tail++] = 0;
+        while (head < tail)
+        {
+            int x = queue[head++];
+            for (int i=0;i<k;i++)
+            {
+                int y = table[x][chain[i]];
+                int image = table[map[x]][images[i]];
+                if (map[y] == -1)
+                {
+                    if (used.get(image)) return null;
+
+                    map[y] = image;
+                    used.set(image);
+                    queue[tail++] = y;
+                }
+                else if (map[y] != image) return null;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Search for an automorphism mapping the first k generators of the chain onto the given images.
+     * @return The image of each element under the first such automorphism found, or null if there is none.
+     */
+    private int[] ExtendAutomorphism(int[] chain, int[] images, int k)
+    {
+        int[] map = HomomorphismOn(chain, images, k);
+        if (map == null || k == chain.length) return map;
+
+        BitSet imageOfSubgroup = new BitSet(numElem);
+        for (int x=0;x<numElem;x++)
+            if (map[x] != -1) imageOfSubgroup.set(map[x]);
+
+        // the next generator is outside the subgroup, so its image must be outside the image of the subgroup.
+        for (int c=0;c<numElem;c++)
+        {
+            if (orders[c] != orders[chain[k]] || imageOfSubgroup.get(c)) continue;
+
+            images[k] = c;
+            int[] automorphism = ExtendAutomorphism(chain, images, k + 1);
+            if (automorphism != null) return automorphism;
+        }
+        return null;
+    }
+
+    /** @return The orbit of an element under the group generated by the automorphisms. */
+    private BitSet OrbitOf(int x, ArrayList<int[]> automorphisms)
+    {
+        BitSet orbit = new BitSet(numElem);
+        int[] queue = new int[numElem];
+        int head = 0, tail = 0;
+
+        orbit.set(x);
+        queue[tail++] = x;
+        while (head < tail)
+        {
+            int y = queue[head++];
+            for (int[] automorphism : automorphisms)
+            {
+                int z = automorphism[y];
+                if (orbit.get(z)) continue;
+
+                orbit.set(z);
+                queue[tail++] = z;
+            }
+        }
+        return orbit;
+    }
+
+    /**
+     * Find generators of the automorphism group, up the stabilizer chain of the generators of the group:
+     *  at level k, the automorphisms which fix the first k generators must map generator k onto each point of its orbit.
+     *  Levels are visited from the last, so the orbit at level k can be taken under all the automorphisms found so far.
+     * @return The image of each element under each generator which is not an inner automorphism.
+     */
+    private ArrayList<int[]> OuterAutomorphismGenerators()
+    {
+        int[] chain = GeneratorChain();
+        ArrayList<int[]> generators = new ArrayList<int[]>();
+        for (int level=chain.length-1;level>=0;level--)
+        {
+            int[] images = Arrays.copyOf(chain, chain.length);
+            BitSet orbit = OrbitOf(chain[level], generators);
+            for (int c=0;c<numElem;c++)
+            {
+                if (orbit.get(c) || orders[c] != orders[chain[level]]) continue;
+
+                images[level] = c;
+                int[] automorphism = ExtendAutomorphism(chain, images, level + 1);
+                if (automorphism == null) continue;
+
+                generators.add(automorphism);
+                orbit = OrbitOf(chain[level], generators);
+            }
+        }
+
+        ArrayList<int[]> outerGenerators = new ArrayList<int[]>();
+        for (int[] automorphism : generators)
+            if (!IsInner(automorphism, chain))
+                outerGenerators.add(automorphism);
+        return outerGenerators;
+    }
+
+    /** @return Whether the automorphism is conjugation by some element (it is enough to check the generators). */
+    private boolean IsInner(int[] automorphism, int[] chain)
+    {
+        for (int g=0;g<numElem;g++)
+        {
+            boolean isConjugation = true;
+            for (int i=0;i<chain.length && isConjugation;i++)
+                isConjugation = (automorphism[chain[i]] == table[table[g][chain[i]]][inverses[g]]);
+            if (isConjugation) return true;
+        }
+        return false;
+    }
+}
@@ -6,28 +6,76 @@ import static quasiorder.FixOrderSet.ToSerialIndex;
 
 // Is a BitSet which is not expected to be modified any further,
 //  so can be used to cache cardinality.
+// Fix-orders of a group hold their relation on its element classes (see FixOrderSet.BuildClassRelation),
+//  while the Cardinality is always that of the relation on elements.
+// The Fingerprint is a 64-bit hash of the relation words, so that equal relations need only be compared
+//  when their fingerprints match.
 public class FixOrder implements Comparable<FixOrder>
 {
     public final BitSet Relation;
     public final int Cardinality;
+    public final long Fingerprint;
     public final boolean isFaithful;
     public final boolean isNormal;
 
-    public static FixOrder FromRelation(BitSet relation, BitSet familyMask, Group inputGroup)
+    public static FixOrder FromRelation(BitSet classRelation, BitSet familyMask, Group inputGroup)
     {
         boolean isNormal = IsNormal(familyMask, inputGroup.IsSubgroupNormal);
-        boolean isFaithful = IsFaithful(relation, inputGroup.NumElements);
-        return new FixOrder(relation, isFaithful, isNormal);
+        // the identity is in a class of its own (as the only element of the trivial subgroup).
+        boolean isFaithful = inputGroup.ElementClassSizes[0] == 1 && IsFaithful(classRelation, inputGroup.NumElementClasses);
+        return new FixOrder(classRelation, FixOrderSet.ElementCardinality(inputGroup, classRelation), isFaithful, isNormal);
     }
 
     public FixOrder(BitSet relation, boolean isFaithful, boolean isNormal)
     {
-        this.Cardinality = relation.cardinality();
+        this(relation, relation.cardinality(), isFaithful, isNormal);
+    }
+
+    public FixOrder(BitSet relation, int cardinality, boolean isFaithful, boolean isNormal)
+    {
+        this.Cardinality = cardinality;
         this.Relation = relation;
+        this.Fingerprint = FingerprintOf(relation);
         this.isFaithful = isFaithful;
         this.isNormal = isNormal;
     }
 
+    static long FingerprintOf(BitSet relation)
+    {
+        // trailing zero words are not stored, so equal relations always have the same words.
+        long h = 0x9E3779B97F4A7C15L;
+        for (long word : relation.toLongArray())
+            h = Mix(h ^ word) + 0x9E3779B97F4A7C15L;
+        return Mix(h);
+    }
+
+    // The 64-bit finaliser of MurmurHash3.
+    private static long Mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param relation The words of a relation, as BitSet.toLongArray().
+     * @param other The words of another relation (on the same elements), likewise.
+     * @return Whether the first relation is a subset of the other. Allocates nothing, and stops at the first word
+     *  of the first relation which is not covered.
+     */
+    static boolean IsSubset(long[] relation, long[] other)
+    {
+        // trailing zero words are not stored, so a longer relation has a set bit beyond the other.
+        if (relation.length > other.length) return false;
+
+        for (int w=0;w<relation.length;w++)
+            if ((relation[w] & ~other[w]) != 0) return false;
+        return true;
+    }
+
     static boolean IsFaithful(BitSet rel, int numElem)
     {
        int nextBit = rel.nextSetBit(1);
@@ -49,13 +97,14 @@ public class FixOrder implements Comparable<FixOrder>
     @Override
     public boolean equals(Object other)
     {
-        return ((other instanceof FixOrder) && this.Relation.equals(((FixOrder)other).Relation));
+        return ((other instanceof FixOrder) && this.Fingerprint == ((FixOrder)other).Fingerprint
+                && this.Relation.equals(((FixOrder)other).Relation));
     }
 
     @Override
     public int hashCode()
     {
-        return this.Relation.hashCode();
+        return (int)(this.Fingerprint ^ (this.Fingerprint >>> 32));
     }
 
     // requires i <= j
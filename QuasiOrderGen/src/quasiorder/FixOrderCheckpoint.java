@@ -0,0 +1,356 @@
+package quasiorder;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary log of the progress of an enumeration, from which it can be resumed.
+ *
+ * The file starts with a header identifying the group and the range of cursors being enumerated (the whole
+ *  enumeration, or one shard of it), followed by one block per completed sub-range, in order.
+ *  Each block holds the FixOrderSet of the families in its range (its unique fix-orders, with their families),
+ *  so adding the blocks in order rebuilds exactly the set which an uninterrupted run would have built.
+ *  A block which was not completely written (e.g. when the JVM died) fails its checksum, and is discarded.
+ *
+ * Blocks are written by a background thread, so the enumeration continues while the previous block is written.
+ *  Each block is synced to the disk before the next is written, so a block survives the loss of the node
+ *  (not only of the JVM) once it is complete; the enumeration threads never wait for the disk themselves.
+ *  A file whose blocks cover its whole range is complete, and holds the result of (its shard of) the enumeration.
+ *
+ * File: MAGIC, VERSION, group fingerprint, familyWords, maxIter, start cursor, end cursor, then the blocks.
+ * Block: BLOCK_MAGIC, start cursor, end cursor, payload length, payload, CRC32 of payload.
+ * Payload: number of fix-orders, then for each: cardinality, flags, relation words (count, words),
+ *  families (count, familyWords words each).
+ */
+class FixOrderCheckpoint
+{
+    private static final long MAGIC = 0x5175617369436B70L; // "QuasiCkp"
+    private static final int VERSION = 2;
+    private static final int BLOCK_MAGIC = 0x426C6B31; // "Blk1"
+
+    private static final int FAITHFUL_FLAG = 1;
+    private static final int NORMAL_FLAG = 2;
+
+    private static final int HEADER_LENGTH = 8 + 4 + 8 + 4 + 8 + 8 + 8;
+
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private final int familyWords;
+    private final long resumeCursor;
+    private final long end;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private Future<?> pendingWrite = null;
+
+    private FixOrderCheckpoint(FileOutputStream fileOut, int familyWords, long resumeCursor, long end)
+    {
+        this.fileOut = fileOut;
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        this.familyWords = familyWords;
+        this.resumeCursor = resumeCursor;
+        this.end = end;
+    }
+
+    /**
+     * Start a new checkpoint file, replacing any existing one.
+     *
+     * @param file The checkpoint file.
+     * @param inputGroup The group being enumerated.
+     * @param maxIter The number of cursors of the enumeration.
+     * @param start The first cursor of the range to enumerate.
+     * @param end The cursor after the range to enumerate.
+     * @return The checkpoint, ready for the first block.
+     */
+    public static FixOrderCheckpoint Create(File file, Group inputGroup, long maxIter, long start, long end) throws IOException
+    {
+        FileOutputStream fileOut = new FileOutputStream(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(FingerprintOf(inputGroup));
+        out.writeInt(inputGroup.ClassMaskWords);
+        out.writeLong(maxIter);
+        out.writeLong(start);
+        out.writeLong(end);
+        out.flush();
+        fileOut.getFD().sync();
+        return new FixOrderCheckpoint(fileOut, inputGroup.ClassMaskWords, start, end);
+    }
+
+    /**
+     * Read the complete blocks of a checkpoint file, discarding any incomplete block at its end.
+     *
+     * @param file The checkpoint file.
+     * @param inputGroup The group being enumerated.
+     * @param maxIter The number of cursors of the enumeration.
+     * @param start The first cursor of the range to enumerate.
+     * @param end The cursor after the range to enumerate.
+     * @param relations The set to add the fix-orders (and families) of every complete block to, in order.
+     * @return The checkpoint, ready for the block at its {@link #ResumeCursor()}.
+     * @throws IllegalArgumentException When the file is not a checkpoint of this range of this enumeration.
+     */
+    public static FixOrderCheckpoint Resume(File file, Group inputGroup, long maxIter, long start, long end,
+                                            FixOrderSet relations) throws IOException, IllegalArgumentException
+    {
+        long[] progress = ReadBlocks(file, inputGroup, maxIter, start, end, relations);
+
+        // drop any incomplete block, so the next one follows on from the last complete one.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.setLength(progress[1]);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        return new FixOrderCheckpoint(new FileOutputStream(file, true), inputGroup.ClassMaskWords, progress[0], end);
+    }
+
+    /**
+     * Read a complete checkpoint file, without changing it.
+     *
+     * @param file The checkpoint file.
+     * @param inputGroup The group being enumerated.
+     * @param maxIter The number of cursors of the enumeration.
+     * @param start The first cursor of the range the file must hold.
+     * @param end The cursor after the range the file must hold.
+     * @param relations The set to add the fix-orders (and families) of every block to, in order.
+     * @throws IllegalArgumentException When the file is not a complete checkpoint of this range of this enumeration.
+     */
+    public static void ReadComplete(File file, Group inputGroup, long maxIter, long start, long end,
+                                    FixOrderSet relations) throws IOException, IllegalArgumentException
+    {
+        long[] progress = ReadBlocks(file, inputGroup, maxIter, start, end, relations);
+        if (progress[0] < end)
+            throw new IllegalArgumentException(String.format("Checkpoint is incomplete (at %d of [%d, %d)): %s", progress[0], start, end, file));
+    }
+
+    /**
+     * Add the fix-orders of the complete blocks of a checkpoint file to the set.
+     * @return The cursor after the last complete block, and the length of the file up to the end of that block.
+     */
+    private static long[] ReadBlocks(File file, Group inputGroup, long maxIter, long start, long end,
+                                     FixOrderSet relations) throws IOException, IllegalArgumentException
+    {
+        long validLength = HEADER_LENGTH;
+        long cursor = start;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readLong() != MAGIC)
+                throw new IllegalArgumentException("Not a checkpoint file: " + file);
+            if (in.readInt() != VERSION)
+                throw new IllegalArgumentException("Checkpoint is of another version: " + file);
+            if (in.readLong() != FingerprintOf(inputGroup) || in.readInt() != inputGroup.ClassMaskWords || in.readLong() != maxIter)
+                throw new IllegalArgumentException("Checkpoint is of a different group: " + file);
+            if (in.readLong() != start || in.readLong() != end)
+                throw new IllegalArgumentException("Checkpoint is of a different range: " + file);
+
+            while (cursor < end)
+            {
+                byte[] payload = ReadBlock(in, cursor, file.length() - validLength);
+                if (payload == null) break;
+
+                DataInputStream block = new DataInputStream(new ByteArrayInputStream(payload));
+                block.readLong(); // start cursor, checked by ReadBlock
+                cursor = block.readLong();
+                ReadPayload(block, inputGroup.ClassMaskWords, relations);
+                validLength += 4 + 4 + payload.length + 8;
+            }
+        }
+        catch (EOFException e)
+        {
+            throw new IllegalArgumentException("Checkpoint has no header: " + file);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return new long[] { cursor, validLength };
+    }
+
+    /** @return The cursor following the last complete block. */
+    public long ResumeCursor()
+    {
+        return resumeCursor;
+    }
+
+    /** @return The cursor after the range being enumerated. */
+    public long EndCursor()
+    {
+        return end;
+    }
+
+    /**
+     * Append a block holding the fix-orders of a range of cursors. The block is written in the background;
+     *  only one block is written at a time, so this waits for the previous block (if it is still being written
+     *  or synced).
+     *
+     * @param start The first cursor of the range.
+     * @param end The cursor after the range.
+     * @param partial The fix-orders of the families in the range. Must not be modified afterwards.
+     */
+    public void Append(final long start, final long end, final FixOrderSet partial) throws IOException
+    {
+        WaitForPendingWrite();
+        pendingWrite = writer.submit(new Callable<Void>()
+        {
+            public Void call() throws IOException
+            {
+                WriteBlock(start, end, partial);
+                return null;
+            }
+        });
+    }
+
+    /** Wait for the last block to be written, and close the file. */
+    public void Close() throws IOException
+    {
+        try
+        {
+            WaitForPendingWrite();
+        }
+        finally
+        {
+            writer.shutdown();
+            out.close();
+        }
+    }
+
+    private void WaitForPendingWrite() throws IOException
+    {
+        if (pendingWrite == null) return;
+
+        try
+        {
+            pendingWrite.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing checkpoint");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            pendingWrite = null;
+        }
+    }
+
+    private void WriteBlock(long start, long end, FixOrderSet partial) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream block = new DataOutputStream(bytes);
+        block.writeLong(start);
+        block.writeLong(end);
+        WritePayload(block, partial);
+        block.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        out.writeInt(BLOCK_MAGIC);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeLong(crc.getValue());
+        out.flush();
+        // flush only hands the block to the OS: it is not checkpointed until it is on the disk.
+        fileOut.getFD().sync();
+    }
+
+    private void WritePayload(DataOutputStream block, FixOrderSet partial) throws IOException
+    {
+        int numFixOrders = partial.FixOrders.size();
+        block.writeInt(numFixOrders);
+        for (int i=0;i<numFixOrders;i++)
+        {
+            FixOrder fixOrder = partial.FixOrders.get(i);
+            block.writeInt(fixOrder.Cardinality);
+            block.writeByte((fixOrder.isFaithful ? FAITHFUL_FLAG : 0) | (fixOrder.isNormal ? NORMAL_FLAG : 0));
+
+            long[] words = fixOrder.Relation.toLongArray();
+            block.writeInt(words.length);
+            for (long word : words) block.writeLong(word);
+
+            ArrayList<long[]> families = partial.FamiliesOf(i);
+            block.writeInt(families.size());
+            for (long[] family : families)
+                for (int w=0;w<familyWords;w++)
+                    block.writeLong(family[w]);
+        }
+    }
+
+    /**
+     * Read the next block, if it is complete and follows on from the given cursor.
+     * @param bytesLeft The number of bytes of the file from the start of the block.
+     * @return The payload of the block (starting with its cursors), or null if there is no such block.
+     */
+    private static byte[] ReadBlock(DataInputStream in, long cursor, long bytesLeft) throws IOException
+    {
+        try
+        {
+            if (in.readInt() != BLOCK_MAGIC) return null;
+
+            // a torn length may claim more than the file holds: never allocate beyond it.
+            int length = in.readInt();
+            if (length < 16 || 4 + 4 + (long)length + 8 > bytesLeft) return null;
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (in.readLong() != crc.getValue()) return null;
+
+            long start = new DataInputStream(new ByteArrayInputStream(payload)).readLong();
+            return (start == cursor) ? payload : null;
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    private static void ReadPayload(DataInputStream block, int familyWords, FixOrderSet relations) throws IOException
+    {
+        int numFixOrders = block.readInt();
+        for (int i=0;i<numFixOrders;i++)
+        {
+            int cardinality = block.readInt();
+            int flags = block.readByte();
+
+            long[] words = new long[block.readInt()];
+            for (int w=0;w<words.length;w++) words[w] = block.readLong();
+            FixOrder fixOrder = new FixOrder(BitSet.valueOf(words), cardinality,
+                    (flags & FAITHFUL_FLAG) != 0, (flags & NORMAL_FLAG) != 0);
+
+            int numFamilies = block.readInt();
+            for (int f=0;f<numFamilies;f++)
+            {
+                long[] family = new long[familyWords];
+                for (int w=0;w<familyWords;w++) family[w] = block.readLong();
+                relations.Add(fixOrder, family);
+            }
+        }
+    }
+
+    /** @return A fingerprint of the subgroups of the group, so that a checkpoint is only resumed on the same group. */
+    private static long FingerprintOf(Group inputGroup)
+    {
+        long h = inputGroup.NumElements;
+        for (BitSet subgroup : inputGroup.SubgroupMasks)
+            h = 31 * h + FixOrder.FingerprintOf(subgroup);
+        for (BitSet conjugacyClass : inputGroup.ConjugacyClasses)
+            h = 31 * h + FixOrder.FingerprintOf(conjugacyClass);
+        return h;
+    }
+}
@@ -0,0 +1,136 @@
+package quasiorder;
+
+/**
+ * Counts the unique fix-orders passed to it, and how many of them are faithful and/or normal,
+ *  without holding on to any relation.
+ *
+ * Fix-orders are told apart by their fingerprint alone, which are kept in an open-addressed table of longs.
+ *  Two different fix-orders of a group with the same 64-bit fingerprint would be counted once,
+ *  but that is far less likely than any other failure of a run.
+ */
+public class FixOrderCounter implements FixOrderEnumerator.IFixOrderSink
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private boolean[] isUsed = new boolean[INITIAL_CAPACITY];
+
+    private long numInvestigated = 0;
+    private int numUnique = 0;
+    private int numFaithful = 0;
+    private int numNormal = 0;
+    private int numFaithfulNormal = 0;
+
+    public synchronized void Add(FixOrder fixOrder, long ccMask)
+    {
+        Count(fixOrder);
+    }
+
+    public synchronized void Add(FixOrder fixOrder, long[] ccMask)
+    {
+        Count(fixOrder);
+    }
+
+    private void Count(FixOrder fixOrder)
+    {
+        numInvestigated++;
+        if (!Insert(fixOrder.Fingerprint)) return;
+
+        numUnique++;
+        if (fixOrder.isFaithful) numFaithful++;
+        if (fixOrder.isNormal) numNormal++;
+        if (fixOrder.isFaithful && fixOrder.isNormal) numFaithfulNormal++;
+    }
+
+    /**
+     * Count a whole orbit of fix-orders under the automorphisms at once, without their relations.
+     *  Automorphisms preserve whether a fix-order is faithful and normal, so the whole orbit shares the flags.
+     *
+     * @param numFamilies The number of families counted.
+     * @param numFixOrders The number of unique fix-orders among them, none of which has been counted before.
+     * @param isFaithful Whether the fix-orders are faithful.
+     * @param isNormal Whether the fix-orders are normal.
+     */
+    public synchronized void AddOrbit(long numFamilies, int numFixOrders, boolean isFaithful, boolean isNormal)
+    {
+        numInvestigated += numFamilies;
+        numUnique += numFixOrders;
+        if (isFaithful) numFaithful += numFixOrders;
+        if (isNormal) numNormal += numFixOrders;
+        if (isFaithful && isNormal) numFaithfulNormal += numFixOrders;
+    }
+
+    /** @return The number of families counted, including those which generated duplicate fix-orders. */
+    public synchronized long InvestigatedCount()
+    {
+        return numInvestigated;
+    }
+
+    /** @return The number of unique fix-orders counted. */
+    public synchronized int UniqueCount()
+    {
+        return numUnique;
+    }
+
+    /** @return The number of unique fix-orders which are faithful. */
+    public synchronized int FaithfulCount()
+    {
+        return numFaithful;
+    }
+
+    /** @return The number of unique fix-orders which are normal. */
+    public synchronized int NormalCount()
+    {
+        return numNormal;
+    }
+
+    /** @return The number of unique fix-orders which are both faithful and normal. */
+    public synchronized int FaithfulNormalCount()
+    {
+        return numFaithfulNormal;
+    }
+
+    /**
+     * Add a fingerprint to the table, unless it is already there.
+     * @return Whether the fingerprint is new.
+     */
+    private boolean Insert(long fingerprint)
+    {
+        int mask = fingerprints.length - 1;
+        int slot = SlotOf(fingerprint, mask);
+        for (; isUsed[slot]; slot = (slot + 1) & mask)
+            if (fingerprints[slot] == fingerprint)
+                return false;
+
+        fingerprints[slot] = fingerprint;
+        isUsed[slot] = true;
+
+        // keep the table at most half full, so probes stay short.
+        if (2 * (numUnique + 1) > fingerprints.length) Rehash(2 * fingerprints.length);
+        return true;
+    }
+
+    private void Rehash(int capacity)
+    {
+        long[] oldFingerprints = fingerprints;
+        boolean[] oldIsUsed = isUsed;
+        fingerprints = new long[capacity];
+        isUsed = new boolean[capacity];
+
+        int mask = capacity - 1;
+        for (int i=0;i<oldFingerprints.length;i++)
+        {
+            if (!oldIsUsed[i]) continue;
+
+            int slot = SlotOf(oldFingerprints[i], mask);
+            while (isUsed[slot]) slot = (slot + 1) & mask;
+            fingerprints[slot] = oldFingerprints[i];
+            isUsed[slot] = true;
+        }
+    }
+
+    private static int SlotOf(long fingerprint, int mask)
+    {
+        return (int)(fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,928 @@
+package quasiorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Enumerates the families of subgroup conjugacy classes of a group,
+ *  passing the fix-order generated by each closed family to a sink, such as a FixOrderSet.
+ *
+ * Each family is identified by its ccMask, where bit m is set iff the m'th conjugacy class is in the family.
+ *  Only families containing the last conjugacy class (the whole group) are considered.
+ *  Progress through the families is measured by a cursor 0 <= s < maxIter:
+ *  With at most {@link Group#MAX_NARROW_CLASSES} classes, the ccMask is the long (maxIter | s), where maxIter = 2^(M-1).
+ *  With more, the ccMask is a long[] (as in BitSet.toLongArray()) and s holds its 62 most significant classes
+ *  below the whole group, so maxIter = 2^62 and ccMasks are still visited in increasing order of s.
+ */
+public class FixOrderEnumerator
+{
+    /** The number of consecutive cursors processed between checks for idle workers, when enumerating in parallel. */
+    static final long PARALLEL_CHUNK_SIZE = 1L << 10;
+
+    /** The number of classes (below the whole group) held in the cursor of a wide ccMask. */
+    private static final int WIDE_CURSOR_BITS = 62;
+
+    /**
+     * Receives the fix-order of each closed family as soon as it is found, so that consumers which only
+     *  need to count or write out fix-orders do not have to hold all of them.
+     *  A sink given to a parallel enumeration must be thread-safe.
+     */
+    static interface IFixOrderSink
+    {
+        /**
+         * @param fixOrder The fix-order generated by the family. Equal fix-orders are given once for each family.
+         * @param ccMask The ccMask of the family.
+         */
+        void Add(FixOrder fixOrder, long ccMask);
+
+        /** As {@link #Add(FixOrder, long)}, for a ccMask of any number of words. */
+        void Add(FixOrder fixOrder, long[] ccMask);
+    }
+
+    /** A strategy for finding the closed families in a range of ccMasks. */
+    static interface IEnumerationEngine
+    {
+        /**
+         * Add the fix-order of every closed family with a cursor s such that start <= s < end,
+         *  in increasing order of ccMask.
+         *
+         * @return The cursor to continue from: no family with a cursor in [end, result) is closed.
+         */
+        long EnumerateRange(Group inputGroup, IFixOrderSink relations, long maxIter, long start, long end);
+    }
+
+    /** Visits every ccMask in the range, and discards those which are not closed. */
+    static final IEnumerationEngine BruteForceEngine = new IEnumerationEngine()
+    {
+        public long EnumerateRange(Group inputGroup, IFixOrderSink relations, long maxIter, long start, long end)
+        {
+            for (long s=start;s<end;s++)
+                ProcessConjugacyFamily(inputGroup, relations, (maxIter | s));
+            return end;
+        }
+    };
+
+    /**
+     * Visits only the closed ccMasks in the range, jumping from each to the next with NextClosure (Ganter).
+     *  The closed families form a closure system (they are closed under intersection), so the cost is
+     *  proportional to the number of closed families, rather than to the size of the range.
+     */
+    static final IEnumerationEngine ClosureEngine = new IEnumerationEngine()
+    {
+        public long EnumerateRange(Group inputGroup, IFixOrderSink relations, long maxIter, long start, long end)
+        {
+            long ccMask = maxIter | start;
+            if (!isClosed(inputGroup, ccMask)) ccMask = NextClosedMask(inputGroup, ccMask);
+
+            for (; ccMask != -1; ccMask = NextClosedMask(inputGroup, ccMask))
+            {
+                long s = ccMask ^ maxIter;
+                if (s >= end) return s;
+                AddFixOrderOf(inputGroup, relations, ccMask);
+            }
+            return maxIter;
+        }
+    };
+
+    /**
+     * As the ClosureEngine, but only adds the closed families which are the smallest ccMask in their orbit
+     *  under the automorphisms of the group: one family per orbit. See {@link #ExpandOrbits}.
+     */
+    static final IEnumerationEngine OrbitClosureEngine = new IEnumerationEngine()
+    {
+        public long EnumerateRange(Group inputGroup, IFixOrderSink relations, long maxIter, long start, long end)
+        {
+            long ccMask = maxIter | start;
+            if (!isClosed(inputGroup, ccMask)) ccMask = NextClosedMask(inputGroup, ccMask);
+
+            for (; ccMask != -1; ccMask = NextClosedMask(inputGroup, ccMask))
+            {
+                long s = ccMask ^ maxIter;
+                if (s >= end) return s;
+                if (isOrbitRepresentative(inputGroup, ccMask)) AddFixOrderOf(inputGroup, relations, ccMask);
+            }
+            return maxIter;
+        }
+    };
+
+    /** As the ClosureEngine, but on ccMasks of any number of words. Used for groups with too many classes for a long. */
+    static final IEnumerationEngine WideClosureEngine = new IEnumerationEngine()
+    {
+        public long EnumerateRange(Group inputGroup, IFixOrderSink relations, long maxIter, long start, long end)
+        {
+            long[] ccMask = WideMaskAt(inputGroup, start);
+            if (!isClosed(inputGroup, ccMask)) ccMask = NextClosedMask(inputGroup, ccMask);
+
+            for (; ccMask != null; ccMask = NextClosedMask(inputGroup, ccMask))
+            {
+                long s = WideCursorOf(inputGroup, ccMask);
+                if (s >= end) return s;
+                AddFixOrderOf(inputGroup, relations, ccMask);
+            }
+            return maxIter;
+        }
+    };
+
+    /**
+     * Generate the fix-orders of every closed family, visiting each ccMask in turn.
+     *
+     * @param inputGroup The group to enumerate.
+     * @return The set of all fix-orders.
+     */
+    public static FixOrderSet GenerateAllFixOrders(Group inputGroup)
+    {
+        return GenerateAllFixOrders(inputGroup, BruteForceEngine);
+    }
+
+    /**
+     * Generate the fix-orders of every closed family.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param engine The strategy used to find the closed families. See {@link #EngineFor}.
+     * @return The set of all fix-orders.
+     */
+    public static FixOrderSet GenerateAllFixOrders(Group inputGroup, IEnumerationEngine engine)
+    {
+        return GenerateAllFixOrders(inputGroup, engine, true);
+    }
+
+    /**
+     * Generate the fix-orders of every closed family.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param engine The strategy used to find the closed families. See {@link #EngineFor}.
+     * @param logFamilies Whether to keep the families which generated each fix-order, or only count them.
+     * @return The set of all fix-orders.
+     */
+    public static FixOrderSet GenerateAllFixOrders(Group inputGroup, IEnumerationEngine engine, boolean logFamilies)
+    {
+        FixOrderSet relations = new FixOrderSet(inputGroup.ClassMaskWords, logFamilies);
+        EnumerateFixOrders(inputGroup, engine, relations);
+        return relations;
+    }
+
+    /**
+     * Pass the fix-order of every closed family to the sink, in increasing order of ccMask.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param engine The strategy used to find the closed families. See {@link #EngineFor}.
+     * @param sink The consumer of the fix-orders.
+     */
+    public static void EnumerateFixOrders(Group inputGroup, IEnumerationEngine engine, IFixOrderSink sink)
+    {
+        long maxIter = MaxIter(inputGroup);
+        EngineFor(inputGroup, engine).EnumerateRange(inputGroup, sink, maxIter, 0, maxIter);
+    }
+
+    /**
+     * Generate the fix-orders of every closed family, on a work-stealing pool.
+     *  The cursors are processed in chunks, and whenever there are idle workers, a busy worker hands off
+     *  the upper half of its remaining range. Each task collects into its own FixOrderSet, and the partial
+     *  sets are merged in ccMask order, so the result (including the order of fix-orders and families) is
+     *  identical to that of {@link #GenerateAllFixOrders(Group, IEnumerationEngine)}.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param engine The strategy used to find the closed families within each chunk. See {@link #EngineFor}.
+     * @param parallelism The number of worker threads to use.
+     * @return The set of all fix-orders.
+     */
+    public static FixOrderSet GenerateAllFixOrdersInParallel(Group inputGroup, IEnumerationEngine engine, int parallelism)
+    {
+        return GenerateAllFixOrdersInParallel(inputGroup, engine, parallelism, true);
+    }
+
+    /**
+     * As {@link #GenerateAllFixOrdersInParallel(Group, IEnumerationEngine, int)}.
+     *
+     * @param logFamilies Whether to keep the families which generated each fix-order, or only count them.
+     */
+    public static FixOrderSet GenerateAllFixOrdersInParallel(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                                             boolean logFamilies)
+    {
+        return GenerateAllFixOrdersInParallel(inputGroup, engine, parallelism, logFamilies, PARALLEL_CHUNK_SIZE);
+    }
+
+    static FixOrderSet GenerateAllFixOrdersInParallel(Group inputGroup, IEnumerationEngine engine, int parallelism, long chunkSize)
+    {
+        return GenerateAllFixOrdersInParallel(inputGroup, engine, parallelism, true, chunkSize);
+    }
+
+    static FixOrderSet GenerateAllFixOrdersInParallel(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                                      boolean logFamilies, long chunkSize)
+    {
+        long maxIter = MaxIter(inputGroup);
+        if (maxIter <= chunkSize) return GenerateAllFixOrders(inputGroup, engine, logFamilies);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try
+        {
+            return pool.invoke(new EnumerationTask(inputGroup, EngineFor(inputGroup, engine), logFamilies, null,
+                    maxIter, chunkSize, 0, maxIter));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Pass the fix-order of every closed family to the sink, from several worker threads at once
+     *  (as {@link #GenerateAllFixOrdersInParallel(Group, IEnumerationEngine, int)}, but without collecting
+     *  partial sets). The fix-orders arrive in no particular order, and the sink must be thread-safe.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param engine The strategy used to find the closed families within each chunk. See {@link #EngineFor}.
+     * @param parallelism The number of worker threads to use.
+     * @param sink The consumer of the fix-orders.
+     */
+    public static void EnumerateFixOrdersInParallel(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                                    IFixOrderSink sink)
+    {
+        EnumerateFixOrdersInParallel(inputGroup, engine, parallelism, sink, PARALLEL_CHUNK_SIZE);
+    }
+
+    static void EnumerateFixOrdersInParallel(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                             IFixOrderSink sink, long chunkSize)
+    {
+        long maxIter = MaxIter(inputGroup);
+        if (maxIter <= chunkSize)
+        {
+            EnumerateFixOrders(inputGroup, engine, sink);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try
+        {
+            pool.invoke(new EnumerationTask(inputGroup, EngineFor(inputGroup, engine), false, sink,
+                    maxIter, chunkSize, 0, maxIter));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generate the fix-orders of every closed family, appending the progress to a checkpoint file as it goes,
+     *  so that an interrupted run can be resumed from its last checkpoint. The result is identical to that
+     *  of {@link #GenerateAllFixOrders(Group, IEnumerationEngine)}, however many times the run was resumed.
+     *
+     * The cursors are enumerated in consecutive ranges, each of which is written out as it completes.
+     *  The ranges grow or shrink so that a checkpoint is written about once per interval.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param engine The strategy used to find the closed families. See {@link #EngineFor}.
+     * @param parallelism The number of worker threads to enumerate each range on.
+     * @param checkpointFile The file to write the checkpoints to.
+     * @param resume Whether to continue from the checkpoints already in the file, or start a new file.
+     * @param intervalMillis The time between checkpoints.
+     * @return The set of all fix-orders.
+     */
+    public static FixOrderSet GenerateAllFixOrdersWithCheckpoints(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                                                  File checkpointFile, boolean resume, long intervalMillis)
+            throws IOException
+    {
+        return GenerateShardWithCheckpoints(inputGroup, engine, parallelism, checkpointFile, resume, intervalMillis, 1, 1);
+    }
+
+    /**
+     * As {@link #GenerateAllFixOrdersWithCheckpoints}, but only for the families in one of several disjoint slices
+     *  of the cursors (see {@link #ShardRange}), so that an enumeration can be split over several processes.
+     *  Once complete, the checkpoint files of the shards are combined by {@link #MergeShards}.
+     *
+     * @param shard The slice to enumerate, from 1 to numShards.
+     * @param numShards The number of slices.
+     * @return The set of the fix-orders of the families in the slice.
+     */
+    public static FixOrderSet GenerateShardWithCheckpoints(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                                           File checkpointFile, boolean resume, long intervalMillis,
+                                                           int shard, int numShards) throws IOException
+    {
+        long[] range = ShardRange(inputGroup, shard, numShards);
+        return GenerateRangeWithCheckpoints(inputGroup, engine, parallelism, checkpointFile, resume, intervalMillis,
+                range[0], range[1], PARALLEL_CHUNK_SIZE);
+    }
+
+    /**
+     * Combine the complete checkpoint files of every shard of an enumeration. The result is identical to that
+     *  of {@link #GenerateAllFixOrders(Group, IEnumerationEngine)}.
+     *
+     * @param inputGroup The group which was enumerated.
+     * @param shardFiles The checkpoint file of each shard, in order.
+     * @return The set of all fix-orders.
+     * @throws IllegalArgumentException When a file is not the complete checkpoint of its shard.
+     */
+    public static FixOrderSet MergeShards(Group inputGroup, File[] shardFiles) throws IOException, IllegalArgumentException
+    {
+        long maxIter = MaxIter(inputGroup);
+        FixOrderSet relations = new FixOrderSet(inputGroup.ClassMaskWords, true);
+        for (int i=0;i<shardFiles.length;i++)
+        {
+            long[] range = ShardRange(inputGroup, i + 1, shardFiles.length);
+            FixOrderCheckpoint.ReadComplete(shardFiles[i], inputGroup, maxIter, range[0], range[1], relations);
+        }
+        return relations;
+    }
+
+    /**
+     * Split the cursors into slices of (almost) equal length.
+     *
+     * @param shard The slice, from 1 to numShards.
+     * @param numShards The number of slices.
+     * @return The first cursor of the slice, and the cursor after it.
+     */
+    static long[] ShardRange(Group inputGroup, int shard, int numShards)
+    {
+        if (numShards < 1 || shard < 1 || shard > numShards)
+            throw new IllegalArgumentException(String.format("Invalid shard: %d/%d", shard, numShards));
+
+        // the first (maxIter % numShards) slices are one cursor longer than the rest.
+        long maxIter = MaxIter(inputGroup);
+        long length = maxIter / numShards;
+        long remainder = maxIter % numShards;
+        long start = (shard - 1) * length + Math.min(shard - 1, remainder);
+        long end = start + length + ((shard - 1 < remainder) ? 1 : 0);
+        return new long[] { start, end };
+    }
+
+    static FixOrderSet GenerateRangeWithCheckpoints(Group inputGroup, IEnumerationEngine engine, int parallelism,
+                                                    File checkpointFile, boolean resume, long intervalMillis,
+                                                    long start, long end, long minRangeSize) throws IOException
+    {
+        long maxIter = MaxIter(inputGroup);
+        IEnumerationEngine rangeEngine = EngineFor(inputGroup, engine);
+        FixOrderSet relations = new FixOrderSet(inputGroup.ClassMaskWords, true);
+
+        FixOrderCheckpoint checkpoint = (resume && checkpointFile.exists())
+                ? FixOrderCheckpoint.Resume(checkpointFile, inputGroup, maxIter, start, end, relations)
+                : FixOrderCheckpoint.Create(checkpointFile, inputGroup, maxIter, start, end);
+
+        ForkJoinPool pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+        try
+        {
+            long cursor = checkpoint.ResumeCursor();
+            long rangeSize = minRangeSize;
+            while (cursor < end)
+            {
+                long limit = (end - cursor > rangeSize) ? cursor + rangeSize : end;
+                long startTime = System.currentTimeMillis();
+
+                FixOrderSet partial;
+                if (pool != null)
+                {
+                    partial = pool.invoke(new EnumerationTask(inputGroup, rangeEngine, true, null,
+                            maxIter, PARALLEL_CHUNK_SIZE, cursor, limit));
+                }
+                else
+                {
+                    partial = new FixOrderSet(inputGroup.ClassMaskWords, true);
+                    limit = Math.min(rangeEngine.EnumerateRange(inputGroup, partial, maxIter, cursor, limit), end);
+                }
+
+                // the checkpoint is written while the next range is enumerated.
+                relations.AddAll(partial);
+                checkpoint.Append(cursor, limit, partial);
+                cursor = limit;
+
+                long elapsed = System.currentTimeMillis() - startTime;
+                if (2 * elapsed < intervalMillis && rangeSize <= maxIter / 2) rangeSize *= 2;
+                else if (elapsed > 2 * intervalMillis) rangeSize = Math.max(minRangeSize, rangeSize / 2);
+            }
+        }
+        finally
+        {
+            if (pool != null) pool.shutdown();
+            checkpoint.Close();
+        }
+
+        return relations;
+    }
+
+    /**
+     * Generate the fix-orders of every closed family, by enumerating only one family per automorphism orbit
+     *  and mapping the fix-order of that family onto the rest of its orbit. The result is identical to that
+     *  of {@link #GenerateAllFixOrders(Group, IEnumerationEngine)}.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param parallelism The number of worker threads to find the orbit representatives on.
+     * @return The set of all fix-orders.
+     */
+    public static FixOrderSet GenerateAllFixOrdersByOrbits(Group inputGroup, int parallelism)
+    {
+        if (!CanEnumerateByOrbits(inputGroup))
+            return (parallelism > 1) ? GenerateAllFixOrdersInParallel(inputGroup, ClosureEngine, parallelism)
+                    : GenerateAllFixOrders(inputGroup, ClosureEngine);
+
+        FixOrderSet relations = new FixOrderSet(inputGroup.ClassMaskWords, true);
+        ExpandOrbits(inputGroup, GenerateOrbitRepresentatives(inputGroup, parallelism), relations);
+        return relations;
+    }
+
+    /**
+     * As {@link #GenerateAllFixOrdersByOrbits}, but passing every fix-order to the sink, in increasing order of ccMask.
+     */
+    public static void EnumerateFixOrdersByOrbits(Group inputGroup, int parallelism, IFixOrderSink sink)
+    {
+        if (!CanEnumerateByOrbits(inputGroup))
+        {
+            if (parallelism > 1) EnumerateFixOrdersInParallel(inputGroup, ClosureEngine, parallelism, sink);
+            else EnumerateFixOrders(inputGroup, ClosureEngine, sink);
+            return;
+        }
+
+        ExpandOrbits(inputGroup, GenerateOrbitRepresentatives(inputGroup, parallelism), sink);
+    }
+
+    /**
+     * Count the fix-orders of every closed family, as {@link #EnumerateFixOrdersByOrbits} would pass them to the counter,
+     *  but from the representative of each orbit alone: no other family is visited, and no relation is permuted.
+     *  The families in the orbit of a representative are its distinct images under the automorphisms.
+     *  The fix-orders in an orbit are told apart by their canonical families (see {@link FixOrderSet#CanonicalFamilies}),
+     *  which the automorphisms map onto each other, and share whether they are faithful and normal.
+     *  Those flags are taken from the smallest family to generate any of them, as in a sequential enumeration.
+     *
+     * @param inputGroup The group to enumerate.
+     * @param parallelism The number of worker threads to find the orbit representatives on.
+     * @param counter The counter of the fix-orders.
+     */
+    public static void CountFixOrdersByOrbits(final Group inputGroup, int parallelism, final FixOrderCounter counter)
+    {
+        if (!CanEnumerateByOrbits(inputGroup))
+        {
+            EnumerateFixOrdersByOrbits(inputGroup, parallelism, counter);
+            return;
+        }
+
+        final long[][] classRelations = FixOrderSet.ClassRelations(inputGroup);
+        // the smallest canonical family in each orbit of fix-orders -> { first family, orbit size, faithful, normal }.
+        final HashMap<Long, long[]> fixOrderOrbits = new HashMap<Long, long[]>();
+        IFixOrderSink orbitCounter = new IFixOrderSink()
+        {
+            public void Add(FixOrder fixOrder, long ccMask)
+            {
+                counter.AddOrbit(OrbitOf(inputGroup, ccMask).size(), 0, false, false);
+
+                long[] family = new long[] { ccMask };
+                FixOrderSet.CompleteCanonicalFamily(fixOrder.Relation.toLongArray(), family, classRelations);
+                long key = Collections.min(OrbitOf(inputGroup, family[0]));
+                synchronized (fixOrderOrbits)
+                {
+                    long[] orbit = fixOrderOrbits.get(key);
+                    if (orbit != null && orbit[0] < ccMask) return;
+                    fixOrderOrbits.put(key, new long[] { ccMask, OrbitOf(inputGroup, key).size(),
+                            fixOrder.isFaithful ? 1 : 0, fixOrder.isNormal ? 1 : 0 });
+                }
+            }
+
+            public void Add(FixOrder fixOrder, long[] ccMask)
+            {
+                Add(fixOrder, ccMask[0]);
+            }
+        };
+
+        if (parallelism > 1) EnumerateFixOrdersInParallel(inputGroup, OrbitClosureEngine, parallelism, orbitCounter);
+        else EnumerateFixOrders(inputGroup, OrbitClosureEngine, orbitCounter);
+
+        for (long[] orbit : fixOrderOrbits.values())
+            counter.AddOrbit(0, (int)orbit[1], orbit[2] != 0, orbit[3] != 0);
+    }
+
+    /** @return The distinct images of the family under the automorphisms (and the identity). */
+    private static HashSet<Long> OrbitOf(Group inputGroup, long ccMask)
+    {
+        HashSet<Long> orbit = new HashSet<Long>();
+        orbit.add(ccMask);
+        for (int a=0;a<inputGroup.ConjugacyClassImages.length;a++)
+            orbit.add(inputGroup.ClassMaskImage(a, ccMask));
+        return orbit;
+    }
+
+    /**
+     * Generate the fix-orders of the smallest closed family in each automorphism orbit.
+     *  Only valid when {@link #CanEnumerateByOrbits}.
+     *
+     * @return The set of the fix-orders of the representatives, with their families.
+     */
+    static FixOrderSet GenerateOrbitRepresentatives(Group inputGroup, int parallelism)
+    {
+        return (parallelism > 1) ? GenerateAllFixOrdersInParallel(inputGroup, OrbitClosureEngine, parallelism)
+                : GenerateAllFixOrders(inputGroup, OrbitClosureEngine);
+    }
+
+    /**
+     * Pass the fix-order of every family in the orbit of each representative family to the sink,
+     *  in increasing order of ccMask. The fix-order of the image of a family under an automorphism
+     *  is the image of its fix-order under the automorphism (on element classes), so no relation is built.
+     *
+     * @param inputGroup The group which was enumerated.
+     * @param representatives The fix-orders of the representative families, with their families.
+     * @param sink The consumer of every fix-order.
+     */
+    static void ExpandOrbits(Group inputGroup, FixOrderSet representatives, IFixOrderSink sink)
+    {
+        TreeMap<Long, FixOrder> orbitFixOrders = new TreeMap<Long, FixOrder>();
+        for (int i=0;i<representatives.FixOrders.size();i++)
+        {
+            FixOrder fixOrder = representatives.FixOrders.get(i);
+
+            // every family of a fix-order is mapped onto the same fix-order by the same automorphism.
+            FixOrder[] images = new FixOrder[inputGroup.ConjugacyClassImages.length];
+            for (long[] family : representatives.FamiliesOf(i))
+            {
+                long ccMask = family[0];
+                orbitFixOrders.put(ccMask, fixOrder);
+                for (int a=0;a<images.length;a++)
+                {
+                    long image = inputGroup.ClassMaskImage(a, ccMask);
+                    if (orbitFixOrders.containsKey(image)) continue;
+
+                    if (images[a] == null)
+                    {
+                        BitSet relation = inputGroup.FamilyAutomorphismPermutations.get(a).PermuteRelation(
+                                fixOrder.Relation, inputGroup.NumElementClasses);
+                        images[a] = new FixOrder(relation, fixOrder.Cardinality, fixOrder.isFaithful, fixOrder.isNormal);
+                    }
+                    orbitFixOrders.put(image, images[a]);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, FixOrder> entry : orbitFixOrders.entrySet())
+            sink.Add(entry.getValue(), entry.getKey());
+    }
+
+    /**
+     * @return Whether the orbit of every family is the set of its images under the automorphisms of the group
+     *  (and the identity), so that each orbit has exactly one representative: the ccMasks must fit in a long,
+     *  and the automorphisms (on conjugacy classes) must be closed under composition, as all of the outer
+     *  automorphisms are, since the inner ones fix every class.
+     */
+    static boolean CanEnumerateByOrbits(Group inputGroup)
+    {
+        if (inputGroup.HasWideClassMasks()) return false;
+
+        int[][] classImages = inputGroup.ConjugacyClassImages;
+        HashSet<String> maps = new HashSet<String>();
+        int[] identity = new int[inputGroup.NumConjugacyClasses];
+        for (int m=0;m<identity.length;m++) identity[m] = m;
+        maps.add(Arrays.toString(identity));
+        for (int[] classImage : classImages) maps.add(Arrays.toString(classImage));
+
+        int[] composite = new int[identity.length];
+        for (int[] first : classImages)
+        {
+            for (int[] second : classImages)
+            {
+                for (int m=0;m<composite.length;m++) composite[m] = second[first[m]];
+                if (!maps.contains(Arrays.toString(composite))) return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Whether no automorphism maps the family onto a smaller ccMask. */
+    static boolean isOrbitRepresentative(Group inputGroup, long ccMask)
+    {
+        for (int a=0;a<inputGroup.ConjugacyClassImages.length;a++)
+            if (inputGroup.ClassMaskImage(a, ccMask) < ccMask)
+                return false;
+        return true;
+    }
+
+    /**
+     * Choose the engine to run on this group: the requested one, unless the group has too many classes
+     *  for a long ccMask, in which case only the closed families can be (and are) visited, on wide ccMasks.
+     */
+    static IEnumerationEngine EngineFor(Group inputGroup, IEnumerationEngine requested)
+    {
+        return inputGroup.HasWideClassMasks() ? WideClosureEngine : requested;
+    }
+
+    /** @return The number of cursors: 2^(M-1), where M is the number of subgroup conjugacy classes, up to 2^62. */
+    static long MaxIter(Group inputGroup)
+    {
+        return 1L << Math.min(inputGroup.NumConjugacyClasses - 1, WIDE_CURSOR_BITS);
+    }
+
+    /**
+     * Add the fix-order of the family represented by this ccMask to the set of relations,
+     *  if the family is intersection and union closed.
+     *  Closure is tested on the ccMask itself, so the subgroup family is only built for closed families.
+     */
+    static void ProcessConjugacyFamily(Group inputGroup, IFixOrderSink relations, long ccMask)
+    {
+        // Note: This is still NOT unique as Union of 3 maybe a subgroup while Union of any two pairs in that 3 are not subgroups!
+        if (isClosed(inputGroup, ccMask))
+            AddFixOrderOf(inputGroup, relations, ccMask);
+    }
+
+    /** @return Whether the family represented by this ccMask is intersection and union closed. */
+    static boolean isClosed(Group inputGroup, long ccMask)
+    {
+        return GroupUtil.isClassMaskClosed(inputGroup.ClassIntersections, ccMask)
+                && GroupUtil.isClassMaskClosed(inputGroup.ClassUnions, ccMask);
+    }
+
+    /** @return Whether the family represented by this wide ccMask is intersection and union closed. */
+    static boolean isClosed(Group inputGroup, long[] ccMask)
+    {
+        return GroupUtil.isClassMaskClosed(inputGroup.WideClassIntersections, ccMask)
+                && GroupUtil.isClassMaskClosed(inputGroup.WideClassUnions, ccMask);
+    }
+
+    /** Build the fix-order of the (closed) family represented by this ccMask, and add it to the set of relations. */
+    static void AddFixOrderOf(Group inputGroup, IFixOrderSink relations, long ccMask)
+    {
+        BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(inputGroup.NumSubgroups, inputGroup.NumConjugacyClasses,
+                ccMask, inputGroup.ConjugacyClasses);
+        relations.Add(ToFixOrder(inputGroup, familyMask), ccMask);
+    }
+
+    /** Build the fix-order of the (closed) family represented by this wide ccMask, and add it to the set of relations. */
+    static void AddFixOrderOf(Group inputGroup, IFixOrderSink relations, long[] ccMask)
+    {
+        BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(inputGroup.NumSubgroups, ccMask, inputGroup.ConjugacyClasses);
+        relations.Add(ToFixOrder(inputGroup, familyMask), ccMask);
+    }
+
+    private static FixOrder ToFixOrder(Group inputGroup, BitSet familyMask)
+    {
+        BitSet relation = FixOrderSet.BuildClassRelation(inputGroup, familyMask);
+        return FixOrder.FromRelation(relation, familyMask, inputGroup);
+    }
+
+    /**
+     * Determine the smallest closed family containing the given classes and the whole group.
+     *
+     * @param inputGroup The group.
+     * @param ccMask A mask representing the classes which must be in the family.
+     * @return The ccMask of the closure.
+     */
+    static long CloseClassMask(Group inputGroup, long ccMask)
+    {
+        return CloseClassMask(inputGroup, ccMask, 0);
+    }
+
+    /**
+     * Determine the smallest closed family containing the given classes and the whole group,
+     *  by combining each class added to the family with all those already in it.
+     *  Gives up as soon as a forbidden class has to be added.
+     *
+     * @param inputGroup The group.
+     * @param ccMask A mask representing the classes which must be in the family.
+     * @param forbidden A mask representing the classes which must not be added to the family.
+     * @return The ccMask of the closure, or -1 if it needs a forbidden class.
+     */
+    static long CloseClassMask(Group inputGroup, long ccMask, long forbidden)
+    {
+        long closed = ccMask | (1L << (inputGroup.NumConjugacyClasses - 1));
+        long pending = closed;
+        while (pending != 0)
+        {
+            int m = Long.numberOfTrailingZeros(pending);
+            pending &= pending - 1;
+
+            long[] intersections = inputGroup.ClassIntersections[m];
+            long[] unions = inputGroup.ClassUnions[m];
+            long added = 0;
+            for (long others = closed; others != 0; others &= others - 1)
+            {
+                int n = Long.numberOfTrailingZeros(others);
+                added |= intersections[n] | unions[n];
+            }
+
+            added &= ~closed;
+            if ((added & forbidden) != 0) return -1;
+            closed |= added;
+            pending |= added;
+        }
+
+        return closed;
+    }
+
+    /**
+     * Find the smallest closed ccMask which is larger than the given one (which need not be closed).
+     *  This is the NextClosure step, where the most significant class is the first in the lectic order.
+     *
+     * @param inputGroup The group.
+     * @param ccMask The current ccMask.
+     * @return The next closed ccMask, or -1 if there is none.
+     */
+    static long NextClosedMask(Group inputGroup, long ccMask)
+    {
+        int numFree = inputGroup.NumConjugacyClasses - 1; // the whole group is always in the family.
+        for (int m=0;m<numFree;m++)
+        {
+            long classBit = 1L << m;
+            if ((ccMask & classBit) != 0) continue;
+
+            long higherMask = -(classBit << 1); // all classes above m
+            long higher = ccMask & higherMask;
+
+            // the closure may not add any class above m.
+            long next = CloseClassMask(inputGroup, higher | classBit, higherMask & ~higher);
+            if (next != -1) return next;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Close the given wide ccMask in place, as {@link #CloseClassMask(Group, long, long)}.
+     *
+     * @param inputGroup The group.
+     * @param closed A mask representing the classes which must be in the family. Replaced by its closure.
+     * @param limit Gives up as soon as a class above this one has to be added.
+     * @return Whether the closure was found without adding a class above the limit.
+     */
+    static boolean CloseClassMask(Group inputGroup, long[] closed, int limit)
+    {
+        int words = inputGroup.ClassMaskWords;
+        int top = inputGroup.NumConjugacyClasses - 1;
+        closed[top / Long.SIZE] |= 1L << top;
+
+        long[] pending = closed.clone();
+        long[] added = new long[words];
+        int w = 0;
+        while (w < words)
+        {
+            if (pending[w] == 0) { w++; continue; }
+
+            int m = w * Long.SIZE + Long.numberOfTrailingZeros(pending[w]);
+            pending[w] &= pending[w] - 1;
+
+            long[] intersections = inputGroup.WideClassIntersections[m];
+            long[] unions = inputGroup.WideClassUnions[m];
+            Arrays.fill(added, 0);
+            for (int nw=0;nw<words;nw++)
+            {
+                for (long others = closed[nw]; others != 0; others &= others - 1)
+                {
+                    int offset = (nw * Long.SIZE + Long.numberOfTrailingZeros(others)) * words;
+                    for (int k=0;k<words;k++)
+                        added[k] |= intersections[offset + k] | unions[offset + k];
+                }
+            }
+
+            for (int k=0;k<words;k++)
+            {
+                added[k] &= ~closed[k];
+                if ((added[k] & WordAbove(limit, k)) != 0) return false;
+
+                closed[k] |= added[k];
+                pending[k] |= added[k];
+                if (added[k] != 0 && k < w) w = k;
+            }
+        }
+
+        return true;
+    }
+
+    /** @return The bits of word k of a wide mask whose classes are above the limit. */
+    private static long WordAbove(int limit, int k)
+    {
+        int first = limit + 1 - k * Long.SIZE; // the bit in word k of the first class above the limit.
+        if (first <= 0) return -1L;
+        if (first >= Long.SIZE) return 0;
+        return -(1L << first);
+    }
+
+    /**
+     * Find the smallest closed wide ccMask which is larger than the given one, as {@link #NextClosedMask(Group, long)}.
+     *
+     * @param inputGroup The group.
+     * @param ccMask The current ccMask. Not modified.
+     * @return The next closed ccMask, or null if there is none.
+     */
+    static long[] NextClosedMask(Group inputGroup, long[] ccMask)
+    {
+        int numFree = inputGroup.NumConjugacyClasses - 1; // the whole group is always in the family.
+        long[] next = new long[ccMask.length];
+        for (int m=0;m<numFree;m++)
+        {
+            int classWord = m / Long.SIZE;
+            long classBit = 1L << m;
+            if ((ccMask[classWord] & classBit) != 0) continue;
+
+            // keep the classes above m, and add m.
+            Arrays.fill(next, 0, classWord, 0);
+            next[classWord] = (ccMask[classWord] & -(classBit << 1)) | classBit;
+            System.arraycopy(ccMask, classWord + 1, next, classWord + 1, ccMask.length - classWord - 1);
+
+            if (CloseClassMask(inputGroup, next, m)) return next;
+        }
+
+        return null;
+    }
+
+    /** @return The index of the lowest class held in the cursor of a wide ccMask. */
+    private static int WideCursorOffset(Group inputGroup)
+    {
+        return Math.max(0, inputGroup.NumConjugacyClasses - 1 - WIDE_CURSOR_BITS);
+    }
+
+    /** @return The cursor of a wide ccMask: its (up to 62) most significant classes below the whole group. */
+    static long WideCursorOf(Group inputGroup, long[] ccMask)
+    {
+        int offset = WideCursorOffset(inputGroup);
+        int w = offset / Long.SIZE;
+        int b = offset % Long.SIZE;
+
+        long bits = ccMask[w] >>> b;
+        if (b != 0 && w + 1 < ccMask.length) bits |= ccMask[w + 1] << (Long.SIZE - b);
+        return bits & (MaxIter(inputGroup) - 1);
+    }
+
+    /** @return The smallest wide ccMask with the given cursor. */
+    static long[] WideMaskAt(Group inputGroup, long cursor)
+    {
+        long[] ccMask = new long[inputGroup.ClassMaskWords];
+        int top = inputGroup.NumConjugacyClasses - 1;
+        ccMask[top / Long.SIZE] |= 1L << top;
+
+        int offset = WideCursorOffset(inputGroup);
+        int w = offset / Long.SIZE;
+        int b = offset % Long.SIZE;
+        ccMask[w] |= cursor << b;
+        if (b != 0 && w + 1 < ccMask.length) ccMask[w + 1] |= cursor >>> (Long.SIZE - b);
+        return ccMask;
+    }
+
+    /**
+     * Enumerates a range of cursors chunk by chunk. While there are idle workers, it hands the upper half
+     *  of its remaining range to a new task.
+     *  Without a shared sink, each task collects into its own FixOrderSet, which it returns merged with
+     *  those of the tasks it handed off. Otherwise, every task adds to the shared sink, and returns null.
+     */
+    private static class EnumerationTask extends RecursiveTask<FixOrderSet>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Group inputGroup;
+        private final IEnumerationEngine engine;
+        private final boolean logFamilies;
+        private final IFixOrderSink sharedSink;
+        private final long maxIter;
+        private final long chunkSize;
+        private final long start;
+        private final long end;
+
+        public EnumerationTask(Group inputGroup, IEnumerationEngine engine, boolean logFamilies, IFixOrderSink sharedSink,
+                               long maxIter, long chunkSize, long start, long end)
+        {
+            this.inputGroup = inputGroup;
+            this.engine = engine;
+            this.logFamilies = logFamilies;
+            this.sharedSink = sharedSink;
+            this.maxIter = maxIter;
+            this.chunkSize = chunkSize;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected FixOrderSet compute()
+        {
+            FixOrderSet partial = (sharedSink == null) ? new FixOrderSet(inputGroup.ClassMaskWords, logFamilies) : null;
+            IFixOrderSink sink = (sharedSink == null) ? partial : sharedSink;
+            ArrayList<EnumerationTask> handedOff = new ArrayList<EnumerationTask>();
+
+            long cursor = start;
+            long limit = end;
+            while (cursor < limit)
+            {
+                if (limit - cursor > chunkSize && ForkJoinTask.getSurplusQueuedTaskCount() <= 0)
+                {
+                    long mid = cursor + (limit - cursor) / 2;
+                    EnumerationTask upper = new EnumerationTask(inputGroup, engine, logFamilies, sharedSink, maxIter, chunkSize, mid, limit);
+                    upper.fork();
+                    handedOff.add(upper);
+                    limit = mid;
+                }
+
+                cursor = engine.EnumerateRange(inputGroup, sink, maxIter, cursor, Math.min(limit, cursor + chunkSize));
+            }
+
+            // each range handed off lies just above the one handed off after it.
+            for (int i=handedOff.size()-1;i>=0;i--)
+            {
+                FixOrderSet upper = handedOff.get(i).join();
+                if (partial != null) partial.AddAll(upper);
+            }
+
+            return partial;
+        }
+    }
+}
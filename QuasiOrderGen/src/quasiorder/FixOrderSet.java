@@ -5,50 +5,378 @@ import java.util.*;
 /**
  * Holds a set of relations.
  * Automatically handles duplicates.
- *  That is, creates a linked list of families for each relation.
+ *  That is, logs the families (as ccMasks) which generated each relation, in the order they were added.
+ *
+ * Relations are deduplicated by an open-addressed table, keyed by the fingerprint of each fix-order,
+ *  which holds the index of each fix-order in FixOrders. The families of each fix-order form a linked list
+ *  through the family log, which holds the words of every ccMask (when families are logged at all).
+ *  All changes are synchronized, so that a set can be shared by several enumerating threads.
  */
-public class FixOrderSet
+public class FixOrderSet implements FixOrderEnumerator.IFixOrderSink
 {
-    public final Hashtable<FixOrder, ArrayList<BitSet>> FixOrderToFamilyMap;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_FAMILY = -1;
+
     public final ArrayList<FixOrder> FixOrders;
+    private final int familyWords;
+    private final boolean logFamilies;
+    private long numInvestigated = 0;
+
+    // open-addressed table: slot -> 1 + index of the fix-order in FixOrders (0 when empty), and its fingerprint.
+    private int[] slotIndices;
+    private long[] slotFingerprints;
 
+    // family log: entry e holds the ccMask words [e*familyWords, (e+1)*familyWords) and the next entry of its fix-order.
+    private long[] familyLog;
+    private int[] nextFamily;
+    private int numFamilies = 0;
+    private int[] firstFamily;
+    private int[] lastFamily;
+
+    /** A set which logs families as single word ccMasks. */
     public FixOrderSet()
     {
-        this.FixOrderToFamilyMap = new Hashtable<FixOrder, ArrayList<BitSet>>();
+        this(1, true);
+    }
+
+    /**
+     * @param familyWords The number of words in each ccMask, i.e. {@link Group#ClassMaskWords}.
+     * @param logFamilies Whether to log the families which generated each relation, or only count them.
+     */
+    public FixOrderSet(int familyWords, boolean logFamilies)
+    {
         this.FixOrders = new ArrayList<FixOrder>();
+        this.familyWords = familyWords;
+        this.logFamilies = logFamilies;
+
+        this.slotIndices = new int[INITIAL_CAPACITY];
+        this.slotFingerprints = new long[INITIAL_CAPACITY];
+        this.firstFamily = new int[INITIAL_CAPACITY];
+        this.lastFamily = new int[INITIAL_CAPACITY];
+        this.familyLog = new long[logFamilies ? INITIAL_CAPACITY * familyWords : 0];
+        this.nextFamily = new int[logFamilies ? INITIAL_CAPACITY : 0];
     }
 
     /**
      * Add a relation to this relation set.
      * If this relation already exists in this set, relation is not added again.
-     *  However, the family mask will be added to the list of family masks for this relation.
+     *  However, the family will be added to the list of families for this relation.
      *
      * @param fixOrder The relation to add.
-     * @param familyMask The familyMask which generated this relation.
+     * @param ccMask The ccMask of the family which generated this relation.
+     */
+    public synchronized void Add(FixOrder fixOrder, long ccMask)
+    {
+        numInvestigated++;
+        int index = Insert(fixOrder);
+        if (!logFamilies) return;
+
+        int entry = AppendFamily(index);
+        familyLog[entry * familyWords] = ccMask;
+    }
+
+    /**
+     * As {@link #Add(FixOrder, long)}, for a ccMask of any number of words.
+     *
+     * @param fixOrder The relation to add.
+     * @param ccMask The ccMask of the family which generated this relation, as in BitSet.toLongArray().
+     */
+    public synchronized void Add(FixOrder fixOrder, long[] ccMask)
+    {
+        numInvestigated++;
+        int index = Insert(fixOrder);
+        if (!logFamilies) return;
+
+        int entry = AppendFamily(index);
+        System.arraycopy(ccMask, 0, familyLog, entry * familyWords, Math.min(ccMask.length, familyWords));
+    }
+
+    /**
+     * Add every relation (and family) of another set to this set, in the order they were added to the other set.
+     *  If this set holds the families of lower ccMasks than the other, the result is the same as if
+     *  all the families were added to a single set.
+     *
+     * @param other The set to merge into this one. It is not modified.
+     */
+    public synchronized void AddAll(FixOrderSet other)
+    {
+        numInvestigated += other.numInvestigated;
+        for (int i=0;i<other.FixOrders.size();i++)
+        {
+            int index = Insert(other.FixOrders.get(i));
+            if (!logFamilies || !other.logFamilies) continue;
+
+            for (int e=other.firstFamily[i]; e!=NO_FAMILY; e=other.nextFamily[e])
+            {
+                int entry = AppendFamily(index);
+                System.arraycopy(other.familyLog, e * other.familyWords, familyLog, entry * familyWords,
+                        Math.min(other.familyWords, familyWords));
+            }
+        }
+    }
+
+    /**
+     * @return The number of (closed) families added to this set, including those which generated duplicate relations.
+     */
+    public long InvestigatedCount()
+    {
+        return numInvestigated;
+    }
+
+    /**
+     * @return Whether the families which generated each relation are logged.
+     */
+    public boolean LogsFamilies()
+    {
+        return logFamilies;
+    }
+
+    /**
+     * @param fixOrder The relation to look up.
+     * @return The index of the relation in FixOrders, or -1 if it is not in this set.
      */
-    public void Add(FixOrder fixOrder, BitSet familyMask)
+    public synchronized int IndexOf(FixOrder fixOrder)
     {
-        if (FixOrderToFamilyMap.containsKey(fixOrder))
+        int mask = slotIndices.length - 1;
+        for (int slot = SlotOf(fixOrder.Fingerprint, mask); slotIndices[slot] != 0; slot = (slot + 1) & mask)
+        {
+            int index = slotIndices[slot] - 1;
+            if (slotFingerprints[slot] == fixOrder.Fingerprint && FixOrders.get(index).equals(fixOrder))
+                return index;
+        }
+        return -1;
+    }
+
+    /**
+     * @param index The index of a relation in FixOrders.
+     * @return The ccMasks (as in BitSet.toLongArray()) of the families which generated this relation,
+     *  in the order they were added. Empty if families are not logged.
+     */
+    public synchronized ArrayList<long[]> FamiliesOf(int index)
+    {
+        ArrayList<long[]> families = new ArrayList<long[]>();
+        if (!logFamilies) return families;
+
+        for (int e=firstFamily[index]; e!=NO_FAMILY; e=nextFamily[e])
+            families.add(Arrays.copyOfRange(familyLog, e * familyWords, (e + 1) * familyWords));
+        return families;
+    }
+
+    /**
+     * Find the index of the relation, adding it to FixOrders if it is new.
+     */
+    private int Insert(FixOrder fixOrder)
+    {
+        int index = IndexOf(fixOrder);
+        if (index != -1) return index;
+
+        index = FixOrders.size();
+        FixOrders.add(fixOrder);
+        if (index == firstFamily.length)
         {
-            FixOrderToFamilyMap.get(fixOrder).add(familyMask);
+            firstFamily = Arrays.copyOf(firstFamily, 2 * index);
+            lastFamily = Arrays.copyOf(lastFamily, 2 * index);
         }
-        else
+        firstFamily[index] = NO_FAMILY;
+        lastFamily[index] = NO_FAMILY;
+
+        // keep the table at most half full, so probes stay short.
+        if (2 * FixOrders.size() > slotIndices.length) Rehash(2 * slotIndices.length);
+        else PutSlot(index);
+        return index;
+    }
+
+    /** Place the index of this fix-order in the first free slot for its fingerprint. */
+    private void PutSlot(int index)
+    {
+        long fingerprint = FixOrders.get(index).Fingerprint;
+        int mask = slotIndices.length - 1;
+        int slot = SlotOf(fingerprint, mask);
+        while (slotIndices[slot] != 0) slot = (slot + 1) & mask;
+
+        slotIndices[slot] = index + 1;
+        slotFingerprints[slot] = fingerprint;
+    }
+
+    /** Rebuild the table with the given (power of 2) number of slots. */
+    private void Rehash(int capacity)
+    {
+        slotIndices = new int[capacity];
+        slotFingerprints = new long[capacity];
+        for (int i=0;i<FixOrders.size();i++)
+            PutSlot(i);
+    }
+
+    private static int SlotOf(long fingerprint, int mask)
+    {
+        return (int)(fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    /** @return The log entry of a new family of the index'th fix-order, whose words are clear. */
+    private int AppendFamily(int index)
+    {
+        int entry = numFamilies++;
+        if (entry == nextFamily.length)
         {
-            ArrayList<BitSet> families = new ArrayList<BitSet>();
-            families.add(familyMask);
-            FixOrderToFamilyMap.put(fixOrder, families);
-            FixOrders.add(fixOrder);
+            nextFamily = Arrays.copyOf(nextFamily, 2 * entry);
+            familyLog = Arrays.copyOf(familyLog, 2 * entry * familyWords);
         }
+
+        nextFamily[entry] = NO_FAMILY;
+        if (lastFamily[index] == NO_FAMILY) firstFamily[index] = entry;
+        else nextFamily[lastFamily[index]] = entry;
+        lastFamily[index] = entry;
+        return entry;
     }
 
     /**
-     * Build up the relation corresponding to this family-of-subgroups mask.
+     * Build up the relation corresponding to this family-of-subgroups mask, on the elements of the group.
      *
      * @param inputGroup The processed input
      * @param familyMask A mask representing which subgroups are in this family.
      * @return The relation determined by this family.
      */
     public static BitSet BuildRelation(Group inputGroup, BitSet familyMask)
+    {
+        return ExpandRelation(inputGroup, BuildClassRelation(inputGroup, familyMask));
+    }
+
+    /**
+     * Build up the relation corresponding to this family-of-subgroups mask, on the element classes of the group
+     *  (see {@link Group#ElementClasses}). This is the relation held by a FixOrder.
+     *  Row a (the classes b with a <= b) is the intersection of the subgroups in the family which contain a,
+     *  so each row is built by and-ing the element class words of those subgroups.
+     *
+     * @param inputGroup The processed input
+     * @param familyMask A mask representing which subgroups are in this family.
+     * @return The relation determined by this family, on element classes.
+     */
+    public static BitSet BuildClassRelation(Group inputGroup, BitSet familyMask)
+    {
+        int len = inputGroup.NumElementClasses;
+        int words = (len + Long.SIZE - 1) / Long.SIZE;
+        long[] relation = new long[(len*len + Long.SIZE - 1) / Long.SIZE];
+        long[] row = new long[words];
+
+        for (int a=0;a<len;a++)
+        {
+            // start with the whole group: a <= b holds for all b unless a subgroup in the family separates them.
+            Arrays.fill(row, -1L);
+            if (len % Long.SIZE != 0) row[words-1] = (1L << (len % Long.SIZE)) - 1;
+
+            BitSet containing = inputGroup.ElementMasks[inputGroup.ElementClassRepresentatives[a]];
+            for (int s=containing.nextSetBit(0); s>=0; s=containing.nextSetBit(s+1))
+            {
+                if (!familyMask.get(s)) continue;
+
+                long[] subgroup = inputGroup.SubgroupElementClassWords[s];
+                for (int w=0;w<words;w++)
+                    row[w] &= subgroup[w];
+            }
+
+            CopyRow(row, relation, ToSerialIndex(a, 0, len));
+        }
+
+        return BitSet.valueOf(relation);
+    }
+
+    /**
+     * Expand a relation on the element classes of a group to a relation on its elements.
+     *
+     * @param inputGroup The processed input
+     * @param classRelation The relation on element classes, as built by {@link #BuildClassRelation}.
+     * @return The relation on elements, where i <= j iff class(i) <= class(j).
+     */
+    public static BitSet ExpandRelation(Group inputGroup, BitSet classRelation)
+    {
+        int len = inputGroup.NumElements;
+        int numClasses = inputGroup.NumElementClasses;
+        long[] relation = new long[(len*len + Long.SIZE - 1) / Long.SIZE];
+
+        // all the elements of a class share the same row.
+        long[][] classRows = new long[numClasses][];
+        for (int i=0;i<len;i++)
+        {
+            int a = inputGroup.ElementClasses[i];
+            if (classRows[a] == null)
+            {
+                classRows[a] = new long[(len + Long.SIZE - 1) / Long.SIZE];
+                for (int j=0;j<len;j++)
+                    if (classRelation.get(ToSerialIndex(a, inputGroup.ElementClasses[j], numClasses)))
+                        classRows[a][j / Long.SIZE] |= 1L << j;
+            }
+
+            CopyRow(classRows[a], relation, ToSerialIndex(i, 0, len));
+        }
+
+        return BitSet.valueOf(relation);
+    }
+
+    /**
+     * Expand a relation on the element classes of a group to a matrix on its elements. As {@link #ExpandRelation},
+     *  but each element after the first of its class copies the row of that first element a word at a time.
+     */
+    public static BitMatrix ExpandRelationMatrix(Group inputGroup, BitSet classRelation)
+    {
+        int len = inputGroup.NumElements;
+        int numClasses = inputGroup.NumElementClasses;
+        BitMatrix relation = new BitMatrix(len);
+
+        int[] firstOfClass = new int[numClasses];
+        Arrays.fill(firstOfClass, -1);
+        for (int i=0;i<len;i++)
+        {
+            int a = inputGroup.ElementClasses[i];
+            if (firstOfClass[a] == -1)
+            {
+                firstOfClass[a] = i;
+                for (int j=0;j<len;j++)
+                    if (classRelation.get(ToSerialIndex(a, inputGroup.ElementClasses[j], numClasses)))
+                        relation.Set(i, j);
+            }
+            else relation.OrRow(i, relation, firstOfClass[a]);
+        }
+
+        return relation;
+    }
+
+    /**
+     * @return The number of pairs of elements related by a relation on the element classes of a group.
+     */
+    public static int ElementCardinality(Group inputGroup, BitSet classRelation)
+    {
+        int numClasses = inputGroup.NumElementClasses;
+        int cardinality = 0;
+        for (int k=classRelation.nextSetBit(0); k>=0; k=classRelation.nextSetBit(k+1))
+            cardinality += inputGroup.ElementClassSizes[k / numClasses] * inputGroup.ElementClassSizes[k % numClasses];
+        return cardinality;
+    }
+
+    /**
+     * Or a row of words into a relation of words, starting at any bit of the relation.
+     *  Assumes that the bits of the row beyond the row length are clear.
+     */
+    private static void CopyRow(long[] row, long[] relation, int offset)
+    {
+        int shift = offset % Long.SIZE;
+        int word = offset / Long.SIZE;
+        for (int w=0;w<row.length;w++, word++)
+        {
+            relation[word] |= row[w] << shift;
+            if (shift != 0 && word + 1 < relation.length)
+                relation[word + 1] |= row[w] >>> (Long.SIZE - shift);
+        }
+    }
+
+    /**
+     * Build up the relation corresponding to this family-of-subgroups mask, one pair of elements at a time.
+     *  As {@link #BuildRelation}, which should be preferred.
+     *
+     * @param inputGroup The processed input
+     * @param familyMask A mask representing which subgroups are in this family.
+     * @return The relation determined by this family.
+     */
+    public static BitSet BuildRelationPairwise(Group inputGroup, BitSet familyMask)
     {
         int len = inputGroup.NumElements;
         BitSet relation = new BitSet(len*len);
@@ -84,43 +412,286 @@ public class FixOrderSet
     }
 
     /**
-     * Sort the relations in this set by cardinality of the bit-sets
+     * Sort the relations in this set by cardinality of the bit-sets.
+     *  The sort is stable, and each relation keeps its families.
      */
-    public void SortRelations()
+    public synchronized void SortRelations()
     {
-        Collections.sort(FixOrders);
+        int numFixOrders = FixOrders.size();
+        Integer[] order = new Integer[numFixOrders];
+        for (int i=0;i<numFixOrders;i++) order[i] = i;
+
+        final ArrayList<FixOrder> unsorted = new ArrayList<FixOrder>(FixOrders);
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return unsorted.get(a).compareTo(unsorted.get(b));
+            }
+        });
+
+        int[] unsortedFirst = firstFamily.clone();
+        int[] unsortedLast = lastFamily.clone();
+        for (int i=0;i<numFixOrders;i++)
+        {
+            FixOrders.set(i, unsorted.get(order[i]));
+            firstFamily[i] = unsortedFirst[order[i]];
+            lastFamily[i] = unsortedLast[order[i]];
+        }
+
+        Rehash(slotIndices.length);
     }
 
     /**
      * Generates the lattice of fix-set quasi-orders.
-     * @return The bitset representing this lattice/relation.
+     * @return The matrix representing this lattice/relation.
      */
-    public BitSet GenerateOverallQuasiOrder()
+    public BitMatrix GenerateOverallQuasiOrder()
     {
-        // start with the unique relations (ordered by number of set bits)
+        return GenerateOverallQuasiOrder(1);
+    }
+
+    /**
+     * Generates the lattice of fix-set quasi-orders, with its rows spread over several threads,
+     *  by comparing the relations themselves. See {@link #OrderByContainment}.
+     *
+     * @param parallelism The number of threads.
+     * @return The matrix representing this lattice/relation.
+     */
+    public BitMatrix GenerateOverallQuasiOrder(int parallelism)
+    {
+        long[][] words = new long[FixOrders.size()][];
+        for (int i=0;i<words.length;i++) words[i] = FixOrders.get(i).Relation.toLongArray();
+        return OrderByContainment(words, parallelism);
+    }
+
+    /**
+     * Generates the lattice of fix-set quasi-orders, with its rows spread over several threads,
+     *  by comparing the canonical families of the relations (see {@link #CanonicalFamilies}) rather than the relations.
+     *  A larger family gives a smaller relation, and for canonical families the converse holds too:
+     *  relation j is contained in relation i iff the family of i is contained in that of j,
+     *  i.e. iff the classes outside the family of j are outside that of i.
+     *  So the order is the containment of the complements of the families, which span only a word or so.
+     *
+     * @param inputGroup The group the relations are fix-orders of.
+     * @param parallelism The number of threads.
+     * @return The matrix representing this lattice/relation.
+     */
+    public BitMatrix GenerateOverallQuasiOrder(Group inputGroup, int parallelism)
+    {
+        long[][] families = CanonicalFamilies(inputGroup);
+        long[][] words = new long[families.length][];
+        for (int i=0;i<families.length;i++)
+        {
+            BitSet outside = BitSet.valueOf(families[i]);
+            outside.flip(0, inputGroup.NumConjugacyClasses);
+            words[i] = outside.toLongArray();
+        }
+        return OrderByContainment(words, parallelism);
+    }
+
+    /**
+     * The canonical family of a relation holds every class of subgroups whose own relation contains it,
+     *  so it is the largest family which generates the relation (a relation is the intersection of those of its classes).
+     *  It starts from the union of the logged families of the relation, which generates it too, and so is
+     *  already the canonical family when every closed family was logged. Only the classes outside the union are
+     *  checked against the relation of their class.
+     *
+     * @param inputGroup The group the relations are fix-orders of.
+     * @return The ccMask (as BitSet.toLongArray(), of {@link Group#ClassMaskWords} words) of the canonical
+     *  family of each relation.
+     */
+    public synchronized long[][] CanonicalFamilies(Group inputGroup)
+    {
+        long[][] classRelations = ClassRelations(inputGroup);
+
         int numRels = FixOrders.size();
-        BitSet result = new BitSet(numRels*numRels);
+        long[][] families = new long[numRels][inputGroup.ClassMaskWords];
+        for (int i=0;i<numRels;i++)
+        {
+            long[] family = families[i];
+            if (logFamilies)
+                for (int e=firstFamily[i]; e!=NO_FAMILY; e=nextFamily[e])
+                    for (int w=0;w<Math.min(familyWords, family.length);w++) family[w] |= familyLog[e * familyWords + w];
+
+            CompleteCanonicalFamily(FixOrders.get(i).Relation.toLongArray(), family, classRelations);
+        }
+        return families;
+    }
 
-        for(int i=0;i<numRels;i++)
+    /**
+     * @param inputGroup The group the relations are fix-orders of.
+     * @return The words (as BitSet.toLongArray()) of the relation of each conjugacy class of subgroups on its own.
+     */
+    static long[][] ClassRelations(Group inputGroup)
+    {
+        long[][] classRelations = new long[inputGroup.NumConjugacyClasses][];
+        for (int c=0;c<classRelations.length;c++)
+            classRelations[c] = BuildClassRelation(inputGroup, inputGroup.ConjugacyClasses[c]).toLongArray();
+        return classRelations;
+    }
+
+    /**
+     * Add every class whose own relation contains the relation to a family which generates it,
+     *  making it the canonical family of the relation. See {@link #CanonicalFamilies}.
+     *
+     * @param relation The words of the relation, as BitSet.toLongArray().
+     * @param family The ccMask of a family which generates the relation (or of none), which is completed in place.
+     * @param classRelations The relations of the classes, see {@link #ClassRelations}.
+     */
+    static void CompleteCanonicalFamily(long[] relation, long[] family, long[][] classRelations)
+    {
+        for (int c=0;c<classRelations.length;c++)
         {
-            result.set(ToSerialIndex(i,i,numRels));
-            FixOrder eI = FixOrders.get(i);
-            for(int j=i+1;j<numRels;j++)
+            long bit = 1L << c;
+            if ((family[c / Long.SIZE] & bit) == 0 && FixOrder.IsSubset(relation, classRelations[c]))
+                family[c / Long.SIZE] |= bit;
+        }
+    }
+
+    /**
+     * Find the order of containment between the relations (or other sets of bits), which are sorted as in
+     *  {@link #SortRelations}, so that a relation is contained only in those before it.
+     *  Row j holds the relations which contain relation j. Rather than checking every relation before j,
+     *  the row is found from an inverted index: for each bit of the relations, the set of relations which
+     *  hold it, as words over the relation indices. Row j is then the intersection of the sets of the bits of
+     *  relation j, which is narrowed by the rarest bits first, and only over the words where candidates remain.
+     *  Once few enough candidates remain that checking each by {@link FixOrder#IsSubset} is cheaper than another
+     *  intersection, they are checked directly. Bits which every relation holds are never intersected.
+     *  Rows of a BitMatrix share no words, so each thread writes only its own.
+     *
+     * @param words The words of each relation, as BitSet.toLongArray().
+     * @param parallelism The number of threads.
+     * @return The matrix representing this lattice/relation.
+     */
+    private BitMatrix OrderByContainment(final long[][] words, int parallelism)
+    {
+        final int numRels = FixOrders.size();
+        final int rowWords = (numRels + Long.SIZE - 1) / Long.SIZE;
+        final BitMatrix result = new BitMatrix(numRels);
+
+        // if cardinality is equal then relations must be different (so a and b are not related):
+        //  only the relations before the first of the same cardinality can contain a relation.
+        final int[] firstOfCardinality = new int[numRels];
+        int numBits = 0;
+        for (int i=0;i<numRels;i++)
+        {
+            numBits = Math.max(numBits, words[i].length * Long.SIZE);
+            boolean sameAsPrevious = (i > 0) && FixOrders.get(i - 1).Cardinality == FixOrders.get(i).Cardinality;
+            firstOfCardinality[i] = sameAsPrevious ? firstOfCardinality[i - 1] : i;
+        }
+
+        // the inverted index: the relations holding each bit.
+        final long[][] holders = new long[numBits][];
+        int[] numHolders = new int[numBits];
+        for (int i=0;i<numRels;i++)
+        {
+            for (int w=0;w<words[i].length;w++)
             {
-                // determine the order: card[i] >= card[j] is guaranteed by sorting.
-                // if cardinality is equal then relations must be different (so a and b are not related).
-                FixOrder eJ = FixOrders.get(j);
-                if (eI.Cardinality != eJ.Cardinality)
+                for (long word = words[i][w]; word != 0; word &= word - 1)
                 {
-                    // only possible relation is (j,i) which occurs when j <= i;
-                    BitSet jCopy = (BitSet)eJ.Relation.clone();
-                    jCopy.and(eI.Relation);
-                    if (jCopy.equals(eJ.Relation))
-                        result.set(ToSerialIndex(j,i,numRels));
+                    int b = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+                    if (holders[b] == null) holders[b] = new long[rowWords];
+                    holders[b][i / Long.SIZE] |= 1L << i;
+                    numHolders[b]++;
                 }
             }
         }
 
+        // the bits which narrow the candidates, rarest first.
+        final int[] bitOrder = RarestFirst(numHolders, numRels);
+
+        GroupUtil.FillRowBands(numRels, parallelism, new GroupUtil.IRowBand()
+        {
+            public void Fill(int start, int end)
+            {
+                long[] candidates = new long[rowWords];
+                for (int j=start;j<end;j++)
+                {
+                    result.Set(j, j);
+                    FindContaining(j, firstOfCardinality[j], words, holders, bitOrder, candidates);
+                    result.OrRow(j, candidates);
+                }
+            }
+        });
+
         return result;
     }
+
+    /** @return The bits held by some but not all of the relations, by increasing number of holders. */
+    private static int[] RarestFirst(final int[] numHolders, int numRels)
+    {
+        ArrayList<Integer> bits = new ArrayList<Integer>();
+        for (int b=0;b<numHolders.length;b++)
+            if (numHolders[b] > 0 && numHolders[b] < numRels) bits.add(b);
+
+        Collections.sort(bits, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return numHolders[a] - numHolders[b];
+            }
+        });
+
+        int[] bitOrder = new int[bits.size()];
+        for (int k=0;k<bitOrder.length;k++) bitOrder[k] = bits.get(k);
+        return bitOrder;
+    }
+
+    /**
+     * Find the relations before limit which contain relation j.
+     * @param candidates Receives them, as words over the relation indices.
+     */
+    private static void FindContaining(int j, int limit, long[][] words, long[][] holders, int[] bitOrder, long[] candidates)
+    {
+        Arrays.fill(candidates, 0L);
+        if (limit == 0) return;
+
+        // start with every relation before the limit.
+        int lo = 0, hi = (limit + Long.SIZE - 1) / Long.SIZE;
+        Arrays.fill(candidates, 0, hi, -1L);
+        if (limit % Long.SIZE != 0) candidates[hi - 1] = (1L << limit) - 1;
+
+        long[] relation = words[j];
+        boolean isExact = true;
+        for (int b : bitOrder)
+        {
+            int w = b / Long.SIZE;
+            if (w >= relation.length || (relation[w] & (1L << b)) == 0) continue;
+
+            // narrow the candidates to the holders of b, and the words to those where candidates remain.
+            long[] holdersOfB = holders[b];
+            int count = 0, newLo = hi, newHi = lo;
+            for (int k=lo;k<hi;k++)
+            {
+                candidates[k] &= holdersOfB[k];
+                if (candidates[k] == 0) continue;
+
+                count += Long.bitCount(candidates[k]);
+                if (newLo == hi) newLo = k;
+                newHi = k + 1;
+            }
+            lo = newLo;
+            hi = newHi;
+            if (count == 0) return;
+
+            // check the few that remain directly, when that is cheaper than another intersection.
+            if ((long)count * relation.length < hi - lo)
+            {
+                isExact = false;
+                break;
+            }
+        }
+
+        if (isExact) return;
+
+        for (int k=lo;k<hi;k++)
+        {
+            for (long word = candidates[k]; word != 0; word &= word - 1)
+            {
+                int i = k * Long.SIZE + Long.numberOfTrailingZeros(word);
+                if (!FixOrder.IsSubset(relation, words[i])) candidates[k] &= ~(1L << i);
+            }
+        }
+    }
 }
@@ -1,12 +1,15 @@
 package quasiorder;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Generate all possible (faithful) Quasi-Orders on a given group
@@ -18,24 +21,50 @@ public class Generate
 {
     private static final String INPUT_EXT = ".in";
     private static final int REL_MAX_SIZE = 2000;
-    private static int iterCount = 0;
+    private static final String CHECKPOINT_EXT = ".ckpt";
+    private static final String IMAGE_EXT = ".grp";
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 60 * 1000;
 
     /** For processing and storing of args */
     private static class CommandLineArgs
     {
-        private static final int MAX_ARGS = 6;
+        private static final int MAX_ARGS = 14;
         private static final int MIN_ARGS = 1;
 
         public final boolean sortElements;
         public final boolean outputAllGraphs;
         public final boolean thresholdRelationsBySize;
+        public final boolean closedFamiliesOnly;
+        public final boolean countOnly;
+        public final boolean byOrbits;
+        public final boolean lazyIntersections;
+        public final boolean cacheGroup;
+        public final boolean checkpoint;
+        public final boolean resume;
+        public final int shard;
+        public final int numShards;
+        public final int mergeShards;
+        public final int parallelism;
         public final String title;
 
-        private CommandLineArgs(boolean sortElements, boolean outputAllGraphs, boolean thresholdRelationsBySize, String title)
+        private CommandLineArgs(boolean sortElements, boolean outputAllGraphs, boolean thresholdRelationsBySize,
+                                boolean closedFamiliesOnly, boolean countOnly, boolean byOrbits, boolean lazyIntersections, boolean cacheGroup,
+                                boolean checkpoint, boolean resume, int shard, int numShards, int mergeShards, int parallelism, String title)
         {
             this.sortElements = sortElements;
             this.outputAllGraphs = outputAllGraphs;
             this.thresholdRelationsBySize = thresholdRelationsBySize;
+            this.closedFamiliesOnly = closedFamiliesOnly;
+            this.countOnly = countOnly;
+            this.byOrbits = byOrbits;
+            this.lazyIntersections = lazyIntersections;
+            this.cacheGroup = cacheGroup;
+            this.checkpoint = checkpoint;
+            this.resume = resume;
+            this.shard = shard;
+            this.numShards = numShards;
+            this.mergeShards = mergeShards;
+            this.parallelism = parallelism;
             this.title = title;
         }
 
@@ -47,19 +76,67 @@ public class Generate
             boolean sortElements = false;
             boolean outputAllGraphs = false;
             boolean thresholdRelationsBySize = false;
+            boolean closedFamiliesOnly = false;
+            boolean countOnly = false;
+            boolean byOrbits = false;
+            boolean lazyIntersections = false;
+            boolean cacheGroup = false;
+            boolean checkpoint = false;
+            boolean resume = false;
+            int shard = 0;
+            int numShards = 0;
+            int mergeShards = 0;
+            int parallelism = 1;
             String title = null;
-            for (String arg : args)
+            for (int i=0;i<args.length;i++)
             {
+                String arg = args[i];
                 if (arg.equals("-s")) sortElements = true;
                 else if (arg.equals("-o")) outputAllGraphs = true;
                 else if (arg.equals("-t")) thresholdRelationsBySize = true;
+                else if (arg.equals("-c")) closedFamiliesOnly = true;
+                else if (arg.equals("-n")) countOnly = true;
+                else if (arg.equals("-a")) byOrbits = true;
+                else if (arg.equals("-l")) lazyIntersections = true;
+                else if (arg.equals("--cache")) cacheGroup = true;
+                else if (arg.equals("--checkpoint")) checkpoint = true;
+                else if (arg.equals("--resume")) checkpoint = resume = true;
+                else if (arg.equals("--shard") && i + 1 < args.length)
+                {
+                    String[] slice = args[++i].split("/");
+                    if (slice.length != 2) throw ExceptionWith("Invalid shard: %s. Expected i/N", args[i]);
+                    numShards = ParsePositive(slice[1], "number of shards");
+                    shard = ParsePositive(slice[0], "shard");
+                    if (shard > numShards) throw ExceptionWith("Invalid shard: %s. Expected 1 <= i <= N", args[i]);
+                }
+                else if (arg.equals("--merge") && i + 1 < args.length) mergeShards = ParsePositive(args[++i], "number of shards");
+                else if (arg.equals("-p")) parallelism = Runtime.getRuntime().availableProcessors();
+                else if (arg.startsWith("-p")) parallelism = ParsePositive(arg.substring(2), "number of threads");
                 else if (arg.startsWith("-")) throw ExceptionWith("Unknown flag: %s", arg);
                 else title = (arg.endsWith(INPUT_EXT)) ? RemoveSuffix(arg, INPUT_EXT) : arg;
             }
 
             if (title == null) throw ExceptionWith("Title was not specified.");
+            if (shard > 0 && mergeShards > 0) throw ExceptionWith("Cannot both enumerate and merge shards.");
+            if (byOrbits && (checkpoint || shard > 0 || mergeShards > 0))
+                throw ExceptionWith("Cannot enumerate by orbits with checkpoints or shards.");
+            if (countOnly && (checkpoint || shard > 0 || mergeShards > 0))
+                throw ExceptionWith("Cannot only count with checkpoints or shards.");
+
+            return new CommandLineArgs(sortElements, outputAllGraphs, thresholdRelationsBySize, closedFamiliesOnly, countOnly,
+                    byOrbits, lazyIntersections, cacheGroup, checkpoint, resume, shard, numShards, mergeShards, parallelism, title);
+        }
+
+        private static int ParsePositive(String number, String name)
+        {
+            try
+            {
+                int value = Integer.parseInt(number);
+                if (value >= 1) return value;
+            }
+            catch (NumberFormatException ignored) {}
 
-            return new CommandLineArgs(sortElements, outputAllGraphs, thresholdRelationsBySize, title);
+            throw ExceptionWith("Invalid %s: %s", name, number);
         }
 
         private static String RemoveSuffix(String orig, String suffix)
@@ -74,10 +151,20 @@ public class Generate
 
         public static void PrintUsageMessage()
         {
-            System.err.println("Usage: java quasiorder.Generate title [-s] [-o] [-t] [-n]");
+            System.err.println("Usage: java quasiorder.Generate title [-s] [-o] [-t] [-c] [-a] [-l] [-p[N]] [-n] [--cache] [--checkpoint | --resume] [--shard i/N | --merge N]");
             System.err.println("\t-s means automatically sort the elements");
             System.err.println("\t-o means include graph files for all quasi-orders (in the file \"<title>.q<N>.lat\"");
             System.err.println("\t-t means do not output lattices for relations larger than " + REL_MAX_SIZE + " fix-orders.");
+            System.err.println("\t-c means visit only the closed families (by NextClosure), instead of every family");
+            System.err.println("\t-a means visit only one closed family per automorphism orbit, and map its fix-order onto the rest");
+            System.err.println("\t-l means compute the intersections of subgroups as they are needed, instead of keeping the whole table");
+            System.err.println("\t-p means enumerate the families in parallel, on N threads (default: one per processor)");
+            System.err.println("\t-n means only count the fix-orders, without keeping them or writing any files");
+            System.err.println("\t--cache means load the processed group from \"<title>" + IMAGE_EXT + "\" (written on the first run), instead of the input");
+            System.err.println("\t--checkpoint means save the progress of the enumeration to \"<title>" + CHECKPOINT_EXT + "\" as it goes");
+            System.err.println("\t--resume means continue from the progress saved by an interrupted run with --checkpoint (and keep saving it)");
+            System.err.println("\t--shard means enumerate only the i'th of N slices of the families, into \"<title>.shard<i>of<N>" + CHECKPOINT_EXT + "\"");
+            System.err.println("\t--merge means combine the complete files of all N shards, and output the fix-orders as a single run would");
             System.err.println();
             System.err.println("\tThe title is the name of the group. <prefix>.in will be shortened to <prefix>");
             System.err.println("\tThe input file is assumed to be \"<title>.in\".");
@@ -115,7 +202,7 @@ public class Generate
             int curIndex = 0;
             for (FixOrder b : relations.FixOrders)
             {
-                RelationFormat.PrintSubgroupFamilyList(inputGroup, relations.FixOrderToFamilyMap.get(b), curIndex, rawOutput);
+                RelationFormat.PrintSubgroupFamilyList(inputGroup, relations.FamiliesOf(curIndex), curIndex, rawOutput);
                 colours[curIndex] = b.isFaithful ? (b.isNormal ? "chartreuse1" : "yellow") : (b.isNormal ? "cadetblue1" : "gray");
                 curIndex++;
             }
@@ -123,7 +210,7 @@ public class Generate
             // print quasi-orders:
             curIndex=0;
             for(FixOrder b : relations.FixOrders)
-                RelationFormat.PrintRelation(b.Relation, inputGroup.ElementNames, inputGroup.NumElements, curIndex++, rawOutput);
+                RelationFormat.PrintRelation(b, inputGroup, curIndex++, rawOutput);
 
             // output all graphs (if needed)
             if (args.outputAllGraphs)
@@ -132,19 +219,20 @@ public class Generate
                 for(FixOrder b : relations.FixOrders)
                 {
                     PrintWriter graphWriter = new PrintWriter(args.title + ".g" + curIndex++ + ".lat");
-                    graphWriter.println(RelationFormat.PrintRelationEdges(b.Relation, inputGroup.ElementNames, colours, new LinkedList<ArrayList<Integer>>(), inputGroup.NumElements));
+                    BitMatrix relation = FixOrderSet.ExpandRelationMatrix(inputGroup, b.Relation);
+                    graphWriter.println(RelationFormat.PrintRelationEdges(relation, inputGroup.ElementNames, colours, new LinkedList<ArrayList<Integer>>()));
                     graphWriter.close();
                 }
             }
 
             // print the lattice of all fix-set quasi-orders:
             if (!args.thresholdRelationsBySize || relations.FixOrders.size() < REL_MAX_SIZE)
-                PrintLatticeOfAllFixSetQuasiOrders(inputGroup, rawOutput, args.title, relations, colours);
-            else System.err.println("Skipped lattice: size=" + relations.FixOrderToFamilyMap.keySet().size() + " is too big");
+                PrintLatticeOfAllFixSetQuasiOrders(inputGroup, rawOutput, args.title, relations, colours, args.parallelism);
+            else System.err.println("Skipped lattice: size=" + relations.FixOrders.size() + " is too big");
 
             // print summary
             String summaryString = String.format("Found %d unique relations, from %d investigated relations, [ out of 2^%d or 2^%d ]",
-                    relations.FixOrderToFamilyMap.keySet().size(), iterCount, inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups);
+                    relations.FixOrders.size(), relations.InvestigatedCount(), inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups);
 
             rawOutput.println("\n\n" + summaryString);
             System.err.println(summaryString);
@@ -156,7 +244,7 @@ public class Generate
         final String SEP = ", ";
         private void PrintLatticeOfAllFixSetQuasiOrders(
                 Group inputGroup, PrintWriter rawOutput, String title,
-                FixOrderSet relations, String[] colors) throws IOException
+                FixOrderSet relations, String[] colors, int parallelism) throws IOException
         {
             String[] latTypes = new String[] { "all", "faithful", "normal", "faithful-normal"};
             int numLatTypes = latTypes.length;
@@ -164,8 +252,8 @@ public class Generate
             int numRels = relations.FixOrders.size();
             String[] relNames = ToStandardNames(numRels);
 
-            BitSet overallRelation = relations.GenerateOverallQuasiOrder();
-            LinkedList<ArrayList<Integer>> subgraphs = AutomorphismHandler.PartitionBy(relations.FixOrders, inputGroup.Permutations, inputGroup.NumElements);
+            BitMatrix overallRelation = relations.GenerateOverallQuasiOrder(inputGroup, parallelism);
+            LinkedList<ArrayList<Integer>> subgraphs = AutomorphismHandler.PartitionBy(relations, inputGroup);
 
             PrintWriter modDistOutput = new PrintWriter(title + ".md");
             PrintWriter isLatOutput = new PrintWriter(title + ".isl");
@@ -228,23 +316,23 @@ public class Generate
 
             // print the lattice of all fix-set quasi-orders:
             if (!args.thresholdRelationsBySize || relations.FixOrders.size() < REL_MAX_SIZE)
-                PrintModDistStatusOnly(args.title, relations, pw);
-            else System.out.println("Skipped lattice: size=" + relations.FixOrderToFamilyMap.keySet().size() + " is too big");
+                PrintModDistStatusOnly(inputGroup, args.title, relations, pw, args.parallelism);
+            else System.out.println("Skipped lattice: size=" + relations.FixOrders.size() + " is too big");
 
             // print summary
             String summaryString = String.format("Found %d unique relations, from %d investigated relations, [ out of 2^%d or 2^%d ]",
-                    relations.FixOrderToFamilyMap.keySet().size(), iterCount, inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups);
+                    relations.FixOrders.size(), relations.InvestigatedCount(), inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups);
 
             System.err.println(summaryString);
             pw.close();
         }
 
-        private void PrintModDistStatusOnly(String title, FixOrderSet relations, PrintWriter output) throws IOException
+        private void PrintModDistStatusOnly(Group inputGroup, String title, FixOrderSet relations, PrintWriter output, int parallelism) throws IOException
         {
             int numRels = relations.FixOrders.size();
             String[] relNames = ToStandardNames(numRels);
 
-            BitSet overallRelation = relations.GenerateOverallQuasiOrder();
+            BitMatrix overallRelation = relations.GenerateOverallQuasiOrder(inputGroup, parallelism);
             Lattice lat = new Lattice(overallRelation, numRels, relNames, relNames, new LinkedList<ArrayList<Integer>>());
 
             MeetJoinDeterminedLattice mjdLat = MeetJoinDeterminedLattice.FromLattice(lat);
@@ -268,18 +356,18 @@ public class Generate
 
             // print the lattice of all fix-set quasi-orders:
             if (!args.thresholdRelationsBySize || relations.FixOrders.size() < REL_MAX_SIZE)
-                PrintModDistOfFixSetQuasiOrders(pw, inputGroup, args.title, relations);
-            else System.out.println("Skipped lattice: size=" + relations.FixOrderToFamilyMap.keySet().size() + " is too big");
+                PrintModDistOfFixSetQuasiOrders(pw, inputGroup, args.title, relations, args.parallelism);
+            else System.out.println("Skipped lattice: size=" + relations.FixOrders.size() + " is too big");
 
             // print summary
             String summaryString = String.format("Found %d unique relations, from %d investigated relations, [ out of 2^%d or 2^%d ]",
-                    relations.FixOrderToFamilyMap.keySet().size(), iterCount, inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups);
+                    relations.FixOrders.size(), relations.InvestigatedCount(), inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups);
 
             System.err.println(summaryString);
             pw.close();
         }
 
-        private void PrintModDistOfFixSetQuasiOrders(PrintWriter output, Group inputGroup, String title, FixOrderSet relations) throws IOException
+        private void PrintModDistOfFixSetQuasiOrders(PrintWriter output, Group inputGroup, String title, FixOrderSet relations, int parallelism) throws IOException
         {
             String[] latTypes = new String[] { "all", "faithful", "normal", "faithful-normal"};
             int numLatTypes = latTypes.length;
@@ -287,8 +375,8 @@ public class Generate
             int numRels = relations.FixOrders.size();
             String[] relNames = ToStandardNames(numRels);
 
-            BitSet overallRelation = relations.GenerateOverallQuasiOrder();
-            LinkedList<ArrayList<Integer>> subgraphs = AutomorphismHandler.PartitionBy(relations.FixOrders, inputGroup.Permutations, inputGroup.NumElements);
+            BitMatrix overallRelation = relations.GenerateOverallQuasiOrder(inputGroup, parallelism);
+            LinkedList<ArrayList<Integer>> subgraphs = AutomorphismHandler.PartitionBy(relations, inputGroup);
 
             for (int i=0;i<numLatTypes;i++)
             {
@@ -304,47 +392,22 @@ public class Generate
         }
     };
 
-    private static void ProcessConjugacyFamily(Group inputGroup, FixOrderSet relations, long ccMask)
-    {
-        BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(inputGroup.NumSubgroups, inputGroup.NumConjugacyClasses,
-                ccMask, inputGroup.ConjugacyClasses);
-
-        List<Integer> family = GroupUtil.BitSetToList(familyMask);
-        boolean isIntersectionClosed = GroupUtil.isIntersectionClosed(inputGroup.SubgroupIntersections, family, familyMask);
-        boolean isUnionClosed = GroupUtil.isUnionClosed(inputGroup.SubgroupUnions, family, familyMask);
-
-        // Note: This is still NOT unique as Union of 3 maybe a subgroup while Union of any two pairs in that 3 are not subgroups!
-        if (isIntersectionClosed && isUnionClosed)
-        {
-            iterCount++;
-            BitSet relation = FixOrderSet.BuildRelation(inputGroup, familyMask);
-            relations.Add(FixOrder.FromRelation(relation, familyMask, inputGroup), familyMask);
-        }
-    }
-
-    private static FixOrderSet GenerateAllFixOrders(Group inputGroup)
-    {
-        FixOrderSet relations = new FixOrderSet();
-        long numSubsets = (1L << inputGroup.NumConjugacyClasses);    // 2^M
-
-        long maxIter = numSubsets / 2L;
-        if (maxIter==0) ProcessConjugacyFamily(inputGroup, relations, 1); // only 1 conj-class.
-        else for (long s=0;s<maxIter;s++)
-                ProcessConjugacyFamily(inputGroup, relations, (maxIter | s));
-
-        return relations;
-    }
-
     public static class AutomorphismHandler
     {
 
 
         /**
          * Partition fix-orders by equivalence under automorphisms.
+         *  Each fix-order is mapped to a canonical representative of its orbit (its smallest image, see
+         *  {@link #CanonicalImage}), and fix-orders with the same representative form a partition.
+         *  This costs one relation permutation per fix-order and automorphism, rather than per pair of fix-orders.
+         *
+         * The automorphisms must cover the whole orbit of each fix-order: as the outer automorphisms from GAP do,
+         *  since the inner automorphisms fix every fix-order.
          *
-         * @param fixOrders The list of all fix-orders in this group.
-         * @param automorphMaps The automorphisms of the group
-         * @param numElem The number of elements in the group
+         * @param fixOrders The list of all fix-orders in this group, sorted by cardinality.
+         * @param automorphMaps The automorphisms of the group, acting on the elements (or element classes) of the relations.
+         * @param numElem The number of elements (or element classes) in each relation
          * @return A list of partitions, each of which is a list of integers (indices of elements). The first partition lists all singletons.
          */
         public static LinkedList<ArrayList<Integer>> PartitionBy(ArrayList<FixOrder> fixOrders, ArrayList<Permutation> automorphMaps, int numElem)
@@ -354,12 +417,7 @@ public class Generate
             ArrayList<Integer> singletons = new ArrayList<Integer>();
             parts.add(singletons);
 
-            // init each element to its own group:
-            int[] res = new int[numFixOrders];
-            for (int i=0;i<numFixOrders;i++)
-                res[i]=i;
-
-            // for each size, for each element of that size, combine elements if automorphism-equivalent
+            // for each size, group the elements of that size by their canonical image
             int startIndex = 0;
             while(startIndex<numFixOrders)
             {
@@ -367,37 +425,23 @@ public class Generate
                 int endIndex = startIndex;
                 while(endIndex<numFixOrders && fixOrders.get(endIndex).Cardinality == currentSize) { endIndex++; }
 
+                // partitions are kept in order of their first element.
+                LinkedHashMap<BitSet, ArrayList<Integer>> orbits = new LinkedHashMap<BitSet, ArrayList<Integer>>();
                 for(int i=startIndex;i<endIndex;i++)
                 {
-                    // combine relations
-                    for (int j=i+1;j<endIndex;j++)
+                    BitSet canonical = CanonicalImage(fixOrders.get(i).Relation, automorphMaps, numElem);
+                    ArrayList<Integer> partition = orbits.get(canonical);
+                    if (partition == null)
                     {
-                        if (res[i]!=res[j] && isAutomorphismEquivalent(fixOrders.get(i).Relation, fixOrders.get(j).Relation, automorphMaps, numElem))
-                        {
-                            int oldGroup = res[j];
-                            for (int k=j;k<endIndex;k++)
-                                if (res[k]==oldGroup)
-                                    res[k]=res[i];
-                        }
+                        partition = new ArrayList<Integer>();
+                        orbits.put(canonical, partition);
                     }
+                    partition.add(i);
                 }
 
-                // generate the partitions from the numbers
-                for(int i=startIndex;i<endIndex;i++)
+                for (ArrayList<Integer> partition : orbits.values())
                 {
-                    if (res[i]==-1) continue; // already checked
-
-                    ArrayList<Integer> partition = new ArrayList<Integer>();
-                    partition.add(i);
-                    for(int j=i+1;j<endIndex;j++)
-                    {
-                        if (res[j]==res[i])
-                        {
-                            partition.add(j);
-                            res[j]=-1;
-                        }
-                    }
-                    if (partition.size() == 1) singletons.add(i);
+                    if (partition.size() == 1) singletons.add(partition.get(0));
                     else parts.add(partition);
                 }
 
@@ -407,6 +451,103 @@ public class Generate
             return parts;
         }
 
+        /**
+         * Partition fix-orders by equivalence under automorphisms, acting on the families which generate them.
+         *  An automorphism maps the fix-order of a family onto the fix-order of the image of the family,
+         *  so the orbit of a fix-order is found by mapping one of its families (a ccMask) by each automorphism
+         *  (see {@link Group#ClassMaskImage}), and looking up the fix-order of each image. The orbit is then
+         *  represented by its first fix-order. No relation is permuted.
+         *
+         * Falls back to {@link #PartitionBy(ArrayList, ArrayList, int)} when the families were not kept,
+         *  or do not fit in a long.
+         *
+         * @param relations The fix-orders of the group (with their families), sorted by cardinality.
+         * @param inputGroup The group.
+         * @return A list of partitions, as {@link #PartitionBy(ArrayList, ArrayList, int)}.
+         */
+        public static LinkedList<ArrayList<Integer>> PartitionBy(FixOrderSet relations, Group inputGroup)
+        {
+            if (!relations.LogsFamilies() || inputGroup.HasWideClassMasks())
+                return PartitionBy(relations.FixOrders, inputGroup.ElementClassPermutations, inputGroup.NumElementClasses);
+
+            int numFixOrders = relations.FixOrders.size();
+            long[] firstFamily = new long[numFixOrders];
+            HashMap<Long, Integer> fixOrderOfFamily = new HashMap<Long, Integer>();
+            for (int i=0;i<numFixOrders;i++)
+            {
+                ArrayList<long[]> families = relations.FamiliesOf(i);
+                firstFamily[i] = families.get(0)[0];
+                for (long[] family : families)
+                    fixOrderOfFamily.put(family[0], i);
+            }
+
+            LinkedList<ArrayList<Integer>> parts = new LinkedList<ArrayList<Integer>>();
+            ArrayList<Integer> singletons = new ArrayList<Integer>();
+            parts.add(singletons);
+
+            // partitions are kept in order of their first element.
+            LinkedHashMap<Integer, ArrayList<Integer>> orbits = new LinkedHashMap<Integer, ArrayList<Integer>>();
+            for (int i=0;i<numFixOrders;i++)
+            {
+                int first = i;
+                for (int a=0;a<inputGroup.ConjugacyClassImages.length;a++)
+                {
+                    Integer j = fixOrderOfFamily.get(inputGroup.ClassMaskImage(a, firstFamily[i]));
+                    if (j != null && j < first) first = j;
+                }
+
+                ArrayList<Integer> partition = orbits.get(first);
+                if (partition == null)
+                {
+                    partition = new ArrayList<Integer>();
+                    orbits.put(first, partition);
+                }
+                partition.add(i);
+            }
+
+            for (ArrayList<Integer> partition : orbits.values())
+            {
+                if (partition.size() == 1) singletons.add(partition.get(0));
+                else parts.add(partition);
+            }
+
+            return parts;
+        }
+
+        /**
+         * Find the smallest image of a relation under the automorphisms (and the identity),
+         *  where relations are compared as binary numbers, with bit 0 least significant.
+         *
+         * @param relation The relation.
+         * @param automorphMaps The automorphisms of the group.
+         * @param numElem The number of elements in the relation.
+         * @return The smallest image, which is the same for every relation in the orbit.
+         */
+        public static BitSet CanonicalImage(BitSet relation, ArrayList<Permutation> automorphMaps, int numElem)
+        {
+            int numWords = Permutation.RelationWords(numElem);
+            long[] canonical = Arrays.copyOf(relation.toLongArray(), numWords);
+            long[] image = new long[numWords];
+            for(Permutation p : automorphMaps)
+            {
+                p.PermuteRelation(relation, numElem, image);
+                if (CompareRelations(image, canonical) < 0)
+                {
+                    long[] t = canonical; canonical = image; image = t;
+                }
+            }
+            return BitSet.valueOf(canonical);
+        }
+
+        // Compare two relations (of the same number of words) as binary numbers: the highest bit in which they differ decides.
+        private static int CompareRelations(long[] a, long[] b)
+        {
+            for (int w=a.length-1;w>=0;w--)
+                if (a[w] != b[w])
+                    return (a[w] + Long.MIN_VALUE < b[w] + Long.MIN_VALUE) ? -1 : 1; // unsigned comparison
+            return 0;
+        }
+
         /**
          * Check if the first bitSet becomes the second when rotated by any automorphism
          * @param first The first bitSet
@@ -427,22 +568,85 @@ public class Generate
         // Check if the two bitsets become the same when rotated by the permutation
         private static boolean isAutomorphismEquivalent(BitSet first, BitSet second, Permutation p, int numElem)
         {
-            BitSet c = (BitSet)first.clone();
-            for(TwoSwap t : p.swaps)
-                FixOrder.Perform2Swap(c, t.i, t.j, numElem);
-
-           return (c.equals(second));
+           return (p.PermuteRelation(first, numElem).equals(second));
         }
     }
 
+    /**
+     * Count the fix-orders as they are found, without keeping them, and print the counts.
+     */
+    private static void PrintCountsOf(Group inputGroup, FixOrderEnumerator.IEnumerationEngine engine, CommandLineArgs args)
+    {
+        FixOrderCounter counter = new FixOrderCounter();
+        if (args.byOrbits) FixOrderEnumerator.CountFixOrdersByOrbits(inputGroup, args.parallelism, counter);
+        else if (args.parallelism > 1) FixOrderEnumerator.EnumerateFixOrdersInParallel(inputGroup, engine, args.parallelism, counter);
+        else FixOrderEnumerator.EnumerateFixOrders(inputGroup, engine, counter);
+
+        System.out.println(String.format("Found %d unique relations (%d faithful, %d normal, %d faithful-normal), from %d investigated relations, [ out of 2^%d or 2^%d ]",
+                counter.UniqueCount(), counter.FaithfulCount(), counter.NormalCount(), counter.FaithfulNormalCount(),
+                counter.InvestigatedCount(), inputGroup.NumConjugacyClasses, inputGroup.NumSubgroups));
+    }
+
+    private static File ShardFileOf(String title, int shard, int numShards)
+    {
+        return new File(String.format("%s.shard%dof%d%s", title, shard, numShards, CHECKPOINT_EXT));
+    }
+
+    /**
+     * Enumerate one shard of the families into its checkpoint file, to be merged with the other shards later.
+     */
+    private static void GenerateShard(Group inputGroup, FixOrderEnumerator.IEnumerationEngine engine, CommandLineArgs args)
+            throws IOException
+    {
+        File shardFile = ShardFileOf(args.title, args.shard, args.numShards);
+        FixOrderSet relations = FixOrderEnumerator.GenerateShardWithCheckpoints(inputGroup, engine, args.parallelism,
+                shardFile, args.resume, CHECKPOINT_INTERVAL_MILLIS, args.shard, args.numShards);
+
+        System.err.println(String.format("Shard %d/%d: found %d unique relations, from %d investigated relations, in \"%s\"",
+                args.shard, args.numShards, relations.FixOrders.size(), relations.InvestigatedCount(), shardFile));
+    }
+
     public static void main(String[] args)
     {
         try
         {
             CommandLineArgs parsedArgs = CommandLineArgs.ParseArguments(args);
-            Group inputGroup = Group.FromFile(parsedArgs.title + ".in", parsedArgs.sortElements);
+            Group inputGroup = parsedArgs.cacheGroup
+                    ? Group.FromFileWithImage(parsedArgs.title + INPUT_EXT, new File(parsedArgs.title + IMAGE_EXT),
+                            parsedArgs.sortElements, parsedArgs.lazyIntersections)
+                    : Group.FromFile(parsedArgs.title + INPUT_EXT, parsedArgs.sortElements, parsedArgs.lazyIntersections);
+
+            FixOrderEnumerator.IEnumerationEngine engine = parsedArgs.closedFamiliesOnly
+                    ? FixOrderEnumerator.ClosureEngine : FixOrderEnumerator.BruteForceEngine;
+            if (parsedArgs.countOnly)
+            {
+                PrintCountsOf(inputGroup, engine, parsedArgs);
+                return;
+            }
 
-            FixOrderSet fixOrders = GenerateAllFixOrders(inputGroup);
+            if (parsedArgs.shard > 0)
+            {
+                GenerateShard(inputGroup, engine, parsedArgs);
+                return;
+            }
+
+            FixOrderSet fixOrders;
+            if (parsedArgs.mergeShards > 0)
+            {
+                File[] shardFiles = new File[parsedArgs.mergeShards];
+                for (int i=0;i<shardFiles.length;i++)
+                    shardFiles[i] = ShardFileOf(parsedArgs.title, i + 1, shardFiles.length);
+                fixOrders = FixOrderEnumerator.MergeShards(inputGroup, shardFiles);
+            }
+            else if (parsedArgs.byOrbits)
+                fixOrders = FixOrderEnumerator.GenerateAllFixOrdersByOrbits(inputGroup, parsedArgs.parallelism);
+            else if (parsedArgs.checkpoint)
+                fixOrders = FixOrderEnumerator.GenerateAllFixOrdersWithCheckpoints(inputGroup, engine, parsedArgs.parallelism,
+                        new File(parsedArgs.title + CHECKPOINT_EXT), parsedArgs.resume, CHECKPOINT_INTERVAL_MILLIS);
+            else if (parsedArgs.parallelism > 1)
+                fixOrders = FixOrderEnumerator.GenerateAllFixOrdersInParallel(inputGroup, engine, parsedArgs.parallelism);
+            else
+                fixOrders = FixOrderEnumerator.GenerateAllFixOrders(inputGroup, engine);
             VerboseOutputMode.PrintOut(inputGroup, fixOrders, parsedArgs);
         }
         catch (IllegalArgumentException e)
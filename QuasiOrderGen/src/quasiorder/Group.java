@@ -2,6 +2,7 @@ package quasiorder;
 
 import com.google.gson.Gson;
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
@@ -9,6 +10,9 @@ import java.util.*;
 
 class Group
 {
+    /** The most conjugacy classes for which a ccMask fits in a single long (the last class is always set). */
+    public static final int MAX_NARROW_CLASSES = 63;
+
     public final int NumElements;
     public final int NumSubgroups;
     public final int NumConjugacyClasses;
@@ -17,10 +21,25 @@ class Group
     public final String[] SubgroupNames;
     public final BitSet[] ConjugacyClasses;
     public final BitSet[] SubgroupMasks;
-    public final int[][] SubgroupIntersections;
-    public final int[][] SubgroupUnions;
+    public final int NumElementClasses;
+    public final int[] ElementClasses;
+    public final int[] ElementClassRepresentatives;
+    public final int[] ElementClassSizes;
+    public final long[][] SubgroupElementClassWords;
+    public final ISubgroupTable SubgroupIntersections;
+    public final ISubgroupTable SubgroupUnions;
+    public final int[] SubgroupClasses;
+    public final int ClassMaskWords;
+    public final long[][] ClassIntersections;
+    public final long[][] ClassUnions;
+    public final long[][] WideClassIntersections;
+    public final long[][] WideClassUnions;
     public final int[][][] Automorphisms;
     public final ArrayList<Permutation> Permutations;
+    public final ArrayList<Permutation> ElementClassPermutations;
+    public final int[][] SubgroupImages;
+    public final int[][] ConjugacyClassImages;
+    public final ArrayList<Permutation> FamilyAutomorphismPermutations;
     public final BitSet IsSubgroupNormal;
 
     public Group(
@@ -29,6 +48,36 @@ class Group
             String[] subgroupNames, int[][] subgroupIntersections,
             int[][] subgroupUnions, BitSet[] conjugacyClasses, BitSet conjugacyClassNormal,
             int[][][] automorphisms, ArrayList<Permutation> permutations)
+    {
+        this(numElements, numSubgroups, numConjugacyClasses, elementMasks, elementNames, subgroupMasks, subgroupNames,
+                new GroupUtil.DenseSubgroupTable(subgroupIntersections), new GroupUtil.DenseSubgroupTable(subgroupUnions),
+                conjugacyClasses, conjugacyClassNormal, automorphisms, permutations);
+    }
+
+    public Group(
+            int numElements, int numSubgroups, int numConjugacyClasses,
+            BitSet[] elementMasks, String[] elementNames, BitSet[] subgroupMasks,
+            String[] subgroupNames, ISubgroupTable subgroupIntersections,
+            ISubgroupTable subgroupUnions, BitSet[] conjugacyClasses, BitSet conjugacyClassNormal,
+            int[][][] automorphisms, ArrayList<Permutation> permutations)
+    {
+        this(numElements, numSubgroups, numConjugacyClasses, elementMasks, elementNames, subgroupMasks, subgroupNames,
+                subgroupIntersections, subgroupUnions, conjugacyClasses, conjugacyClassNormal, automorphisms, permutations,
+                null, null);
+    }
+
+    /**
+     * As the other constructors, but with the class tables (see {@link #ToClassTable}) already lifted from the
+     *  subgroup tables, as they are stored in a {@link GroupImage}, so the subgroup tables need not be read at all.
+     *  A null class table is lifted from its subgroup table as usual.
+     */
+    Group(
+            int numElements, int numSubgroups, int numConjugacyClasses,
+            BitSet[] elementMasks, String[] elementNames, BitSet[] subgroupMasks,
+            String[] subgroupNames, ISubgroupTable subgroupIntersections,
+            ISubgroupTable subgroupUnions, BitSet[] conjugacyClasses, BitSet conjugacyClassNormal,
+            int[][][] automorphisms, ArrayList<Permutation> permutations,
+            long[][] wideClassIntersections, long[][] wideClassUnions)
     {
         NumElements = numElements;
         NumSubgroups = numSubgroups;
@@ -43,6 +92,255 @@ class Group
         IsSubgroupNormal = conjugacyClassNormal;
         Automorphisms = automorphisms;
         Permutations = permutations;
+
+        // elements in exactly the same subgroups are equivalent in every fix-order, so relations are built on classes.
+        ElementClasses = ToElementClasses(numElements, elementMasks);
+        ElementClassRepresentatives = ToElementClassRepresentatives(ElementClasses);
+        NumElementClasses = ElementClassRepresentatives.length;
+        ElementClassSizes = new int[NumElementClasses];
+        for (int i=0;i<numElements;i++) ElementClassSizes[ElementClasses[i]]++;
+        SubgroupElementClassWords = ToElementClassWords(subgroupMasks);
+        ElementClassPermutations = Permutation.FromPermutationTable(ToElementClassTable(automorphisms));
+
+        SubgroupClasses = ToSubgroupClasses(numSubgroups, numConjugacyClasses, conjugacyClasses);
+        HashMap<BitSet, Integer> subgroupOfMask = new HashMap<BitSet, Integer>();
+        for (int s=0;s<numSubgroups;s++) subgroupOfMask.put(subgroupMasks[s], s);
+        int[][][] familyAutomorphisms = ToFamilyAutomorphisms(automorphisms, subgroupOfMask);
+        SubgroupImages = new int[familyAutomorphisms.length][];
+        for (int a=0;a<familyAutomorphisms.length;a++) SubgroupImages[a] = SubgroupImageOf(familyAutomorphisms[a], subgroupOfMask);
+        ConjugacyClassImages = ToConjugacyClassImages(SubgroupImages);
+        FamilyAutomorphismPermutations = Permutation.FromPermutationTable(ToElementClassTable(familyAutomorphisms));
+        ClassMaskWords = (numConjugacyClasses + Long.SIZE - 1) / Long.SIZE;
+        WideClassIntersections = wideClassIntersections != null ? wideClassIntersections : ToClassTable(subgroupIntersections);
+        WideClassUnions = wideClassUnions != null ? wideClassUnions : ToClassTable(subgroupUnions);
+
+        // with a single word per ccMask, the wide tables have exactly the layout of the narrow ones.
+        boolean isNarrow = !HasWideClassMasks();
+        ClassIntersections = isNarrow ? WideClassIntersections : null;
+        ClassUnions = isNarrow ? WideClassUnions : null;
+    }
+
+    /**
+     * @return Whether a ccMask needs more than one long, in which case only the Wide class tables are available.
+     */
+    public boolean HasWideClassMasks()
+    {
+        return NumConjugacyClasses > MAX_NARROW_CLASSES;
+    }
+
+    /**
+     * Partition the elements by the subgroups they belong to.
+     * @return An array where entry(i) = a iff the i'th element is in the a'th element class.
+     *  The classes are numbered in order of their first element, so the identity is always in class 0.
+     */
+    private static int[] ToElementClasses(int numElements, BitSet[] elementMasks)
+    {
+        HashMap<BitSet, Integer> classOfMask = new HashMap<BitSet, Integer>();
+        int[] elementClasses = new int[numElements];
+        for (int i=0;i<numElements;i++)
+        {
+            Integer a = classOfMask.get(elementMasks[i]);
+            if (a == null)
+            {
+                a = classOfMask.size();
+                classOfMask.put(elementMasks[i], a);
+            }
+            elementClasses[i] = a;
+        }
+        return elementClasses;
+    }
+
+    /** @return An array where entry(a) is the first element in the a'th element class. */
+    private static int[] ToElementClassRepresentatives(int[] elementClasses)
+    {
+        int numElementClasses = 0;
+        for (int a : elementClasses) numElementClasses = Math.max(numElementClasses, a + 1);
+
+        int[] representatives = new int[numElementClasses];
+        for (int i=elementClasses.length-1;i>=0;i--)
+            representatives[elementClasses[i]] = i;
+        return representatives;
+    }
+
+    /**
+     * Convert the subgroup masks to masks of element classes, all of the same length, so that they can be
+     *  combined without allocation.
+     * @return An array where entry(s) is the mask of element classes in the s'th subgroup, as in BitSet.toLongArray().
+     */
+    private long[][] ToElementClassWords(BitSet[] subgroupMasks)
+    {
+        int words = (NumElementClasses + Long.SIZE - 1) / Long.SIZE;
+        long[][] classWords = new long[subgroupMasks.length][words];
+        for (int s=0;s<subgroupMasks.length;s++)
+        {
+            for (int a=0;a<NumElementClasses;a++)
+                if (subgroupMasks[s].get(ElementClassRepresentatives[a]))
+                    classWords[s][a / Long.SIZE] |= 1L << a;
+        }
+        return classWords;
+    }
+
+    /**
+     * Map each automorphism onto the element classes. An automorphism maps subgroups to subgroups,
+     *  so it maps elements in the same subgroups to elements in the same subgroups.
+     *  A permutation which does not map element classes onto element classes is not an automorphism: it is skipped here,
+     *  so that the group can still be built, and reported by {@link #Validate()}.
+     * @return The tables of (a,b) pairs, where the automorphism maps element class a onto element class b.
+     */
+    private int[][][] ToElementClassTable(int[][][] automorphisms)
+    {
+        ArrayList<int[][]> classTables = new ArrayList<int[][]>();
+        for (int[][] automorphism : automorphisms)
+        {
+            int[][] classTable = ElementClassTableOf(automorphism);
+            if (classTable != null) classTables.add(classTable);
+        }
+        return classTables.toArray(new int[classTables.size()][][]);
+    }
+
+    /** @return The table of (a,b) pairs of the automorphism on element classes, or null if it does not map classes onto classes. */
+    private int[][] ElementClassTableOf(int[][] automorphism)
+    {
+        int[] image = new int[NumElementClasses];
+        for (int a=0;a<NumElementClasses;a++)
+            image[a] = a; // in case the table omits fixed elements.
+
+        boolean isClassMap = true;
+        BitSet isMapped = new BitSet(NumElementClasses);
+        for (int[] pair : automorphism)
+        {
+            int a = ElementClasses[pair[0]];
+            int b = ElementClasses[pair[1]];
+            if (isMapped.get(a) && image[a] != b) isClassMap = false;
+            image[a] = b;
+            isMapped.set(a);
+        }
+
+        BitSet isImage = new BitSet(NumElementClasses);
+        for (int b : image) isImage.set(b);
+        if (!isClassMap || isImage.cardinality() != NumElementClasses) return null;
+
+        int[][] classTable = new int[NumElementClasses][];
+        for (int a=0;a<NumElementClasses;a++)
+            classTable[a] = new int[]{a, image[a]};
+        return classTable;
+    }
+
+    /**
+     * Select the automorphisms which act on the families: those which map subgroups onto subgroups.
+     *  Any other permutation is not an automorphism, and is skipped.
+     * @return The automorphisms of {@link #SubgroupImages}, {@link #ConjugacyClassImages} and {@link #FamilyAutomorphismPermutations}.
+     */
+    private int[][][] ToFamilyAutomorphisms(int[][][] automorphisms, HashMap<BitSet, Integer> subgroupOfMask)
+    {
+        ArrayList<int[][]> familyAutomorphisms = new ArrayList<int[][]>();
+        for (int[][] automorphism : automorphisms)
+            if (SubgroupImageOf(automorphism, subgroupOfMask) != null)
+                familyAutomorphisms.add(automorphism);
+        return familyAutomorphisms.toArray(new int[familyAutomorphisms.size()][][]);
+    }
+
+    /**
+     * Map an automorphism onto the subgroups.
+     * @param subgroupOfMask The index of each subgroup, by its mask of elements.
+     * @return An array where entry(s) = t iff the automorphism maps the s'th subgroup onto the t'th,
+     *  or null if it does not map subgroups onto subgroups.
+     */
+    private int[] SubgroupImageOf(int[][] automorphism, HashMap<BitSet, Integer> subgroupOfMask)
+    {
+        int[] image = new int[NumElements];
+        for (int i=0;i<NumElements;i++)
+            image[i] = i; // in case the table omits fixed elements.
+        for (int[] pair : automorphism)
+            image[pair[0]] = pair[1];
+
+        int[] subgroupImage = new int[NumSubgroups];
+        BitSet isImage = new BitSet(NumSubgroups);
+        for (int s=0;s<NumSubgroups;s++)
+        {
+            BitSet mask = new BitSet(NumElements);
+            for (int i=SubgroupMasks[s].nextSetBit(0); i>=0; i=SubgroupMasks[s].nextSetBit(i+1))
+                mask.set(image[i]);
+
+            Integer t = subgroupOfMask.get(mask);
+            if (t == null) return null;
+            subgroupImage[s] = t;
+            isImage.set(t);
+        }
+        return (isImage.cardinality() == NumSubgroups) ? subgroupImage : null;
+    }
+
+    /**
+     * Map each automorphism onto the conjugacy classes: it maps conjugate subgroups to conjugate subgroups.
+     * @return An array where entry(a, m) = n iff the a'th automorphism maps
+     *  the m'th conjugacy class onto the n'th.
+     */
+    private int[][] ToConjugacyClassImages(int[][] subgroupImages)
+    {
+        int[][] classImages = new int[subgroupImages.length][NumConjugacyClasses];
+        for (int a=0;a<subgroupImages.length;a++)
+            for (int m=0;m<NumConjugacyClasses;m++)
+                classImages[a][m] = SubgroupClasses[subgroupImages[a][ConjugacyClasses[m].nextSetBit(0)]];
+        return classImages;
+    }
+
+    /**
+     * @param automorphism The index of the automorphism, in {@link #ConjugacyClassImages}.
+     * @param ccMask A ccMask of at most {@link #MAX_NARROW_CLASSES} classes.
+     * @return The ccMask of the image of the family under the automorphism.
+     */
+    public long ClassMaskImage(int automorphism, long ccMask)
+    {
+        int[] classImage = ConjugacyClassImages[automorphism];
+        long image = 0;
+        for (long rest=ccMask; rest!=0; rest&=rest-1)
+            image |= 1L << classImage[Long.numberOfTrailingZeros(rest)];
+        return image;
+    }
+
+    /**
+     * Determine the conjugacy class of each subgroup.
+     * @return An array where entry(s) = m iff the s'th subgroup is in the m'th conjugacy class.
+     */
+    private static int[] ToSubgroupClasses(int numSubgroups, int numConjugacyClasses, BitSet[] conjugacyClasses)
+    {
+        int[] subgroupClasses = new int[numSubgroups];
+        for (int m=0;m<numConjugacyClasses;m++)
+            for (int s=conjugacyClasses[m].nextSetBit(0); s>=0; s=conjugacyClasses[m].nextSetBit(s+1))
+                subgroupClasses[s] = m;
+        return subgroupClasses;
+    }
+
+    /**
+     * Lift a subgroup operation table (see {@link GroupUtil#GenerateCombinations}) to the conjugacy classes,
+     *  so that a family which is a union of conjugacy classes can be checked for closure on its ccMask alone.
+     *
+     *  Conjugating both subgroups conjugates their intersection (or union), so the classes reached from any subgroup
+     *  of class m are those reached from its first subgroup: only that row is read, one row per class.
+     * @param subgroupOperation The map (a,b)->c, where c is the combination of subgroups a and b, or -1 if there is none.
+     *  It is read a row at a time, so a lazy table computes only the rows of the first subgroup of each class.
+     * @return The table where bit k of the ccMask at entry(m, n*ClassMaskWords) is set iff some subgroup in class m
+     *  combined with some subgroup in class n is a subgroup in class k.
+     */
+    private long[][] ToClassTable(ISubgroupTable subgroupOperation)
+    {
+        int words = ClassMaskWords;
+        long[][] classTable = new long[NumConjugacyClasses][NumConjugacyClasses * words];
+        int[] operationRow = new int[NumSubgroups];
+        for (int m=0;m<NumConjugacyClasses;m++)
+        {
+            long[] row = classTable[m];
+            subgroupOperation.GetRow(ConjugacyClasses[m].nextSetBit(0), operationRow);
+            for (int j=0;j<NumSubgroups;j++)
+            {
+                int result = operationRow[j];
+                if (result == -1) continue;
+
+                int k = SubgroupClasses[result];
+                row[SubgroupClasses[j] * words + (k / Long.SIZE)] |= (1L << k);
+            }
+        }
+        return classTable;
     }
 
     /**
@@ -55,7 +353,53 @@ class Group
      */
     public static Group FromFile(String inputFile, boolean sortElem) throws IOException, IllegalArgumentException
     {
-        return Group.FromRawGroup(RawGroup.FromJSON(new FileReader(inputFile)), sortElem);
+        return FromFile(inputFile, sortElem, false);
+    }
+
+    /**
+     * Create a group by reading from a json input file. The file is read a token at a time (see {@link GroupReader}),
+     *  so its names are not all kept while the group is processed.
+     * @param inputFile the input reader.
+     * @param sortElem Whether or not to sort the elements.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, rather than
+     *  keeping the whole table. See {@link GroupUtil#LazyIntersections}.
+     * @throws IllegalArgumentException When the input group is not a valid group. See {@link #Validate()}
+     * @throws IOException When the input file doesn't exist or has invalid JSON.
+     * @return A fully processed group.
+     */
+    public static Group FromFile(String inputFile, boolean sortElem, boolean lazyIntersections) throws IOException, IllegalArgumentException
+    {
+        return GroupReader.Read(new FileReader(inputFile), sortElem, lazyIntersections);
+    }
+
+    /**
+     * Create a group from a json input file, through a binary image of the processed group (see {@link GroupImage}).
+     *  The image is loaded if it is newer than the input file and its elements were sorted alike. Otherwise the
+     *  input file is processed as by {@link #FromFile(String, boolean, boolean)}, and the image is written for next time.
+     * @param inputFile the input reader.
+     * @param imageFile the image of the processed group.
+     * @param sortElem Whether or not to sort the elements.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, when the
+     *  input file is processed. A loaded image reads them from the file as they are looked up in any case.
+     * @throws IllegalArgumentException When the input group is not a valid group. See {@link #Validate()}
+     * @throws IOException When the input file doesn't exist or has invalid JSON, or the image cannot be written.
+     * @return A fully processed group.
+     */
+    public static Group FromFileWithImage(String inputFile, File imageFile, boolean sortElem, boolean lazyIntersections)
+            throws IOException, IllegalArgumentException
+    {
+        if (imageFile.exists() && imageFile.lastModified() >= new File(inputFile).lastModified())
+        {
+            try
+            {
+                return GroupImage.Read(imageFile, sortElem);
+            }
+            catch (IllegalArgumentException ignored) {} // from another version, or sorted otherwise: replace it.
+        }
+
+        Group group = FromFile(inputFile, sortElem, lazyIntersections);
+        GroupImage.Write(imageFile, group, sortElem);
+        return group;
     }
 
     /**
@@ -66,6 +410,20 @@ class Group
      * @return A fully processed group.
      */
     public static Group FromRawGroup(RawGroup rawgroup, boolean sortElem) throws IllegalArgumentException
+    {
+        return FromRawGroup(rawgroup, sortElem, false);
+    }
+
+    /**
+     * Create a group by processing a RawGroup.
+     * @param rawgroup a group which is parsed json, with no processing.
+     * @param sortElem Whether or not to sort the elements.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, rather than
+     *  keeping the whole table. See {@link GroupUtil#LazyIntersections}.
+     * @throws IllegalArgumentException When the input group is not a valid group (see Group.Validate())
+     * @return A fully processed group.
+     */
+    public static Group FromRawGroup(RawGroup rawgroup, boolean sortElem, boolean lazyIntersections) throws IllegalArgumentException
     {
         // counts of each type:
         int numElem = rawgroup.NumElements;
@@ -76,40 +434,104 @@ class Group
         HashMap<String, Integer> elementIndexMap = new HashMap<String, Integer>();
         String[] elementNames = rawgroup.Elements;
 
-        if (sortElem)
+        if (sortElem) Arrays.sort(elementNames, ELEMENT_ORDER);
+
+        for (int i=0;i<numElem;i++)
+            elementIndexMap.put(rawgroup.Elements[i], i);
+
+        BitSet[] subgroupMasks = new BitSet[numSubgroups];
+        String[] subgroupNames = new String[numSubgroups];
+        int[] conjugacyClassSizes = new int[numConjugacyClasses];
+        int curSubgroupIndex = 0;
+
+        for (int m=0;m<numConjugacyClasses;m++)
         {
-            // sort the names (first by length, then lexically)
-            Arrays.sort(elementNames, new Comparator<String>()
+            String[][] conjClass = rawgroup.ConjugacyClasses[m];
+            conjugacyClassSizes[m] = conjClass.length;
+
+            // set the elements of each subgroup & build up subgroup-name.
+            for (String[] subgroup : conjClass)
             {
-                public int compare(String o1, String o2)
+                subgroupMasks[curSubgroupIndex] = new BitSet(numElem);
+                StringBuilder subgroupName = new StringBuilder();
+                for(String elem : subgroup)
                 {
-                    int diff = (o1.length() - o2.length());
-                    return diff == 0 ? o1.compareTo(o2) : diff;
+                    subgroupName.append(elem);
+                    subgroupName.append(' ');
+                    subgroupMasks[curSubgroupIndex].set(elementIndexMap.get(elem));
                 }
-            });
+                subgroupNames[curSubgroupIndex] = subgroupName.toString().trim();
+                curSubgroupIndex++;
+            }
         }
 
-        for (int i=0;i<numElem;i++)
-            elementIndexMap.put(rawgroup.Elements[i], i);
+        return FromSubgroups(elementNames, subgroupMasks, subgroupNames, conjugacyClassSizes,
+                ToAutomorphismTables(rawgroup.Automorphisms, elementIndexMap),
+                ToAutomorphismTables(rawgroup.AutomorphismGenerators, elementIndexMap), lazyIntersections);
+    }
 
-        BitSet[] conjugacyClasses = new BitSet[numConjugacyClasses];
-        BitSet[] elementMasks = new BitSet[numElem];
-        BitSet[] subgroupMasks = new BitSet[numSubgroups]; 
+    /**
+     * Create a group from its multiplication table, computing its subgroups and automorphisms rather than
+     *  reading them from GAP's export. See {@link CayleyGroup}.
+     * @param table The table, where entry(x, y) is the index of the product xy.
+     * @param elementNames The name of each element, or null to name each by its index.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, rather than
+     *  keeping the whole table. See {@link GroupUtil#LazyIntersections}.
+     * @throws IllegalArgumentException When the table is not the multiplication table of a group.
+     * @return A fully processed group, whose first element is the identity.
+     */
+    public static Group FromCayleyTable(int[][] table, String[] elementNames, boolean lazyIntersections) throws IllegalArgumentException
+    {
+        return CayleyGroup.ToGroup(table, elementNames, lazyIntersections);
+    }
 
+    /** The order of sorted elements: first by the length of their names, then lexically. */
+    static final Comparator<String> ELEMENT_ORDER = new Comparator<String>()
+    {
+        public int compare(String o1, String o2)
+        {
+            int diff = (o1.length() - o2.length());
+            return diff == 0 ? o1.compareTo(o2) : diff;
+        }
+    };
+
+    /**
+     * Create a group from its subgroups, once each element has been replaced by its index.
+     * @param elementNames The name of each element.
+     * @param subgroupMasks The membership mask of each subgroup. The subgroups of each conjugacy class are consecutive.
+     * @param subgroupNames The name of each subgroup.
+     * @param conjugacyClassSizes The number of subgroups in each conjugacy class, in order.
+     * @param automorphisms The tables of (x, y) pairs, where an automorphism maps element x onto element y.
+     * @param automorphismGenerators The tables of generators of automorphisms, in the same form. If there are any,
+     *  they are closed into the group they span with the automorphisms.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, rather than
+     *  keeping the whole table. See {@link GroupUtil#LazyIntersections}.
+     * @throws IllegalArgumentException When the input group is not a valid group (see Group.Validate())
+     * @return A fully processed group.
+     */
+    static Group FromSubgroups(String[] elementNames, BitSet[] subgroupMasks, String[] subgroupNames, int[] conjugacyClassSizes,
+                               int[][][] automorphisms, int[][][] automorphismGenerators, boolean lazyIntersections)
+            throws IllegalArgumentException
+    {
+        int numElem = elementNames.length;
+        int numSubgroups = subgroupMasks.length;
+        int numConjugacyClasses = conjugacyClassSizes.length;
+
+        BitSet[] elementMasks = new BitSet[numElem];
         for (int i=0;i<numElem;i++)
             elementMasks[i] = new BitSet(numSubgroups);
 
-        for (int i=0;i<numSubgroups;i++)
-            subgroupMasks[i] = new BitSet(numElem);
+        for (int s=0;s<numSubgroups;s++)
+            for (int i=subgroupMasks[s].nextSetBit(0); i>=0; i=subgroupMasks[s].nextSetBit(i+1))
+                elementMasks[i].set(s);
 
-        int curSubgroupIndex = 0;
+        BitSet[] conjugacyClasses = new BitSet[numConjugacyClasses];
         BitSet isSubgroupNormal = new BitSet(numSubgroups);
-        String[] subgroupNames = new String[numSubgroups];
+        int curSubgroupIndex = 0;
 
         for (int m=0;m<numConjugacyClasses;m++)
         {
-            String[][] conjClass = rawgroup.ConjugacyClasses[m];
-            int conjClassSize = conjClass.length;
+            int conjClassSize = conjugacyClassSizes[m];
 
             // determine if subgroup is normal (which is iff conj-class is singleton):
             if (conjClassSize==1) isSubgroupNormal.set(curSubgroupIndex);
@@ -117,34 +539,39 @@ class Group
             // assign subgroups correct conjugacy class
             conjugacyClasses[m] = new BitSet(numSubgroups);
             conjugacyClasses[m].set(curSubgroupIndex, curSubgroupIndex+conjClassSize);
+            curSubgroupIndex += conjClassSize;
+        }
 
-            // assign elements to corresponding subgroups & build up subgroup-name.
-            for (int i=0;i<conjClassSize;i++)
-            {
-                StringBuilder subgroupName = new StringBuilder();
-                for(String elem : conjClass[i])
-                {
-                    subgroupName.append(elem);
-                    subgroupName.append(' ');
+        // calculate the intersection of each pair of subgroups, and the unions which are subgroups.
+        ISubgroupTable subgroupIntersections = lazyIntersections ? GroupUtil.LazyIntersections(subgroupMasks)
+                : new GroupUtil.DenseSubgroupTable(GroupUtil.GenerateIntersections(numSubgroups, subgroupMasks));
+        ISubgroupTable subgroupUnions = GroupUtil.GenerateSparseUnions(numSubgroups, subgroupMasks);
 
-                    // set the subgroup membership, and the element membership.
-                    int elemIndex = elementIndexMap.get(elem);
-                    elementMasks[elemIndex].set(curSubgroupIndex);
-                    subgroupMasks[curSubgroupIndex].set(elemIndex);
-                }
-                subgroupNames[curSubgroupIndex] = subgroupName.toString().trim();
-                curSubgroupIndex++;
-            }
+        if (automorphismGenerators.length > 0)
+        {
+            int[][][] all = Arrays.copyOf(automorphisms, automorphisms.length + automorphismGenerators.length);
+            System.arraycopy(automorphismGenerators, 0, all, automorphisms.length, automorphismGenerators.length);
+            automorphisms = CloseAutomorphisms(all, numElem, subgroupMasks, conjugacyClassSizes);
         }
 
-        // calculate the intersection of each pair of subgroups
-        int[][] subgroupIntersections = GroupUtil.GenerateIntersections(numSubgroups, subgroupMasks);
-        int[][] subgroupUnions = GroupUtil.GenerateUnions(numSubgroups, subgroupMasks);
+        ArrayList<Permutation> automorphismPermutations = Permutation.FromPermutationTable(automorphisms);
 
-        int[][][] automorphisms = new int[rawgroup.Automorphisms.length][][];
-        for(int i=0;i<rawgroup.Automorphisms.length;i++)
+        Group group = new Group(numElem, numSubgroups, numConjugacyClasses,
+                elementMasks, elementNames, subgroupMasks, subgroupNames,
+                subgroupIntersections, subgroupUnions, conjugacyClasses,
+                isSubgroupNormal, automorphisms, automorphismPermutations);
+
+        group.Validate();
+        return group;
+    }
+
+    // Convert the (x, y) pairs of names of each automorphism to pairs of element indices.
+    private static int[][][] ToAutomorphismTables(String[][][] rawAutomorphisms, HashMap<String, Integer> elementIndexMap)
+    {
+        int[][][] automorphisms = new int[rawAutomorphisms.length][][];
+        for(int i=0;i<rawAutomorphisms.length;i++)
         {
-            String[][] rawAutPerm = rawgroup.Automorphisms[i];
+            String[][] rawAutPerm = rawAutomorphisms[i];
             automorphisms[i] = new int[rawAutPerm.length][];
 
             for(int j=0;j<rawAutPerm.length;j++)
@@ -154,16 +581,92 @@ class Group
                 automorphisms[i][j] = new int[]{e0, e1};
             }
         }
+        return automorphisms;
+    }
 
-        ArrayList<Permutation> automorphismPermutations = Permutation.FromPermutationTable(automorphisms);
+    /**
+     * Generate the group spanned by some automorphisms, by a hashed closure under composition.
+     *  A fix-order depends only on the conjugacy classes of subgroups in its family, so automorphisms which map
+     *  the conjugacy classes alike map every fix-order alike. Only one of each is kept, and none of those which fix
+     *  every conjugacy class (such as the inner automorphisms), so the result grows with the outer automorphisms only.
+     *
+     * @param generatorTables The tables of (x, y) pairs, where the automorphism maps element x onto element y.
+     * @param subgroupMasks The membership mask of each subgroup. The subgroups of each conjugacy class are consecutive.
+     * @param conjugacyClassSizes The number of subgroups in each conjugacy class, in order.
+     * @throws IllegalArgumentException When a generator does not map subgroups onto subgroups.
+     * @return The tables of the automorphisms in the group, in the same form.
+     */
+    static int[][][] CloseAutomorphisms(int[][][] generatorTables, int numElem, BitSet[] subgroupMasks,
+                                        int[] conjugacyClassSizes) throws IllegalArgumentException
+    {
+        HashMap<BitSet, Integer> subgroupOfMask = new HashMap<BitSet, Integer>();
+        for (int s=0;s<subgroupMasks.length;s++) subgroupOfMask.put(subgroupMasks[s], s);
 
-        Group group = new Group(numElem, numSubgroups, numConjugacyClasses,
-                elementMasks, elementNames, subgroupMasks, subgroupNames,
-                subgroupIntersections, subgroupUnions, conjugacyClasses,
-                isSubgroupNormal, automorphisms, automorphismPermutations);
+        int[] subgroupClasses = new int[subgroupMasks.length];
+        int[] firstSubgroups = new int[conjugacyClassSizes.length];
+        for (int m=0, s=0;m<conjugacyClassSizes.length;m++)
+        {
+            firstSubgroups[m] = s;
+            for (int k=0;k<conjugacyClassSizes[m];k++) subgroupClasses[s++] = m;
+        }
 
-        group.Validate();
-        return group;
+        int[][] generators = new int[generatorTables.length][numElem];
+        for (int g=0;g<generators.length;g++)
+        {
+            for (int x=0;x<numElem;x++)
+                generators[g][x] = x; // in case the table omits fixed elements.
+            for (int[] pair : generatorTables[g])
+                generators[g][pair[0]] = pair[1];
+
+            if (ClassActionOf(generators[g], subgroupMasks, subgroupOfMask, subgroupClasses, firstSubgroups) == null)
+                throw new IllegalArgumentException("Automorphism " + g + " does not map subgroups onto subgroups.");
+        }
+
+        int[] identity = new int[numElem];
+        for (int x=0;x<numElem;x++) identity[x] = x;
+
+        HashSet<String> classActions = new HashSet<String>();
+        classActions.add(ClassActionOf(identity, subgroupMasks, subgroupOfMask, subgroupClasses, firstSubgroups));
+        ArrayList<int[]> group = new ArrayList<int[]>();
+        group.add(identity);
+
+        // every product of generators is found by extending the automorphisms found so far by a generator.
+        for (int k=0;k<group.size();k++)
+        {
+            for (int[] generator : generators)
+            {
+                int[] product = new int[numElem];
+                for (int x=0;x<numElem;x++)
+                    product[x] = generator[group.get(k)[x]];
+                if (classActions.add(ClassActionOf(product, subgroupMasks, subgroupOfMask, subgroupClasses, firstSubgroups)))
+                    group.add(product);
+            }
+        }
+
+        int[][][] automorphisms = new int[group.size()-1][numElem][];
+        for (int a=1;a<group.size();a++)
+            for (int x=0;x<numElem;x++)
+                automorphisms[a-1][x] = new int[]{x, group.get(a)[x]};
+        return automorphisms;
+    }
+
+    // The action of an automorphism on the conjugacy classes of subgroups, as a key for hashing,
+    //  or null if it does not map the first subgroup of each class onto a subgroup.
+    private static String ClassActionOf(int[] image, BitSet[] subgroupMasks, HashMap<BitSet, Integer> subgroupOfMask,
+                                        int[] subgroupClasses, int[] firstSubgroups)
+    {
+        int[] classImage = new int[firstSubgroups.length];
+        for (int m=0;m<firstSubgroups.length;m++)
+        {
+            BitSet subgroup = subgroupMasks[firstSubgroups[m]];
+            BitSet mask = new BitSet(image.length);
+            for (int x=subgroup.nextSetBit(0); x>=0; x=subgroup.nextSetBit(x+1)) mask.set(image[x]);
+
+            Integer t = subgroupOfMask.get(mask);
+            if (t == null) return null;
+            classImage[m] = subgroupClasses[t];
+        }
+        return Arrays.toString(classImage);
     }
 
     interface IBitSetOperation
@@ -171,6 +674,16 @@ class Group
         void combine(BitSet b1, BitSet b2);
     }
 
+    /** The map (a,b)->c from each pair of subgroups to the subgroup they combine into, or -1 if there is none. */
+    interface ISubgroupTable
+    {
+        /** @return The index of the subgroup which subgroups a and b combine into, or -1 if they combine into none. */
+        int Get(int a, int b);
+
+        /** Fill entry(b) of row with Get(a, b) for every subgroup b. */
+        void GetRow(int a, int[] row);
+    }
+
     public void Validate() throws IllegalArgumentException
     {
         // check identity: must be an element of each subgroup.
@@ -188,6 +701,11 @@ class Group
         nextClearBit = fullGroup.nextClearBit(1);
         if (nextClearBit >= 0 && nextClearBit < NumElements)
             throw new IllegalArgumentException("Last subgroup is not the whole group.");
+
+        // check automorphisms: each must map elements in the same subgroups to elements in the same subgroups.
+        for (int p=0;p<Automorphisms.length;p++)
+            if (ElementClassTableOf(Automorphisms[p]) == null)
+                throw new IllegalArgumentException("Automorphism " + p + " does not map element classes onto element classes.");
     }
 
     public static class RawGroup
@@ -198,8 +716,15 @@ class Group
         public final String[] Elements;
         public final String[][][] ConjugacyClasses;
         public final String[][][] Automorphisms;
+        public final String[][][] AutomorphismGenerators;
 
         protected RawGroup(int numElements, int numSubgroups, int numConjugacyClasses, String[] elements, String[][][] conjugacyClasses, String[][][] automorphisms)
+        {
+            this(numElements, numSubgroups, numConjugacyClasses, elements, conjugacyClasses, automorphisms, new String[0][][]);
+        }
+
+        protected RawGroup(int numElements, int numSubgroups, int numConjugacyClasses, String[] elements, String[][][] conjugacyClasses,
+                           String[][][] automorphisms, String[][][] automorphismGenerators)
         {
             NumElements = numElements;
             NumSubgroups = numSubgroups;
@@ -207,6 +732,7 @@ class Group
             Elements = elements;
             ConjugacyClasses = conjugacyClasses;
             Automorphisms = automorphisms;
+            AutomorphismGenerators = automorphismGenerators;
         }
 
         public static RawGroup FromJSON(Reader jsonReader) throws IOException
@@ -226,11 +752,15 @@ class Group
 
             String[][][] automorphismPermutations = groupProp[2];
 
+            // optionally, generators of the automorphisms, which are then closed into the group they span.
+            String[][][] automorphismGenerators = (groupProp.length > 3 && groupProp[3] != null) ? groupProp[3] : new String[0][][];
+
             // calculate number of subgroups
             int NumSubgroups = 0;
             for(String[][] arr : conjugacyClasses) NumSubgroups += arr.length;
 
-            return new RawGroup(numElements, NumSubgroups, numConjugacyClasses, elements, conjugacyClasses, automorphismPermutations);
+            return new RawGroup(numElements, NumSubgroups, numConjugacyClasses, elements, conjugacyClasses, automorphismPermutations,
+                    automorphismGenerators);
         }
     }
 }
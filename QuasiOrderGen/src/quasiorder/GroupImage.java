@@ -0,0 +1,302 @@
+package quasiorder;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compact binary image of a processed group, from which it can be loaded without parsing its JSON input
+ *  or combining its subgroups again.
+ *
+ * The image is memory-mapped when loaded. The table of subgroup intersections (the bulk of the image) is read
+ *  straight from the mapping rather than copied onto the heap. The enumeration only needs it lifted to the
+ *  conjugacy classes, so those class tables are stored too, and the subgroup table is paged in by the OS
+ *  only if it is read. Everything else is small, and is copied into the group, which derives the rest of its
+ *  tables as usual.
+ *
+ * File: MAGIC, VERSION, flags, numElements, numSubgroups, numConjugacyClasses,
+ *  element names, subgroup names (each: byte count, UTF-8 bytes),
+ *  element masks (subgroup words each), subgroup masks (element words each), conjugacy classes (subgroup words each),
+ *  normal subgroups (subgroup words), automorphisms (count, then for each: number of pairs, pairs),
+ *  unions (for each subgroup a: count, then the subgroups b > a whose union with a is a subgroup, then those unions),
+ *  class intersections and class unions (as {@link Group#WideClassIntersections}: numConjugacyClasses rows
+ *  of numConjugacyClasses * class words longs each),
+ *  intersections (numSubgroups * numSubgroups ints, by rows).
+ * Masks are written as the words of BitSet.toLongArray(), padded with zeros.
+ */
+class GroupImage
+{
+    private static final long MAGIC = 0x5175617369477270L; // "QuasiGrp"
+    private static final int VERSION = 3;
+
+    private static final int SORTED_FLAG = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Write the image of a group, replacing any existing file.
+     *
+     * @param file The image file.
+     * @param group The group, as processed by {@link Group#FromRawGroup}.
+     * @param sortElem Whether the elements of the group were sorted.
+     */
+    public static void Write(File file, Group group, boolean sortElem) throws IOException
+    {
+        int numElements = group.NumElements;
+        int numSubgroups = group.NumSubgroups;
+        int numConjugacyClasses = group.NumConjugacyClasses;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sortElem ? SORTED_FLAG : 0);
+            out.writeInt(numElements);
+            out.writeInt(numSubgroups);
+            out.writeInt(numConjugacyClasses);
+
+            for (String name : group.ElementNames) WriteString(out, name);
+            for (String name : group.SubgroupNames) WriteString(out, name);
+
+            WriteMasks(out, group.ElementMasks, WordsOf(numSubgroups));
+            WriteMasks(out, group.SubgroupMasks, WordsOf(numElements));
+            WriteMasks(out, group.ConjugacyClasses, WordsOf(numSubgroups));
+            WriteMasks(out, new BitSet[] { group.IsSubgroupNormal }, WordsOf(numSubgroups));
+
+            out.writeInt(group.Automorphisms.length);
+            for (int[][] automorphism : group.Automorphisms)
+            {
+                out.writeInt(automorphism.length);
+                for (int[] pair : automorphism)
+                {
+                    out.writeInt(pair[0]);
+                    out.writeInt(pair[1]);
+                }
+            }
+
+            int[] row = new int[numSubgroups];
+            int[] columns = new int[numSubgroups];
+            for (int a=0;a<numSubgroups;a++)
+            {
+                group.SubgroupUnions.GetRow(a, row);
+                int count = 0;
+                for (int b=a+1;b<numSubgroups;b++)
+                    if (row[b] != -1) columns[count++] = b;
+
+                out.writeInt(count);
+                for (int k=0;k<count;k++) out.writeInt(columns[k]);
+                for (int k=0;k<count;k++) out.writeInt(row[columns[k]]);
+            }
+
+            WriteClassTable(out, group.WideClassIntersections);
+            WriteClassTable(out, group.WideClassUnions);
+
+            for (int a=0;a<numSubgroups;a++)
+            {
+                group.SubgroupIntersections.GetRow(a, row);
+                for (int b=0;b<numSubgroups;b++) out.writeInt(row[b]);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Load a group from its image.
+     *
+     * @param file The image file.
+     * @param sortElem Whether the elements of the group must have been sorted.
+     * @return The group, as it was when the image was written.
+     * @throws IllegalArgumentException When the file is not an image, or its elements were sorted otherwise.
+     */
+    public static Group Read(File file, boolean sortElem) throws IOException, IllegalArgumentException
+    {
+        ByteBuffer in;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            // the mapping stays valid once the file is closed.
+            in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        try
+        {
+            if (in.getLong() != MAGIC || in.getInt() != VERSION)
+                throw new IllegalArgumentException("Not a group image: " + file);
+            if (((in.getInt() & SORTED_FLAG) != 0) != sortElem)
+                throw new IllegalArgumentException("Group image was sorted differently: " + file);
+
+            // every element and subgroup has at least the byte count of its name.
+            int numElements = ReadCount(in, 4);
+            int numSubgroups = ReadCount(in, 4);
+            int numConjugacyClasses = ReadCount(in, 0);
+            if (numConjugacyClasses > numSubgroups)
+                throw new IllegalArgumentException("Group image has more conjugacy classes than subgroups: " + file);
+
+            String[] elementNames = new String[numElements];
+            for (int i=0;i<numElements;i++) elementNames[i] = ReadString(in);
+            String[] subgroupNames = new String[numSubgroups];
+            for (int s=0;s<numSubgroups;s++) subgroupNames[s] = ReadString(in);
+
+            BitSet[] elementMasks = ReadMasks(in, numElements, WordsOf(numSubgroups));
+            BitSet[] subgroupMasks = ReadMasks(in, numSubgroups, WordsOf(numElements));
+            BitSet[] conjugacyClasses = ReadMasks(in, numConjugacyClasses, WordsOf(numSubgroups));
+            BitSet isSubgroupNormal = ReadMasks(in, 1, WordsOf(numSubgroups))[0];
+
+            int[][][] automorphisms = new int[ReadCount(in, 4)][][];
+            for (int p=0;p<automorphisms.length;p++)
+            {
+                automorphisms[p] = new int[ReadCount(in, 8)][];
+                for (int j=0;j<automorphisms[p].length;j++)
+                    automorphisms[p][j] = new int[] { in.getInt(), in.getInt() };
+            }
+
+            int[][] upperColumns = new int[numSubgroups][];
+            int[][] upperResults = new int[numSubgroups][];
+            for (int a=0;a<numSubgroups;a++)
+            {
+                int count = ReadCount(in, 8);
+                upperColumns[a] = ReadInts(in, count);
+                upperResults[a] = ReadInts(in, count);
+            }
+            Group.ISubgroupTable subgroupUnions = new GroupUtil.SparseSubgroupTable(upperColumns, upperResults);
+
+            int classWords = WordsOf(numConjugacyClasses);
+            long[][] classIntersections = ReadClassTable(in, numConjugacyClasses, classWords);
+            long[][] classUnions = ReadClassTable(in, numConjugacyClasses, classWords);
+
+            ByteBuffer intersections = in.slice();
+            if (intersections.remaining() != 4L * numSubgroups * numSubgroups)
+                throw new IllegalArgumentException("Group image is truncated: " + file);
+            Group.ISubgroupTable subgroupIntersections = new MappedSubgroupTable(intersections.asIntBuffer(), numSubgroups);
+
+            ArrayList<Permutation> automorphismPermutations = Permutation.FromPermutationTable(automorphisms);
+            Group group = new Group(numElements, numSubgroups, numConjugacyClasses,
+                    elementMasks, elementNames, subgroupMasks, subgroupNames,
+                    subgroupIntersections, subgroupUnions, conjugacyClasses,
+                    isSubgroupNormal, automorphisms, automorphismPermutations, classIntersections, classUnions);
+
+            group.Validate();
+            return group;
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IllegalArgumentException("Group image is truncated or corrupt: " + file);
+        }
+    }
+
+    /** A table of combinations read straight from a mapped image, by rows. */
+    private static class MappedSubgroupTable implements Group.ISubgroupTable
+    {
+        private final IntBuffer table;
+        private final int numSubgroups;
+
+        public MappedSubgroupTable(IntBuffer table, int numSubgroups)
+        {
+            this.table = table;
+            this.numSubgroups = numSubgroups;
+        }
+
+        public int Get(int a, int b)
+        {
+            return table.get(a * numSubgroups + b);
+        }
+
+        public void GetRow(int a, int[] row)
+        {
+            // a duplicate has its own position, so rows can be read from several threads at once.
+            IntBuffer rowBuffer = table.duplicate();
+            rowBuffer.position(a * numSubgroups);
+            rowBuffer.get(row, 0, numSubgroups);
+        }
+    }
+
+    private static int WordsOf(int numBits)
+    {
+        return (numBits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    private static void WriteString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String ReadString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[ReadCount(in, 1)];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void WriteMasks(DataOutputStream out, BitSet[] masks, int words) throws IOException
+    {
+        for (BitSet mask : masks)
+        {
+            long[] maskWords = Arrays.copyOf(mask.toLongArray(), words);
+            for (long word : maskWords) out.writeLong(word);
+        }
+    }
+
+    private static BitSet[] ReadMasks(ByteBuffer in, int numMasks, int words)
+    {
+        BitSet[] masks = new BitSet[numMasks];
+        long[] maskWords = new long[words];
+        for (int i=0;i<numMasks;i++)
+        {
+            for (int w=0;w<words;w++) maskWords[w] = in.getLong();
+            masks[i] = BitSet.valueOf(maskWords);
+        }
+        return masks;
+    }
+
+    private static void WriteClassTable(DataOutputStream out, long[][] classTable) throws IOException
+    {
+        for (long[] row : classTable)
+            for (long word : row) out.writeLong(word);
+    }
+
+    private static long[][] ReadClassTable(ByteBuffer in, int numConjugacyClasses, int words)
+    {
+        if (8L * numConjugacyClasses * numConjugacyClasses * words > in.remaining()) throw new BufferUnderflowException();
+
+        long[][] classTable = new long[numConjugacyClasses][numConjugacyClasses * words];
+        for (long[] row : classTable)
+            for (int w=0;w<row.length;w++) row[w] = in.getLong();
+        return classTable;
+    }
+
+    /**
+     * Read the number of items which follow, before anything is allocated for them.
+     *
+     * @param bytesEach The least number of bytes each item takes in the image.
+     * @throws BufferUnderflowException When the image ends before that many items could, so it is truncated or corrupt.
+     */
+    private static int ReadCount(ByteBuffer in, int bytesEach)
+    {
+        int count = in.getInt();
+        if (count < 0 || (long)count * bytesEach > in.remaining()) throw new BufferUnderflowException();
+        return count;
+    }
+
+    private static int[] ReadInts(ByteBuffer in, int count)
+    {
+        int[] values = new int[count];
+        for (int k=0;k<count;k++) values[k] = in.getInt();
+        return values;
+    }
+}
@@ -0,0 +1,173 @@
+package quasiorder;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Reads a group from its json input a token at a time, rather than binding the whole document to arrays of names
+ *  (as {@link Group.RawGroup#FromJSON} does). Each element name is replaced by its index as soon as it is read,
+ *  so subgroups are read straight into membership masks, and automorphisms into tables of element indices.
+ *  The names of the input are never all held at once, however many automorphisms it lists.
+ *
+ * Input: [ [ [ [elements] ] ], [ conjugacy classes, each: [ subgroups, each: [elements] ] ],
+ *  [ automorphisms, each: [ (x, y) pairs, each: [x, y] ] ], and optionally [ generators of automorphisms, likewise ] ]
+ */
+class GroupReader
+{
+    private final JsonReader in;
+    private final HashMap<String, Integer> elementIndexMap = new HashMap<String, Integer>();
+
+    private GroupReader(JsonReader in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Create a group by reading its json input.
+     * @param reader The input, which is closed once read.
+     * @param sortElem Whether or not to sort the elements.
+     * @param lazyIntersections Whether to compute the intersections of subgroups as they are looked up, rather than
+     *  keeping the whole table. See {@link GroupUtil#LazyIntersections}.
+     * @throws IllegalArgumentException When the input is not a group, or not a valid group (see Group.Validate())
+     * @throws IOException When the input cannot be read, or has invalid JSON.
+     * @return A fully processed group.
+     */
+    public static Group Read(Reader reader, boolean sortElem, boolean lazyIntersections) throws IOException, IllegalArgumentException
+    {
+        JsonReader in = new JsonReader(reader);
+        in.setLenient(true); // as Gson binds: e.g. a trailing comma omits the last value.
+        try
+        {
+            return new GroupReader(in).ReadGroup(sortElem, lazyIntersections);
+        }
+        catch (IllegalStateException e)
+        {
+            // a token of the wrong type, e.g. an element where a subgroup should be.
+            throw new IllegalArgumentException("Input is not a group: " + e.getMessage());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private Group ReadGroup(boolean sortElem, boolean lazyIntersections) throws IOException, IllegalArgumentException
+    {
+        in.beginArray();
+
+        // element names:
+        in.beginArray();
+        in.beginArray();
+        String[] elementNames = ReadNames();
+        EndArray();
+        EndArray();
+
+        if (sortElem) Arrays.sort(elementNames, Group.ELEMENT_ORDER);
+
+        for (int i=0;i<elementNames.length;i++)
+            elementIndexMap.put(elementNames[i], i);
+
+        // subgroups, by conjugacy class:
+        ArrayList<BitSet> subgroupMasks = new ArrayList<BitSet>();
+        ArrayList<String> subgroupNames = new ArrayList<String>();
+        ArrayList<Integer> conjugacyClassSizes = new ArrayList<Integer>();
+
+        in.beginArray();
+        while (in.hasNext())
+        {
+            int conjClassSize = 0;
+            in.beginArray();
+            while (in.hasNext())
+            {
+                BitSet subgroupMask = new BitSet(elementNames.length);
+                StringBuilder subgroupName = new StringBuilder();
+                in.beginArray();
+                while (in.hasNext())
+                {
+                    String elem = in.nextString();
+                    subgroupName.append(elem);
+                    subgroupName.append(' ');
+                    subgroupMask.set(IndexOf(elem));
+                }
+                in.endArray();
+
+                subgroupMasks.add(subgroupMask);
+                subgroupNames.add(subgroupName.toString().trim());
+                conjClassSize++;
+            }
+            in.endArray();
+            conjugacyClassSizes.add(conjClassSize);
+        }
+        in.endArray();
+
+        int[][][] automorphisms = ReadAutomorphisms();
+
+        // optionally, generators of the automorphisms, which are then closed into the group they span.
+        int[][][] automorphismGenerators = (in.hasNext() && in.peek() != JsonToken.NULL) ? ReadAutomorphisms() : new int[0][][];
+        EndArray();
+
+        int[] classSizes = new int[conjugacyClassSizes.size()];
+        for (int m=0;m<classSizes.length;m++) classSizes[m] = conjugacyClassSizes.get(m);
+
+        return Group.FromSubgroups(elementNames, subgroupMasks.toArray(new BitSet[subgroupMasks.size()]),
+                subgroupNames.toArray(new String[subgroupNames.size()]), classSizes,
+                automorphisms, automorphismGenerators, lazyIntersections);
+    }
+
+    // Read the tables of (x, y) pairs of element indices, of a list of automorphisms.
+    private int[][][] ReadAutomorphisms() throws IOException, IllegalArgumentException
+    {
+        ArrayList<int[][]> automorphisms = new ArrayList<int[][]>();
+        ArrayList<int[]> pairs = new ArrayList<int[]>();
+
+        in.beginArray();
+        while (in.hasNext())
+        {
+            pairs.clear();
+            in.beginArray();
+            while (in.hasNext())
+            {
+                in.beginArray();
+                int e0 = IndexOf(in.nextString());
+                int e1 = IndexOf(in.nextString());
+                EndArray();
+                pairs.add(new int[]{e0, e1});
+            }
+            in.endArray();
+            automorphisms.add(pairs.toArray(new int[pairs.size()][]));
+        }
+        in.endArray();
+
+        return automorphisms.toArray(new int[automorphisms.size()][][]);
+    }
+
+    private String[] ReadNames() throws IOException
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        in.beginArray();
+        while (in.hasNext()) names.add(in.nextString());
+        in.endArray();
+        return names.toArray(new String[names.size()]);
+    }
+
+    // Skip any values left in the current array (which binding would ignore too), and end it.
+    private void EndArray() throws IOException
+    {
+        while (in.hasNext()) in.skipValue();
+        in.endArray();
+    }
+
+    private int IndexOf(String elem) throws IllegalArgumentException
+    {
+        Integer index = elementIndexMap.get(elem);
+        if (index == null) throw new IllegalArgumentException("Unknown element: " + elem);
+        return index;
+    }
+}
@@ -1,11 +1,21 @@
 package quasiorder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class GroupUtil
 {
+    /** The fewest subgroups for which the tables of combinations are filled in parallel. */
+    static final int PARALLEL_MIN_SUBGROUPS = 128;
+
+    /** The number of rows of a table of combinations filled by each task. */
+    private static final int ROWS_PER_TASK = 8;
+
     /**
      * Convert a mask representing the subgroup conjugacy classes to placed in this family,
      *  into a mask representing the subgroups in this family.
@@ -30,6 +40,23 @@ public class GroupUtil
         return familyMask;
     }
 
+    /**
+     * Convert a wide mask (of any number of words) representing the subgroup conjugacy classes placed in this family,
+     *  into a mask representing the subgroups in this family.
+     * @param numSubgroups Number of subgroups.
+     * @param conjugacyMask A mask representing the conjugacy classes to be placed into this family, as in BitSet.toLongArray().
+     * @param conjugacyClasses The masks of all subgroup conjugacy classes in this group.
+     * @return A mask representing the subgroups in this family.
+     */
+    public static BitSet ToSubgroupFamilyBitSet(int numSubgroups, long[] conjugacyMask, BitSet[] conjugacyClasses)
+    {
+        BitSet familyMask = new BitSet(numSubgroups);
+        for (int w=0;w<conjugacyMask.length;w++)
+            for (long rest = conjugacyMask[w]; rest != 0; rest &= rest - 1)
+                familyMask.or(conjugacyClasses[w * Long.SIZE + Long.numberOfTrailingZeros(rest)]);
+        return familyMask;
+    }
+
     /**
      * Determine if the intersection of all the subgroups in this family is trivial (i.e. = {1})
      * Assumes that the elements[0] is the unity element (1).
@@ -72,6 +99,11 @@ public class GroupUtil
         return isOperationClosed(subgroupIntersections, subgroupFamily, subgroupFamilyMask);
     }
 
+    public static boolean isIntersectionClosed(Group.ISubgroupTable subgroupIntersections, List<Integer> subgroupFamily, BitSet subgroupFamilyMask)
+    {
+        return isOperationClosed(subgroupIntersections, subgroupFamily, subgroupFamilyMask);
+    }
+
     /**
      * Check if Union is closed over all subgroups, only when the result is a subgroup.
      * @param subgroupUnions A map of (a,b)->c where c is the union of a and b or is -1.
@@ -84,6 +116,11 @@ public class GroupUtil
         return isOperationClosed(subgroupUnions, subgroupFamily, familyMask);
     }
 
+    public static boolean isUnionClosed(Group.ISubgroupTable subgroupUnions, List<Integer> subgroupFamily, BitSet familyMask)
+    {
+        return isOperationClosed(subgroupUnions, subgroupFamily, familyMask);
+    }
+
     /**
      * Check if the operation is closed over this family of subgroups.
      *
@@ -93,13 +130,18 @@ public class GroupUtil
      * @return Whether the operation is closed.
      */
     public static boolean isOperationClosed(int[][] operation, List<Integer> subgroupFamily, BitSet subgroupFamilyMask)
+    {
+        return isOperationClosed(new DenseSubgroupTable(operation), subgroupFamily, subgroupFamilyMask);
+    }
+
+    public static boolean isOperationClosed(Group.ISubgroupTable operation, List<Integer> subgroupFamily, BitSet subgroupFamilyMask)
     {
         int len = subgroupFamily.size();
         for (int i=0;i<len;i++)
         {
             for(int j=i+1;j<len;j++)
             {
-                int result = operation[subgroupFamily.get(i)][subgroupFamily.get(j)];
+                int result = operation.Get(subgroupFamily.get(i), subgroupFamily.get(j));
                 if (result != -1 && !subgroupFamilyMask.get(result))
                     return false;
             }
@@ -108,6 +150,60 @@ public class GroupUtil
         return true;
     }
 
+    /**
+     * Check if the family represented by a ccMask is closed under an operation on subgroups,
+     *  using a table of that operation lifted to the conjugacy classes (see {@link Group#ClassIntersections}).
+     *  This is equivalent to {@link #isOperationClosed} on the corresponding family of subgroups.
+     *
+     * @param classOperation The map (m,n)->mask of the classes which subgroups in classes m and n combine into.
+     * @param ccMask A mask representing the conjugacy classes in the family.
+     * @return Whether the operation is closed.
+     */
+    public static boolean isClassMaskClosed(long[][] classOperation, long ccMask)
+    {
+        for (long rest = ccMask; rest != 0; rest &= rest - 1)
+        {
+            long[] row = classOperation[Long.numberOfTrailingZeros(rest)];
+            for (long others = rest; others != 0; others &= others - 1)
+                if ((row[Long.numberOfTrailingZeros(others)] & ~ccMask) != 0)
+                    return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if the family represented by a wide ccMask is closed under an operation on subgroups,
+     *  as {@link #isClassMaskClosed(long[][], long)} but for masks of any number of words.
+     *
+     * @param classOperation The map (m, n*words)->mask of the classes which subgroups in classes m and n combine into.
+     * @param ccMask A mask representing the conjugacy classes in the family.
+     * @return Whether the operation is closed.
+     */
+    public static boolean isClassMaskClosed(long[][] classOperation, long[] ccMask)
+    {
+        int words = ccMask.length;
+        for (int mw=0;mw<words;mw++)
+        {
+            for (long rest = ccMask[mw]; rest != 0; rest &= rest - 1)
+            {
+                long[] row = classOperation[mw * Long.SIZE + Long.numberOfTrailingZeros(rest)];
+                for (int nw=0;nw<words;nw++)
+                {
+                    for (long others = ccMask[nw]; others != 0; others &= others - 1)
+                    {
+                        int offset = (nw * Long.SIZE + Long.numberOfTrailingZeros(others)) * words;
+                        for (int w=0;w<words;w++)
+                            if ((row[offset + w] & ~ccMask[w]) != 0)
+                                return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Determine if g1 <= g2 (i.e. if (g1,g2) \in Relation ) given their subgroup memberships
      *  and the subgroup family under consideration.
@@ -182,8 +278,38 @@ public class GroupUtil
         }, false);
     }
 
+    /**
+     * Determine the unions of each pair of subgroups which are themselves subgroups, keeping only those pairs.
+     *  Unions of subgroups are rarely subgroups, so this is far smaller than {@link #GenerateUnions}.
+     * @param numSubgroups Number of subgroups in this group.
+     * @param subgroupMasks The membership masks of these subgroups.
+     * @return The map (a,b)=>c, where c = indexOf(sub[a] U sub[b]) or -1 if sub[a] U sub[b] is not a subgroup
+     */
+    public static Group.ISubgroupTable GenerateSparseUnions(int numSubgroups, BitSet[] subgroupMasks)
+    {
+        return GenerateSparseCombinations(numSubgroups, subgroupMasks, new Group.IBitSetOperation()
+        {
+            public void combine(BitSet b1, BitSet b2) { b1.or(b2); }
+        }, ParallelismFor(numSubgroups));
+    }
+
+    /**
+     * Prepare to determine the intersections of pairs of subgroups as they are needed.
+     *  Each row of the table is computed when it is first looked up, and kept from then on.
+     * @param subgroupMasks The membership masks of each subgroup (i.e. which elements are in each subgroup).
+     * @return The map (a,b)=>c, where c = indexOf(sub[a] ^ sub[b]).
+     */
+    public static Group.ISubgroupTable LazyIntersections(BitSet[] subgroupMasks)
+    {
+        return new LazySubgroupTable(subgroupMasks, new Group.IBitSetOperation()
+        {
+            public void combine(BitSet b1, BitSet b2) { b1.and(b2); }
+        }, false);
+    }
+
     /**
      * Determine the combinations of each pair of subgroups, using a bit-op (which modifies the first bitset).
+     *  Large tables are filled by several threads, one band of rows at a time.
      * @param numSubgroups The number of subgroups in this group.
      * @param subgroupMasks The membership masks of each subgroup (i.e. which elements are in each subgroup).
      * @param bitOp A function which modifies the first operator by combining it with the second.
@@ -192,18 +318,296 @@ public class GroupUtil
      */
     static int[][] GenerateCombinations(int numSubgroups, BitSet[] subgroupMasks, Group.IBitSetOperation bitOp, boolean ignoreMissing)
     {
-        int[][] res = new int[numSubgroups][numSubgroups];
-        for (int i=0;i<numSubgroups;i++)
+        return GenerateCombinations(numSubgroups, subgroupMasks, bitOp, ignoreMissing, ParallelismFor(numSubgroups));
+    }
+
+    static int[][] GenerateCombinations(final int numSubgroups, final BitSet[] subgroupMasks, final Group.IBitSetOperation bitOp,
+                                        final boolean ignoreMissing, int parallelism)
+    {
+        final int[][] res = new int[numSubgroups][numSubgroups];
+        final HashMap<BitSet, Integer> subgroupIndex = IndexSubgroups(subgroupMasks);
+
+        // row i holds the diagonal entry, and the entries (i,j) and (j,i) for every j > i. So distinct rows never write to the same entry.
+        FillRowBands(numSubgroups, parallelism, new IRowBand()
+        {
+            public void Fill(int start, int end)
+            {
+                BitSet s12 = new BitSet();
+                for (int i=start;i<end;i++)
+                {
+                    res[i][i] = i;
+                    for (int j=i+1;j<numSubgroups;j++)
+                    {
+                        int combination = GenerateCombination(i, j, subgroupMasks, subgroupIndex, s12, bitOp, ignoreMissing);
+                        res[i][j] = combination;
+                        res[j][i] = combination;
+                    }
+                }
+            }
+        });
+        return res;
+    }
+
+    /**
+     * Determine the combinations of each pair of subgroups which are themselves subgroups, as {@link #GenerateCombinations},
+     *  but keeping only those pairs.
+     */
+    static SparseSubgroupTable GenerateSparseCombinations(final int numSubgroups, final BitSet[] subgroupMasks,
+                                                          final Group.IBitSetOperation bitOp, int parallelism)
+    {
+        final int[][] upperColumns = new int[numSubgroups][];
+        final int[][] upperResults = new int[numSubgroups][];
+        final HashMap<BitSet, Integer> subgroupIndex = IndexSubgroups(subgroupMasks);
+
+        // row i holds the combinations (i,j) for every j > i.
+        FillRowBands(numSubgroups, parallelism, new IRowBand()
         {
-            res[i][i] = i;
-            for (int j=i+1;j<numSubgroups;j++)
+            public void Fill(int start, int end)
             {
-                int intersection = GenerateCombination(i, j, subgroupMasks, bitOp, ignoreMissing);
-                res[i][j] = intersection;
-                res[j][i] = intersection;
+                BitSet s12 = new BitSet();
+                int[] columns = new int[numSubgroups];
+                int[] results = new int[numSubgroups];
+                for (int i=start;i<end;i++)
+                {
+                    int count = 0;
+                    for (int j=i+1;j<numSubgroups;j++)
+                    {
+                        int combination = GenerateCombination(i, j, subgroupMasks, subgroupIndex, s12, bitOp, true);
+                        if (combination == -1) continue;
+
+                        columns[count] = j;
+                        results[count++] = combination;
+                    }
+                    upperColumns[i] = Arrays.copyOf(columns, count);
+                    upperResults[i] = Arrays.copyOf(results, count);
+                }
             }
+        });
+        return new SparseSubgroupTable(upperColumns, upperResults);
+    }
+
+    /** @return The number of threads with which to fill the tables of a group with this many subgroups. */
+    private static int ParallelismFor(int numSubgroups)
+    {
+        return (numSubgroups >= PARALLEL_MIN_SUBGROUPS) ? Runtime.getRuntime().availableProcessors() : 1;
+    }
+
+    /** Fills a band of rows [start, end) of a table. */
+    interface IRowBand
+    {
+        void Fill(int start, int end);
+    }
+
+    /** Fill every row of a table, in bands of ROWS_PER_TASK rows spread over the given number of threads. */
+    static void FillRowBands(int numRows, int parallelism, IRowBand band)
+    {
+        if (parallelism <= 1 || numRows <= ROWS_PER_TASK)
+        {
+            band.Fill(0, numRows);
+            return;
         }
-        return res;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try
+        {
+            pool.invoke(new RowBandTask(band, 0, numRows));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Fills a band of rows of a table, handing off halves of it while it is wider than ROWS_PER_TASK.
+     *  The rows near the top of the table are the longest, so bands are split by rows rather than by area.
+     */
+    private static class RowBandTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final IRowBand band;
+        private final int start;
+        private final int end;
+
+        public RowBandTask(IRowBand band, int start, int end)
+        {
+            this.band = band;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (end - start <= ROWS_PER_TASK)
+            {
+                band.Fill(start, end);
+                return;
+            }
+
+            int mid = start + (end - start) / 2;
+            invokeAll(new RowBandTask(band, start, mid), new RowBandTask(band, mid, end));
+        }
+    }
+
+    /** A table of combinations held in full, as from {@link #GenerateCombinations}. */
+    static class DenseSubgroupTable implements Group.ISubgroupTable
+    {
+        private final int[][] table;
+
+        public DenseSubgroupTable(int[][] table)
+        {
+            this.table = table;
+        }
+
+        public int Get(int a, int b)
+        {
+            return table[a][b];
+        }
+
+        public void GetRow(int a, int[] row)
+        {
+            System.arraycopy(table[a], 0, row, 0, row.length);
+        }
+    }
+
+    /**
+     * A table of combinations holding only the pairs which combine into a subgroup (and not the diagonal).
+     *  Row a holds the subgroups b which a combines with in increasing order, and what they combine into,
+     *  so an entry is found by binary search.
+     */
+    static class SparseSubgroupTable implements Group.ISubgroupTable
+    {
+        private final int[][] columns;
+        private final int[][] results;
+
+        /**
+         * @param upperColumns For each row a, the subgroups b > a which a combines with, in increasing order.
+         * @param upperResults For each row a, what a combines with each of those subgroups into.
+         */
+        public SparseSubgroupTable(int[][] upperColumns, int[][] upperResults)
+        {
+            int numSubgroups = upperColumns.length;
+            int[] rowLengths = new int[numSubgroups];
+            for (int a=0;a<numSubgroups;a++)
+            {
+                rowLengths[a] += upperColumns[a].length;
+                for (int b : upperColumns[a]) rowLengths[b]++;
+            }
+
+            columns = new int[numSubgroups][];
+            results = new int[numSubgroups][];
+            for (int a=0;a<numSubgroups;a++)
+            {
+                columns[a] = new int[rowLengths[a]];
+                results[a] = new int[rowLengths[a]];
+            }
+
+            // mirror each pair (a,b) into row b; visiting a in order keeps each row sorted, ahead of its own pairs.
+            int[] filled = new int[numSubgroups];
+            for (int a=0;a<numSubgroups;a++)
+            {
+                for (int k=0;k<upperColumns[a].length;k++)
+                {
+                    int b = upperColumns[a][k];
+                    columns[b][filled[b]] = a;
+                    results[b][filled[b]++] = upperResults[a][k];
+                }
+            }
+            for (int a=0;a<numSubgroups;a++)
+            {
+                System.arraycopy(upperColumns[a], 0, columns[a], filled[a], upperColumns[a].length);
+                System.arraycopy(upperResults[a], 0, results[a], filled[a], upperResults[a].length);
+            }
+        }
+
+        public int Get(int a, int b)
+        {
+            if (a == b) return a;
+
+            int k = Arrays.binarySearch(columns[a], b);
+            return (k >= 0) ? results[a][k] : -1;
+        }
+
+        public void GetRow(int a, int[] row)
+        {
+            Arrays.fill(row, -1);
+            row[a] = a;
+            for (int k=0;k<columns[a].length;k++)
+                row[columns[a][k]] = results[a][k];
+        }
+
+        /** @return The number of pairs (a,b) with a != b which combine into a subgroup. */
+        public int NumEntries()
+        {
+            int numEntries = 0;
+            for (int[] row : columns) numEntries += row.length;
+            return numEntries;
+        }
+    }
+
+    /**
+     * A table of combinations which computes each row when it is first looked up, and keeps it.
+     *  Rows which are only read through {@link #GetRow} (e.g. to lift the table to conjugacy classes) are never kept.
+     */
+    static class LazySubgroupTable implements Group.ISubgroupTable
+    {
+        private final BitSet[] subgroups;
+        private final HashMap<BitSet, Integer> subgroupIndex;
+        private final Group.IBitSetOperation bitOp;
+        private final boolean ignoreMissing;
+        private final int[][] rows;
+
+        public LazySubgroupTable(BitSet[] subgroups, Group.IBitSetOperation bitOp, boolean ignoreMissing)
+        {
+            this.subgroups = subgroups;
+            this.subgroupIndex = IndexSubgroups(subgroups);
+            this.bitOp = bitOp;
+            this.ignoreMissing = ignoreMissing;
+            this.rows = new int[subgroups.length][];
+        }
+
+        public synchronized int Get(int a, int b)
+        {
+            if (rows[a] == null)
+            {
+                int[] row = new int[subgroups.length];
+                GetRow(a, row);
+                rows[a] = row;
+            }
+            return rows[a][b];
+        }
+
+        public void GetRow(int a, int[] row)
+        {
+            BitSet s12 = new BitSet();
+            for (int b=0;b<subgroups.length;b++)
+                row[b] = (a == b) ? a : GenerateCombination(a, b, subgroups, subgroupIndex, s12, bitOp, ignoreMissing);
+        }
+
+        /** @return The number of rows computed and kept so far. */
+        public synchronized int NumCachedRows()
+        {
+            int numCachedRows = 0;
+            for (int[] row : rows) if (row != null) numCachedRows++;
+            return numCachedRows;
+        }
+    }
+
+    /**
+     * Build an index from the membership mask of each subgroup to its index (the first, should two be equal).
+     *  BitSets hash and compare by their words, so looking up a mask costs O(n/64) rather than a scan of every subgroup.
+     * @param subgroups The subgroup membership masks.
+     * @return The map from each membership mask to the index of its subgroup.
+     */
+    static HashMap<BitSet, Integer> IndexSubgroups(BitSet[] subgroups)
+    {
+        HashMap<BitSet, Integer> subgroupIndex = new HashMap<BitSet, Integer>(2 * subgroups.length);
+        for (int i=0;i<subgroups.length;i++)
+            if (!subgroupIndex.containsKey(subgroups[i]))
+                subgroupIndex.put(subgroups[i], i);
+        return subgroupIndex;
     }
 
     /**
@@ -216,14 +620,32 @@ public class GroupUtil
      * @return the index of the subgroup which is equal to (s1 intersect s2).
      */
     static int GenerateCombination(int s1, int s2, BitSet[] subgroups, Group.IBitSetOperation bitOp, boolean ignoreMissing)
+    {
+        return GenerateCombination(s1, s2, subgroups, IndexSubgroups(subgroups), new BitSet(), bitOp, ignoreMissing);
+    }
+
+    /**
+     * Calculate the combination of the two given subgroups, using the specified bit-op.
+     * @param s1 The index of the first subgroup
+     * @param s2 The index of the second
+     * @param subgroups The subgroup membership masks
+     * @param subgroupIndex The index of each subgroup membership mask, see {@link #IndexSubgroups}.
+     * @param s12 A scratch bitset, which is overwritten with the combination.
+     * @param bitOp A function which modifies the first operator by combining it with the second.
+     * @param ignoreMissing If a.combine(b) results in a bitset which is not a subgroup, this is considered "Missing". If true, return -1. Else throw exception.
+     * @return the index of the subgroup which is equal to (s1 intersect s2).
+     */
+    static int GenerateCombination(int s1, int s2, BitSet[] subgroups, HashMap<BitSet, Integer> subgroupIndex,
+                                   BitSet s12, Group.IBitSetOperation bitOp, boolean ignoreMissing)
     {
         // find all elements that are in both sub1 and sub2.
-        BitSet s12 = (BitSet)subgroups[s1].clone();
+        s12.clear();
+        s12.or(subgroups[s1]);
         bitOp.combine(s12, subgroups[s2]);
 
-        for (int i=0;i<subgroups.length;i++)
-            if (s12.equals(subgroups[i]))
-                return i;
+        Integer index = subgroupIndex.get(s12);
+        if (index != null)
+            return index;
 
         if (ignoreMissing) return -1;
         else throw new RuntimeException("Error: Subgroup not found" + subgroups[s1] + " ^ " + subgroups[s2] + " not a subgroup");
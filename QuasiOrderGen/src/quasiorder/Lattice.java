@@ -5,18 +5,22 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.LinkedList;
 
-import static quasiorder.FixOrderSet.ToSerialIndex;
-
 public class Lattice
 {
-    public final BitSet latBit;
+    public final BitMatrix latBit;
     public final int latOrder;
     public final String[] names;
     public final String[] colours;
     public String[] nodeAttr;
     public final LinkedList<ArrayList<Integer>> subGraphs;
+    private BitMatrix covers;
 
     public Lattice(BitSet lattice, int latOrder, String[] names, String[] colors, LinkedList<ArrayList<Integer>> subGraphs)
+    {
+        this(BitMatrix.FromBitSet(lattice, latOrder), latOrder, names, colors, subGraphs);
+    }
+
+    public Lattice(BitMatrix lattice, int latOrder, String[] names, String[] colors, LinkedList<ArrayList<Integer>> subGraphs)
     {
         this.latBit = lattice;
         this.latOrder = latOrder;
@@ -26,6 +30,16 @@ public class Lattice
         this.nodeAttr = ToColorAttributeStrings(colors, latOrder);
     }
 
+    /**
+     * @return The cover relation (Hasse diagram) of this lattice: entry(i, j) is set iff j covers i.
+     *  Computed on first use only. See {@link BitMatrix#TransitiveReduction}.
+     */
+    public synchronized BitMatrix Covers()
+    {
+        if (covers == null) covers = latBit.TransitiveReduction();
+        return covers;
+    }
+
     protected static String[] ToColorAttributeStrings(String[] colors, int latOrder)
     {
         String[] colAttr = new String[latOrder];
@@ -141,13 +155,10 @@ public class Lattice
         collapsedSubGraph.add(all);
 
         // build the collapsed relation:
-        BitSet collapsedRelation = new BitSet(collapsedLatOrder*collapsedLatOrder);
-        for (int k = lat.latBit.nextSetBit(0); k >= 0; k = lat.latBit.nextSetBit(k+1))
-        {
-            int oldI = k / lat.latOrder;
-            int oldJ = k % lat.latOrder;
-            collapsedRelation.set(ToSerialIndex(newIndex[oldI], newIndex[oldJ], collapsedLatOrder));
-        }
+        BitMatrix collapsedRelation = new BitMatrix(collapsedLatOrder);
+        for (int oldI=0;oldI<lat.latOrder;oldI++)
+            for (int oldJ = lat.latBit.NextSetBit(oldI, 0); oldJ >= 0; oldJ = lat.latBit.NextSetBit(oldI, oldJ+1))
+                collapsedRelation.Set(newIndex[oldI], newIndex[oldJ]);
 
         return new Lattice(collapsedRelation, collapsedLatOrder, collapsedNames, collapsedColours, collapsedSubGraph);
     }
@@ -165,13 +176,22 @@ public class Lattice
      */
     public static Lattice FilterBy(int latOrder, String[] names, String[] colours, BitSet relation,
                                    LinkedList<ArrayList<Integer>> subGraphs, BitSet include)
+    {
+        return FilterBy(latOrder, names, colours, BitMatrix.FromBitSet(relation, latOrder), subGraphs, include);
+    }
+
+    /**
+     * Filter the lattice of all fix-orders as per the include bitmap. As {@link #FilterBy(int, String[], String[], BitSet, LinkedList, BitSet)}.
+     */
+    public static Lattice FilterBy(int latOrder, String[] names, String[] colours, BitMatrix relation,
+                                   LinkedList<ArrayList<Integer>> subGraphs, BitSet include)
     {
         int filteredLatOrder = include.cardinality();
         int[] oldIndex = new int[filteredLatOrder];
         int[] newIndex = new int[latOrder];
         String[] filteredNames = new String[filteredLatOrder];
         String[] filteredColours = new String[filteredLatOrder];
-        BitSet filteredRelation = new BitSet(filteredLatOrder*filteredLatOrder);
+        BitMatrix filteredRelation = new BitMatrix(filteredLatOrder);
 
         // create maps  new-index <=> old-index
         for (int old = include.nextSetBit(0), cur = 0; old >= 0; old = include.nextSetBit(old+1), cur++)
@@ -188,11 +208,11 @@ public class Lattice
             filteredColours[i] = colours[oldI];
         }
 
-        // copy over the selected relation elements
+        // copy over the selected relation elements, visiting only the related pairs of each selected row.
         for(int i=0;i<filteredLatOrder;i++)
-            for(int j=0;j<filteredLatOrder;j++)
-                if (relation.get(ToSerialIndex(oldIndex[i], oldIndex[j], latOrder)))
-                    filteredRelation.set(ToSerialIndex(i, j, filteredLatOrder));
+            for (int old = relation.NextSetBit(oldIndex[i], 0); old >= 0; old = relation.NextSetBit(oldIndex[i], old+1))
+                if (include.get(old))
+                    filteredRelation.Set(i, newIndex[old]);
 
         // setup filtered SubGraphs:
         LinkedList<ArrayList<Integer>> filteredSubGraphs = new LinkedList<ArrayList<Integer>>();
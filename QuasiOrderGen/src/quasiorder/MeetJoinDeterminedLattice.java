@@ -6,8 +6,6 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedList;
 
-import static quasiorder.FixOrderSet.ToSerialIndex;
-
 public class MeetJoinDeterminedLattice extends Lattice
 {
     private final int[][] joinTable;
@@ -47,7 +45,7 @@ public class MeetJoinDeterminedLattice extends Lattice
     public int CMSxMyJz = -1;
 
     private MeetJoinDeterminedLattice(
-            BitSet lattice, int latOrder, String[] names, String[] colors,
+            BitMatrix lattice, int latOrder, String[] names, String[] colors,
             LinkedList<ArrayList<Integer>> subGraphs, int[][] joinTable, int[][] meetTable)
     {
         super(lattice, latOrder, names, colors, subGraphs);
@@ -58,8 +56,8 @@ public class MeetJoinDeterminedLattice extends Lattice
 
     public static MeetJoinDeterminedLattice FromLattice(Lattice lat)
     {
-        int[][] joinTable = DetermineJoins(lat.latBit, lat.latOrder);
-        int[][] meetTable = DetermineMeets(lat.latBit, lat.latOrder);
+        int[][] joinTable = DetermineJoins(lat.latBit);
+        int[][] meetTable = DetermineMeets(lat.latBit);
         return new MeetJoinDeterminedLattice(lat.latBit, lat.latOrder, lat.names, lat.colours, lat.subGraphs, joinTable, meetTable);
     }
 
@@ -109,19 +107,19 @@ public class MeetJoinDeterminedLattice extends Lattice
     public boolean IsModular()
     {
         // modular law: [ x<= b ] ==> [ x V ( a ^ b) == ( x V a ) ^ b ]
-        for (int k=latBit.nextSetBit(0); k>=0; k=latBit.nextSetBit(k+1))
+        for (int x=0;x<latOrder;x++)
         {
-            int x = k / latOrder;
-            int b = k % latOrder;
-
-            for (int a=0;a<latOrder;a++)
+            for (int b=latBit.NextSetBit(x, 0); b>=0; b=latBit.NextSetBit(x, b+1))
             {
-                int xJa = joinTable[x][a];
-                int aMb = meetTable[a][b];
-                if (joinTable[x][aMb] != meetTable[xJa][b])
+                for (int a=0;a<latOrder;a++)
                 {
-                    SaveModularStatus(a, b, x, xJa, aMb);
-                    return false;
+                    int xJa = joinTable[x][a];
+                    int aMb = meetTable[a][b];
+                    if (joinTable[x][aMb] != meetTable[xJa][b])
+                    {
+                        SaveModularStatus(a, b, x, xJa, aMb);
+                        return false;
+                    }
                 }
             }
         }
@@ -325,17 +323,16 @@ public class MeetJoinDeterminedLattice extends Lattice
 
     interface IBinaryOp
     {
-        int DetermineResult(BitSet lattice, int latOrder, int i, int j);
+        int DetermineResult(int i, int j);
     }
 
     /**
      * Determine the result table of applying a specified Binary operation
-     * @param lattice The lattice to apply the binary operation on
      * @param latOrder The number of elements in this lattice
      * @param op The operation, which must be a complete binary operation, LxL->L
      * @return The resulting table for this operation.
      */
-    private static int[][] DetermineOperationTable(BitSet lattice, int latOrder, IBinaryOp op)
+    private static int[][] DetermineOperationTable(int latOrder, IBinaryOp op)
     {
         int[][] opTable =  new int[latOrder][latOrder];
         for(int i=0;i<latOrder;i++)
@@ -343,7 +340,7 @@ public class MeetJoinDeterminedLattice extends Lattice
             opTable[i][i] = i;
             for(int j=i+1;j<latOrder;j++)
             {
-                int meet = op.DetermineResult(lattice, latOrder, i, j);
+                int meet = op.DetermineResult(i, j);
                 opTable[i][j] = meet;
                 opTable[j][i] = meet;
             }
@@ -360,14 +357,27 @@ public class MeetJoinDeterminedLattice extends Lattice
      */
     public static int[][] DetermineMeets(BitSet lattice, int latOrder)
     {
-        return DetermineOperationTable(lattice, latOrder, new IBinaryOp()
+        return DetermineMeets(BitMatrix.FromBitSet(lattice, latOrder));
+    }
+
+    /**
+     * Determine the meet table
+     *
+     * @param lattice The lattice to act on
+     * @return The meet table
+     */
+    public static int[][] DetermineMeets(BitMatrix lattice)
+    {
+        // the elements below i are row i of the converse.
+        final BitMatrix converse = lattice.Transpose();
+        return DetermineOperationTable(lattice.Order, new IBinaryOp()
         {
-            public int DetermineResult(BitSet lattice, int latOrder, int i, int j)
+            public int DetermineResult(int i, int j)
             {
-                return DetermineMeet(lattice, latOrder, i, j);
+                return DetermineMeet(converse, i, j);
             }
         });
-    };
+    }
 
     /**
      * Determine the join table
@@ -378,90 +388,86 @@ public class MeetJoinDeterminedLattice extends Lattice
      */
     public static int[][] DetermineJoins(BitSet lattice, int latOrder)
     {
-        return DetermineOperationTable(lattice, latOrder, new IBinaryOp()
+        return DetermineJoins(BitMatrix.FromBitSet(lattice, latOrder));
+    }
+
+    /**
+     * Determine the join table
+     *
+     * @param lattice The lattice to act on
+     * @return The join table
+     */
+    public static int[][] DetermineJoins(final BitMatrix lattice)
+    {
+        return DetermineOperationTable(lattice.Order, new IBinaryOp()
         {
-            public int DetermineResult(BitSet lattice, int latOrder, int i, int j)
+            public int DetermineResult(int i, int j)
             {
-                return DetermineJoin(lattice, latOrder, i, j);
+                return DetermineJoin(lattice, i, j);
             }
         });
     }
 
-    private static boolean isRel(BitSet b, int latOrder, int i, int j)
-    {
-        return b.get(ToSerialIndex(i,j,latOrder));
-    }
-
     /**
-     * Determine the join of the elements i and j (i V j)
+     * Determine the join of the elements i and j (i V j): the last element above both, searched a row word at a time.
      *
      * Assumes i < j
      *
      * @param lat The lattice in which i and j reside
-     * @param latOrder The number of elements in the lattice
      * @param i The index of the first element
      * @param j The index of the second element
      * @return index-of(elem[i] V elem[j])
      */
-    private static int DetermineJoin(BitSet lat, int latOrder, int i, int j)
+    private static int DetermineJoin(BitMatrix lat, int i, int j)
     {
-        for (int k=i;k>=0;k--)
-            if (isRel(lat, latOrder, i, k) && isRel(lat, latOrder, j, k))
-                return k;
-
-        throw new RuntimeException("Lattice does not have unique join for " + i + " " + j);
+        int k = lat.PreviousSetBitOfAnd(i, j, i);
+        if (k < 0) throw new RuntimeException("Lattice does not have unique join for " + i + " " + j);
+        return k;
     }
 
     /**
-     * Determine the meet of the elements i and j (i ^ j)
+     * Determine the meet of the elements i and j (i ^ j): the first element below both, searched a row word at a time.
      *
      * Assumes i < j
      *
-     * @param lat The lattice in which i and j reside
-     * @param latOrder The number of elements in the lattice
+     * @param converse The converse of the lattice in which i and j reside
      * @param i The index of the first element
      * @param j The index of the second element
      * @return index-of(elem[i] ^ elem[j])
      */
-    private static int DetermineMeet(BitSet lat, int latOrder, int i, int j)
+    private static int DetermineMeet(BitMatrix converse, int i, int j)
     {
-        for (int k=j;k<latOrder;k++)
-            if (isRel(lat, latOrder, k, i) && isRel(lat, latOrder, k, j))
-                return k;
-
-        throw new RuntimeException("Lattice does not have unique meet for " + i + " " + j);
+        int k = converse.NextSetBitOfAnd(i, j, j);
+        if (k < 0) throw new RuntimeException("Lattice does not have unique meet for " + i + " " + j);
+        return k;
     }
 
-    private static boolean IsMeetUnique(BitSet poset, int latOrder, int i, int j)
+    private static boolean IsMeetUnique(BitMatrix converse, int i, int j)
     {
-        int k = DetermineMeet(poset, latOrder, i, j);
-        for(int m=k;m<latOrder;m++)
-            if (isRel(poset, latOrder, m, i) && isRel(poset, latOrder, m, j) && !isRel(poset, latOrder, m, k))
-                return SaveIsNotALattice(i, j, k, m);
-
-        return true;
+        // every element below both i and j must be below their meet.
+        int k = DetermineMeet(converse, i, j);
+        int m = converse.NextSetBitOfAndNot(i, j, k, k);
+        return (m < 0) || SaveIsNotALattice(i, j, k, m);
     }
 
-    private static boolean IsJoinUnique(BitSet poset, int latOrder, int i, int j)
+    private static boolean IsJoinUnique(BitMatrix poset, int i, int j)
     {
-        int k = DetermineJoin(poset, latOrder, i, j);
-        for(int m=k;m>=0;m--)
-            if (isRel(poset, latOrder, i, m) && isRel(poset, latOrder, j, m) && !isRel(poset, latOrder, k, m))
-                return SaveIsNotALattice(i, j, k, m);
-
-        return true;
+        // every element above both i and j must be above their join.
+        int k = DetermineJoin(poset, i, j);
+        int m = poset.PreviousSetBitOfAndNot(i, j, k, k);
+        return (m < 0) || SaveIsNotALattice(i, j, k, m);
     }
 
     interface IBinFilter
     {
-        boolean IsOpUnique(BitSet poset, int latOrder, int i, int j);
+        boolean IsOpUnique(int i, int j);
     }
 
-    private static boolean IsOpUnique(BitSet poset, int latOrder, IBinFilter binFilter)
+    private static boolean IsOpUnique(BitMatrix poset, IBinFilter binFilter)
     {
-        for(int i=0;i<latOrder;i++)
-            for(int j=i+1;j<latOrder;j++)
-               if (!isRel(poset, latOrder, i, j) && !binFilter.IsOpUnique(poset, latOrder, i, j))
+        for(int i=0;i<poset.Order;i++)
+            for(int j=i+1;j<poset.Order;j++)
+               if (!poset.Get(i, j) && !binFilter.IsOpUnique(i, j))
                    return false;
 
         return SaveIsALattice();
@@ -481,11 +487,17 @@ public class MeetJoinDeterminedLattice extends Lattice
     // TODO test
     public static boolean IsMeetUnique(BitSet poset, int latOrder)
     {
-        return IsOpUnique(poset, latOrder, new IBinFilter()
+        return IsMeetUnique(BitMatrix.FromBitSet(poset, latOrder));
+    }
+
+    public static boolean IsMeetUnique(BitMatrix poset)
+    {
+        final BitMatrix converse = poset.Transpose();
+        return IsOpUnique(poset, new IBinFilter()
         {
-            public boolean IsOpUnique(BitSet poset, int latOrder, int i, int j)
+            public boolean IsOpUnique(int i, int j)
             {
-                return IsMeetUnique(poset, latOrder, i, j);
+                return IsMeetUnique(converse, i, j);
             }
         });
     }
@@ -493,9 +505,14 @@ public class MeetJoinDeterminedLattice extends Lattice
     // TODO test
     public static boolean IsJoinUnique(BitSet poset, int latOrder)
     {
-        return IsOpUnique(poset, latOrder, new IBinFilter() {
-            public boolean IsOpUnique(BitSet poset, int latOrder, int i, int j) {
-                return IsJoinUnique(poset, latOrder, i, j);
+        return IsJoinUnique(BitMatrix.FromBitSet(poset, latOrder));
+    }
+
+    public static boolean IsJoinUnique(final BitMatrix poset)
+    {
+        return IsOpUnique(poset, new IBinFilter() {
+            public boolean IsOpUnique(int i, int j) {
+                return IsJoinUnique(poset, i, j);
             }
         });
     }
@@ -503,12 +520,22 @@ public class MeetJoinDeterminedLattice extends Lattice
     // TODO test
     public static boolean IsALattice(BitSet poset, int latOrder)
     {
-        return IsMeetUnique(poset, latOrder) && IsJoinUnique(poset, latOrder);
+        return IsALattice(BitMatrix.FromBitSet(poset, latOrder));
+    }
+
+    public static boolean IsALattice(BitMatrix poset)
+    {
+        return IsMeetUnique(poset) && IsJoinUnique(poset);
     }
 
     public static FlagMessagePair LatCheckMessage(BitSet poset, int latOrder, String[] names)
     {
-        boolean isLattice = IsALattice(poset, latOrder);
+        return LatCheckMessage(BitMatrix.FromBitSet(poset, latOrder), names);
+    }
+
+    public static FlagMessagePair LatCheckMessage(BitMatrix poset, String[] names)
+    {
+        boolean isLattice = IsALattice(poset);
         StringBuilder output = new StringBuilder("Lattice: " + isLattice);
 
         if (!isLattice)
@@ -519,6 +546,6 @@ public class MeetJoinDeterminedLattice extends Lattice
 
     public static FlagMessagePair LatCheckMessage(Lattice lat)
     {
-        return LatCheckMessage(lat.latBit, lat.latOrder, lat.names);
+        return LatCheckMessage(lat.latBit, lat.names);
     }
 }
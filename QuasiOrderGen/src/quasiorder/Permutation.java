@@ -1,36 +1,67 @@
 package quasiorder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 
 class Permutation
 {
-    public final ArrayList<TwoSwap> swaps;
+    /**
+     * The image of each index: performing the swaps (see {@link FixOrder#Perform2Swap}) on a relation
+     *  moves the pair (x, y) to (images[x], images[y]). Indices beyond the end of the array are fixed.
+     */
+    public final int[] images;
+
+    // the swaps this was built from, or null if it was built from its images. See Swaps().
+    private final ArrayList<TwoSwap> swaps;
 
     public Permutation(ArrayList<TwoSwap> swaps)
     {
         this.swaps = swaps;
+        this.images = ImagesOf(swaps);
     }
 
-    // Given an array of int pairs (representing elements) find the list of permutations (by decomposition into TwoSwaps)
-    public static ArrayList<Permutation> FromPermutationTable(int[][][] permutationTable)
+    private Permutation(int[] images)
     {
-        ArrayList<Permutation> permutations = new ArrayList<Permutation>();
-
-        for (int[][] permutation : permutationTable) // permTable = [ permutations ]
-            permutations.add(FromPermutationTable(permutation));
+        this.swaps = null;
+        this.images = images;
+    }
 
-        return permutations;
+    /**
+     * @return The swaps which, performed in order with {@link FixOrder#Perform2Swap}, permute a relation as this does.
+     *  Decomposed from the images on each call, unless this was built from swaps.
+     */
+    public ArrayList<TwoSwap> Swaps()
+    {
+        return (swaps != null) ? swaps : SwapsOf(images);
     }
 
-    public static Permutation FromPermutationTable(int[][] permutationTable)
+    // Each swap exchanges the sources of its two indices, so after all of them, index k holds the pair from sources[k].
+    private static int[] ImagesOf(ArrayList<TwoSwap> swaps)
     {
-        int len = permutationTable.length;
-        int[] nextP = new int[len];
-        for(int[] pair : permutationTable)
-            nextP[pair[0]]=pair[1];
+        int len = 0;
+        for (TwoSwap t : swaps)
+            len = Math.max(len, Math.max(t.i, t.j) + 1);
 
+        int[] sources = new int[len];
+        for (int k=0;k<len;k++)
+            sources[k] = k;
+        for (TwoSwap t : swaps)
+        {
+            int tmp = sources[t.i]; sources[t.i] = sources[t.j]; sources[t.j] = tmp;
+        }
+
+        int[] images = new int[len];
+        for (int k=0;k<len;k++)
+            images[sources[k]] = k;
+        return images;
+    }
+
+    // Decompose each cycle of the images into TwoSwaps, walking it from its smallest index.
+    private static ArrayList<TwoSwap> SwapsOf(int[] images)
+    {
+        int len = images.length;
         BitSet vis = new BitSet(len);
         ArrayList<TwoSwap> twoSwaps = new ArrayList<TwoSwap>();
         while(true)
@@ -41,7 +72,7 @@ class Permutation
             while(true)
             {
                 vis.set(cur);
-                int next = nextP[cur];
+                int next = images[cur];
                 if (next == start) break;
                 twoSwaps.add(new TwoSwap(cur, next));
                 cur = next;
@@ -49,7 +80,72 @@ class Permutation
         }
 
         Collections.reverse(twoSwaps);
-        return new Permutation(twoSwaps);
+        return twoSwaps;
+    }
+
+    /** @return The number of words of a buffer which can hold any relation on numElem elements. */
+    public static int RelationWords(int numElem)
+    {
+        return (numElem * numElem + Long.SIZE - 1) / Long.SIZE;
     }
 
+    /**
+     * Permute a relation in one pass over its pairs, as performing all of the swaps would.
+     *
+     * @param relation The relation, indexed by {@link FixOrderSet#ToSerialIndex}.
+     * @param numElem The number of elements in the relation.
+     * @param buffer Receives the words (as in BitSet.toLongArray()) of the image. At least {@link #RelationWords} long.
+     *  Reused between calls, to avoid allocating a relation per image.
+     */
+    public void PermuteRelation(BitSet relation, int numElem, long[] buffer)
+    {
+        Arrays.fill(buffer, 0, RelationWords(numElem), 0L);
+
+        for (int x=0;x<numElem;x++)
+        {
+            int rowStart = x * numElem;
+            int rowEnd = rowStart + numElem;
+            int imageRowStart = ImageOf(x) * numElem;
+            for (int bit=relation.nextSetBit(rowStart);bit>=0 && bit<rowEnd;bit=relation.nextSetBit(bit+1))
+            {
+                int target = imageRowStart + ImageOf(bit - rowStart);
+                buffer[target >>> 6] |= 1L << target;
+            }
+        }
+    }
+
+    /** @return The image of a relation under this permutation. */
+    public BitSet PermuteRelation(BitSet relation, int numElem)
+    {
+        long[] buffer = new long[RelationWords(numElem)];
+        PermuteRelation(relation, numElem, buffer);
+        return BitSet.valueOf(buffer);
+    }
+
+    private int ImageOf(int x)
+    {
+        return (x < images.length) ? images[x] : x;
+    }
+
+    // Given an array of int pairs (representing elements) find the list of permutations, as maps of their images.
+    public static ArrayList<Permutation> FromPermutationTable(int[][][] permutationTable)
+    {
+        ArrayList<Permutation> permutations = new ArrayList<Permutation>();
+
+        for (int[][] permutation : permutationTable) // permTable = [ permutations ]
+            permutations.add(FromPermutationTable(permutation));
+
+        return permutations;
+    }
+
+    public static Permutation FromPermutationTable(int[][] permutationTable)
+    {
+        int[] images = new int[permutationTable.length];
+        for (int k=0;k<images.length;k++)
+            images[k] = k; // in case the table omits fixed elements.
+        for(int[] pair : permutationTable)
+            images[pair[0]]=pair[1];
+
+        return new Permutation(images);
+    }
 }
@@ -29,14 +29,14 @@ public class RelationFormat
     private static LinkedList<ArrayList<Integer>> emptySubgraphList = new LinkedList<ArrayList<Integer>>();
     private static String PrintRelationEdges(Lattice lattice, boolean showSubGraphs)
     {
-        return PrintRelationEdges(lattice.latBit, lattice.names, lattice.nodeAttr,
-                (showSubGraphs ? lattice.subGraphs : emptySubgraphList), lattice.latOrder);
+        return PrintEdges(lattice.Covers(), lattice.names, lattice.nodeAttr,
+                (showSubGraphs ? lattice.subGraphs : emptySubgraphList));
     }
 
     /**
-     * Output this relation as a dot file (for GraphViz), where the edges are spelled out in plaintext.
+     * Output this relation as a dot file (for GraphViz), where the edges of its Hasse diagram are spelled out in plaintext.
      *
-     * @param relation The relation to output
+     * @param relation The relation to output, a quasi-order.
      * @param elementNames The names of each element in the relation
      * @param numElem The number of elements
      * @param nodeAttributes The presentation attributes of each node
@@ -46,6 +46,25 @@ public class RelationFormat
     public static String PrintRelationEdges(BitSet relation, String[] elementNames, String[] nodeAttributes,
                                             LinkedList<ArrayList<Integer>> subGraphs, int numElem)
     {
+        return PrintRelationEdges(BitMatrix.FromBitSet(relation, numElem), elementNames, nodeAttributes, subGraphs);
+    }
+
+    /**
+     * Output this relation as a dot file (for GraphViz). As {@link #PrintRelationEdges(BitSet, String[], String[], LinkedList, int)}.
+     */
+    public static String PrintRelationEdges(BitMatrix relation, String[] elementNames, String[] nodeAttributes,
+                                            LinkedList<ArrayList<Integer>> subGraphs)
+    {
+        return PrintEdges(relation.TransitiveReduction(), elementNames, nodeAttributes, subGraphs);
+    }
+
+    /**
+     * Output these edges as a dot file (for GraphViz), with an edge y->x for each entry(x, y).
+     */
+    private static String PrintEdges(BitMatrix edges, String[] elementNames, String[] nodeAttributes,
+                                     LinkedList<ArrayList<Integer>> subGraphs)
+    {
+        int numElem = edges.Order;
         StringBuilder res = new StringBuilder();
         res.append("strict digraph {\nedge [ arrowhead=\"none\", arrowtail=\"none\"]\n");
         for (int i=0;i<numElem;i++)
@@ -53,12 +72,9 @@ public class RelationFormat
 
         AppendSubgraphs(subGraphs, elementNames, res);
 
-        for(int i=relation.nextSetBit(0); i>=0; i=relation.nextSetBit(i + 1))
-        {
-            int y = i % numElem;
-            int x = i / numElem;
-            res.append(elementNames[y]).append("->").append(elementNames[x]).append("\n");
-        }
+        for (int x=0;x<numElem;x++)
+            for (int y=edges.NextSetBit(x, 0); y>=0; y=edges.NextSetBit(x, y + 1))
+                res.append(elementNames[y]).append("->").append(elementNames[x]).append("\n");
 
         res.append("}\n");
         return res.toString();
@@ -84,15 +100,27 @@ public class RelationFormat
         }
     }
 
+    public static void PrintRelation(FixOrder fixOrder, Group inputGroup, int index, PrintWriter wOut)
+    {
+        BitMatrix relation = FixOrderSet.ExpandRelationMatrix(inputGroup, fixOrder.Relation);
+        PrintRelation(relation, inputGroup.ElementNames, index, wOut);
+    }
+
     public static void PrintRelation(BitSet relation, String[] elementNames, int NE, int index, PrintWriter wOut)
     {
-        wOut.println("\n"+index+">>>"+relation.cardinality());
+        PrintRelation(BitMatrix.FromBitSet(relation, NE), elementNames, index, wOut);
+    }
+
+    public static void PrintRelation(BitMatrix relation, String[] elementNames, int index, PrintWriter wOut)
+    {
+        int NE = relation.Order;
+        wOut.println("\n"+index+">>>"+relation.Cardinality());
         for(int i=0;i<NE;i++)
         {
             wOut.print(String.format("%1$-20s \t:", elementNames[i]));
 
             for (int j=0;j<NE;j++)
-                wOut.print(relation.get(FixOrderSet.ToSerialIndex(i, j, NE)) ? "x " : "  ");
+                wOut.print(relation.Get(i, j) ? "x " : "  ");
 
             wOut.println();
         }
@@ -107,6 +135,14 @@ public class RelationFormat
         wOut.println();
     }
 
+    public static void PrintSubgroupFamilyList(Group inputGroup, ArrayList<long[]> ccMasks, int index, PrintWriter wOut)
+    {
+        List<BitSet> familyMasks = new ArrayList<BitSet>();
+        for (long[] ccMask : ccMasks)
+            familyMasks.add(GroupUtil.ToSubgroupFamilyBitSet(inputGroup.NumSubgroups, ccMask, inputGroup.ConjugacyClasses));
+        PrintSubgroupFamilyList(inputGroup, familyMasks, index, wOut);
+    }
+
     public static void PrintSubgroupFamilyList(Group inputGroup, List<BitSet> familyMasks, int index, PrintWriter wOut)
     {
         wOut.println("\n"+index+">>>");
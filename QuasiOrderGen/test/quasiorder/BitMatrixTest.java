@@ -0,0 +1,152 @@
+package quasiorder;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BitMatrixTest extends QuasiOrderGenFixture
+{
+    @Test
+    public void TestBitSetRoundTrip()
+    {
+        //  1011
+        //  0100
+        //  0000
+        //  1111
+        BitSet relation = StringToBitSet("1011"+"0100"+"0000"+"1111");
+        BitMatrix matrix = BitMatrix.FromBitSet(relation, 4);
+        assertTrue("(0,2)", matrix.Get(0, 2));
+        assertFalse("(1,0)", matrix.Get(1, 0));
+        assertEquals("cardinality", relation.cardinality(), matrix.Cardinality());
+        assertEquals("round trip", relation, matrix.ToBitSet());
+    }
+
+    @Test
+    public void TestTransposeMatchesPairwiseTranspose()
+    {
+        // orders either side of the word boundaries.
+        Random random = new Random(17);
+        for (int order : new int[] { 1, 5, 63, 64, 65, 130 })
+        {
+            BitMatrix matrix = RandomMatrix(random, order);
+            BitMatrix transpose = matrix.Transpose();
+            for (int i=0;i<order;i++)
+                for (int j=0;j<order;j++)
+                    assertEquals(order + "-(" + i + "," + j + ")", matrix.Get(j, i), transpose.Get(i, j));
+            assertEquals(order + "-twice", matrix, transpose.Transpose());
+        }
+    }
+
+    @Test
+    public void TestRowSearchesMatchPairwiseSearches()
+    {
+        Random random = new Random(23);
+        int order = 130;
+        BitMatrix matrix = RandomMatrix(random, order);
+        for (int t=0;t<200;t++)
+        {
+            int a = random.nextInt(order), b = random.nextInt(order), c = random.nextInt(order), from = random.nextInt(order);
+
+            int next = -1, previous = -1, nextNot = -1, previousNot = -1;
+            for (int j=order-1;j>=from;j--)
+            {
+                if (matrix.Get(a, j) && matrix.Get(b, j)) next = j;
+                if (matrix.Get(a, j) && matrix.Get(b, j) && !matrix.Get(c, j)) nextNot = j;
+            }
+            for (int j=0;j<=from;j++)
+            {
+                if (matrix.Get(a, j) && matrix.Get(b, j)) previous = j;
+                if (matrix.Get(a, j) && matrix.Get(b, j) && !matrix.Get(c, j)) previousNot = j;
+            }
+
+            assertEquals("next-" + t, next, matrix.NextSetBitOfAnd(a, b, from));
+            assertEquals("previous-" + t, previous, matrix.PreviousSetBitOfAnd(a, b, from));
+            assertEquals("nextNot-" + t, nextNot, matrix.NextSetBitOfAndNot(a, b, c, from));
+            assertEquals("previousNot-" + t, previousNot, matrix.PreviousSetBitOfAndNot(a, b, c, from));
+        }
+    }
+
+    @Test
+    public void TestRowOperations()
+    {
+        BitMatrix matrix = BitMatrix.FromBitSet(StringToBitSet("110"+"010"+"011"), 3);
+        assertTrue("1 <= 0", matrix.IsRowSubsetOf(1, matrix, 0));
+        assertFalse("0 <= 2", matrix.IsRowSubsetOf(0, matrix, 2));
+
+        matrix.AndRow(0, matrix, 2);
+        matrix.OrRow(1, matrix, 2);
+        assertEquals(StringToBitSet("010"+"011"+"011"), matrix.ToBitSet());
+    }
+
+    @Test
+    public void TestTransitiveReductionOfRandomQuasiOrders()
+    {
+        // the closure of the reduction is the quasi-order again, and no edge of it can be left out.
+        Random random = new Random(29);
+        for (int order : new int[] { 1, 7, 64, 70 })
+        {
+            BitMatrix quasiOrder = Closure(RandomSparseMatrix(random, order));
+            BitMatrix reduction = quasiOrder.TransitiveReduction();
+            assertEquals(order + "-closure", quasiOrder, Closure(reduction));
+
+            for (int i=0;i<order;i++)
+            {
+                assertFalse(order + "-loop-" + i, reduction.Get(i, i));
+                for (int j=reduction.NextSetBit(i, 0); j>=0; j=reduction.NextSetBit(i, j+1))
+                {
+                    BitMatrix fewer = new BitMatrix(order);
+                    for (int a=0;a<order;a++)
+                        for (int b=reduction.NextSetBit(a, 0); b>=0; b=reduction.NextSetBit(a, b+1))
+                            if (a != i || b != j) fewer.Set(a, b);
+                    assertFalse(order + "-(" + i + "," + j + ")", quasiOrder.equals(Closure(fewer)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void TestTransitiveReductionOfAChain()
+    {
+        // 0 < 1 < 2, with 3 equivalent to 1.
+        BitMatrix chain = BitMatrix.FromBitSet(StringToBitSet("1111"+"0111"+"0010"+"0111"), 4);
+        assertEquals(StringToBitSet("0100"+"0011"+"0000"+"0100"), chain.TransitiveReduction().ToBitSet());
+    }
+
+    /** @return The reflexive transitive closure, by Warshall's algorithm. */
+    private static BitMatrix Closure(BitMatrix matrix)
+    {
+        BitMatrix closure = new BitMatrix(matrix.Order);
+        for (int i=0;i<matrix.Order;i++)
+        {
+            closure.OrRow(i, matrix, i);
+            closure.Set(i, i);
+        }
+        for (int k=0;k<matrix.Order;k++)
+            for (int i=0;i<matrix.Order;i++)
+                if (closure.Get(i, k)) closure.OrRow(i, closure, k);
+        return closure;
+    }
+
+    private static BitMatrix RandomSparseMatrix(Random random, int order)
+    {
+        BitMatrix matrix = new BitMatrix(order);
+        for (int i=0;i<order;i++)
+            for (int j=0;j<order;j++)
+                if (random.nextInt(4 * order) == 0) matrix.Set(i, j);
+        return matrix;
+    }
+
+    private static BitMatrix RandomMatrix(Random random, int order)
+    {
+        BitMatrix matrix = new BitMatrix(order);
+        for (int i=0;i<order;i++)
+            for (int j=0;j<order;j++)
+                if (random.nextBoolean()) matrix.Set(i, j);
+        return matrix;
+    }
+}
@@ -3,6 +3,7 @@ package quasiorder;
 import org.junit.Test;
 
 import java.util.BitSet;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -56,6 +57,34 @@ public class BitSetTwoSwapTest extends QuasiOrderGenFixture
         AssertSwappedBitSetIs(table, 2, 3, "0101"+"1100"+"0100"+"0111", numElem);
     }
 
+    @Test
+    public void TestPermuteRelationMatchesSwapping()
+    {
+        // a permutation of 9 elements with cycles of length 1, 3 and 5, and relations over several words.
+        int numElem = 9;
+        int[][] table = new int[numElem][];
+        int[] images = {0, 2, 3, 1, 5, 6, 7, 8, 4};
+        for (int x=0;x<numElem;x++) table[x] = new int[] {x, images[x]};
+        Permutation p = Permutation.FromPermutationTable(table);
+
+        Random random = new Random(numElem);
+        long[] buffer = new long[Permutation.RelationWords(numElem)];
+        for (int trial=0;trial<20;trial++)
+        {
+            BitSet relation = new BitSet(numElem * numElem);
+            for (int k=0;k<numElem*numElem;k++)
+                if (random.nextBoolean()) relation.set(k);
+
+            BitSet expected = (BitSet)relation.clone();
+            for (TwoSwap t : p.Swaps())
+                FixOrder.Perform2Swap(expected, t.i, t.j, numElem);
+
+            p.PermuteRelation(relation, numElem, buffer);
+            assertEquals("trial-" + trial, expected, BitSet.valueOf(buffer));
+            assertEquals("trial-" + trial + "-alloc", expected, p.PermuteRelation(relation, numElem));
+        }
+    }
+
     // requires: i <= j
     private static void AssertSwappedBitSetIs(BitSet orig, int i, int j, String expected, int numElem)
     {
@@ -0,0 +1,191 @@
+package quasiorder;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CayleyGroupTest extends QuasiOrderGenFixture
+{
+    // the elements of S3 in the order of InputParsingTest.JSON_STRING, each as its images of 1, 2 and 3.
+    private static final String[] S3_NAMES = { "()", "(1,3)", "(1,2,3)", "(2,3)", "(1,3,2)", "(1,2)" };
+    private static final int[][] S3_IMAGES = { {1,2,3}, {3,2,1}, {2,3,1}, {1,3,2}, {3,1,2}, {2,1,3} };
+
+    @Test
+    public void TestS3FromTableMatchesS3FromGAP() throws Exception
+    {
+        Group expected = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), false);
+        Group actual = Group.FromCayleyTable(PermutationTable(S3_IMAGES), S3_NAMES, false);
+
+        assertArrayEquals("element names", expected.ElementNames, actual.ElementNames);
+        assertEquals("subgroups", expected.NumSubgroups, actual.NumSubgroups);
+        assertEquals("conjugacy classes", expected.NumConjugacyClasses, actual.NumConjugacyClasses);
+        assertEquals("normal", expected.IsSubgroupNormal, actual.IsSubgroupNormal);
+        // every automorphism of S3 is inner.
+        assertEquals("automorphisms", 0, actual.Automorphisms.length);
+        assertGroupsHaveTheSameFixOrders("s3", expected, actual);
+    }
+
+    @Test
+    public void TestV4FromTableMatchesV4FromGAP() throws Exception
+    {
+        Group expected = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(IsAutomorphismEquivalentTest.V4_JSON)), false);
+        Group actual = Group.FromCayleyTable(ElementaryAbelianTable(2), new String[] { "1", "a", "b", "c" }, false);
+
+        assertArrayEquals("subgroup masks", expected.SubgroupMasks, actual.SubgroupMasks);
+        assertEquals("automorphisms", expected.Automorphisms.length, actual.Automorphisms.length);
+        assertEquals("class images", expected.ConjugacyClassImages.length, actual.ConjugacyClassImages.length);
+        assertGroupsHaveTheSameFixOrders("v4", expected, actual);
+    }
+
+    @Test
+    public void TestSubgroupsOfGroupsOfOrder8()
+    {
+        Group c2c2c2 = Group.FromCayleyTable(ElementaryAbelianTable(3), null, false);
+        assertEquals("c2^3 subgroups", 16, c2c2c2.NumSubgroups);
+        assertEquals("c2^3 conjugacy classes", 16, c2c2c2.NumConjugacyClasses);
+        assertEquals("c2^3 normal", 16, c2c2c2.IsSubgroupNormal.cardinality());
+
+        Group d8 = Group.FromCayleyTable(DihedralTable(4), null, true);
+        assertEquals("d8 subgroups", 10, d8.NumSubgroups);
+        assertEquals("d8 conjugacy classes", 8, d8.NumConjugacyClasses);
+        assertEquals("d8 normal", 6, d8.IsSubgroupNormal.cardinality());
+        // the outer automorphism r -> r, s -> rs swaps the two classes of reflections; its square is inner.
+        assertEquals("d8 automorphisms", 1, d8.Automorphisms.length);
+    }
+
+    @Test
+    public void TestIdentityNeedNotBeFirst()
+    {
+        int[][] table = ElementaryAbelianTable(2);
+        int[][] reversed = new int[4][4];
+        for (int x=0;x<4;x++)
+            for (int y=0;y<4;y++)
+                reversed[3 - x][3 - y] = 3 - table[x][y];
+
+        Group v4 = Group.FromCayleyTable(reversed, new String[] { "c", "b", "a", "1" }, false);
+        assertEquals("identity", "1", v4.ElementNames[0]);
+        assertEquals("subgroups", 5, v4.NumSubgroups);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestNonAssociativeTableIsRejected()
+    {
+        // a loop (with identity and inverses) which is not associative.
+        int[][] table = {
+                {0, 1, 2, 3, 4},
+                {1, 0, 3, 4, 2},
+                {2, 4, 0, 1, 3},
+                {3, 2, 4, 0, 1},
+                {4, 3, 1, 2, 0} };
+        Group.FromCayleyTable(table, null, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestTableWithoutIdentityIsRejected()
+    {
+        Group.FromCayleyTable(new int[][] { {1, 0}, {1, 0} }, null, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class, timeout = 10000)
+    public void TestTableWithoutCancellationIsRejected()
+    {
+        // the powers of 1 never reach the identity.
+        Group.FromCayleyTable(new int[][] { {0, 1}, {1, 1} }, null, false);
+    }
+
+    private static void assertGroupsHaveTheSameFixOrders(String title, Group expected, Group actual)
+    {
+        FixOrderSet expectedFixOrders = FixOrderEnumerator.GenerateAllFixOrders(expected);
+        FixOrderSet actualFixOrders = FixOrderEnumerator.GenerateAllFixOrders(actual);
+        assertEquals(title + "-relations", RelationsOf(expectedFixOrders), RelationsOf(actualFixOrders));
+        assertEquals(title + "-partitions",
+                PartsOf(expectedFixOrders, Generate.AutomorphismHandler.PartitionBy(expectedFixOrders.FixOrders,
+                        expected.ElementClassPermutations, expected.NumElementClasses)),
+                PartsOf(actualFixOrders, Generate.AutomorphismHandler.PartitionBy(actualFixOrders.FixOrders,
+                        actual.ElementClassPermutations, actual.NumElementClasses)));
+    }
+
+    // the parts as sets of relations, since the two sets need not hold their fix-orders in the same order.
+    //  The first part lists the singletons.
+    private static HashSet<HashSet<BitSet>> PartsOf(FixOrderSet fixOrders, LinkedList<ArrayList<Integer>> partition)
+    {
+        HashSet<HashSet<BitSet>> parts = new HashSet<HashSet<BitSet>>();
+        boolean isSingletons = true;
+        for (ArrayList<Integer> part : partition)
+        {
+            if (isSingletons)
+            {
+                for (Integer i : part)
+                {
+                    HashSet<BitSet> singleton = new HashSet<BitSet>();
+                    singleton.add(fixOrders.FixOrders.get(i).Relation);
+                    parts.add(singleton);
+                }
+                isSingletons = false;
+                continue;
+            }
+
+            HashSet<BitSet> relations = new HashSet<BitSet>();
+            for (Integer i : part) relations.add(fixOrders.FixOrders.get(i).Relation);
+            parts.add(relations);
+        }
+        return parts;
+    }
+
+    private static HashSet<BitSet> RelationsOf(FixOrderSet fixOrders)
+    {
+        HashSet<BitSet> relations = new HashSet<BitSet>();
+        for (FixOrder fixOrder : fixOrders.FixOrders) relations.add(fixOrder.Relation);
+        return relations;
+    }
+
+    // the product xy of permutations is x followed by y, as in GAP.
+    private static int[][] PermutationTable(int[][] images)
+    {
+        int[][] table = new int[images.length][images.length];
+        for (int x=0;x<images.length;x++)
+        {
+            for (int y=0;y<images.length;y++)
+            {
+                int[] product = new int[images[x].length];
+                for (int p=0;p<product.length;p++) product[p] = images[y][images[x][p] - 1];
+                for (int z=0;z<images.length;z++)
+                    if (java.util.Arrays.equals(images[z], product)) table[x][y] = z;
+            }
+        }
+        return table;
+    }
+
+    static int[][] ElementaryAbelianTable(int rank)
+    {
+        int[][] table = new int[1 << rank][1 << rank];
+        for (int x=0;x<table.length;x++)
+            for (int y=0;y<table.length;y++)
+                table[x][y] = x ^ y;
+        return table;
+    }
+
+    // element r^i s^j is at index i + n*j.
+    static int[][] DihedralTable(int n)
+    {
+        int[][] table = new int[2 * n][2 * n];
+        for (int x=0;x<2*n;x++)
+        {
+            for (int y=0;y<2*n;y++)
+            {
+                int i1 = x % n, j1 = x / n, i2 = y % n, j2 = y / n;
+                // s r^i = r^-i s
+                int i = (j1 == 0) ? (i1 + i2) % n : (i1 - i2 + n) % n;
+                table[x][y] = i + n * ((j1 + j2) % 2);
+            }
+        }
+        return table;
+    }
+}
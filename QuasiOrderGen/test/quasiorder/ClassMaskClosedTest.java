@@ -0,0 +1,48 @@
+package quasiorder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClassMaskClosedTest extends QuasiOrderGenFixture
+{
+    private Group s3;
+
+    @Before
+    public void Setup() throws Exception
+    {
+        s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+    }
+
+    @Test
+    public void ClassTablesOfS3()
+    {
+        // classes: 0 = trivial, 1 = order 2 (x3), 2 = order 3, 3 = whole group.
+        assertEquals("intersection-(2,2)", 0x3L, s3.ClassIntersections[1][1]);   // itself, or {()} for distinct subgroups
+        assertEquals("intersection-(2,3)", 0x1L, s3.ClassIntersections[1][2]);
+        assertEquals("intersection-(2,G)", 0x2L, s3.ClassIntersections[1][3]);
+        assertEquals("union-(2,2)", 0x2L, s3.ClassUnions[1][1]);                 // only a subgroup with itself
+        assertEquals("union-(2,3)", 0x0L, s3.ClassUnions[1][2]);
+        assertEquals("union-(1,3)", 0x4L, s3.ClassUnions[0][2]);
+    }
+
+    @Test
+    public void ClassMaskClosureMatchesSubgroupClosureForAllFamiliesOfS3()
+    {
+        for (long ccMask=1;ccMask<(1L << s3.NumConjugacyClasses);ccMask++)
+        {
+            BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(s3.NumSubgroups, s3.NumConjugacyClasses, ccMask, s3.ConjugacyClasses);
+            List<Integer> family = GroupUtil.BitSetToList(familyMask);
+
+            assertEquals("intersection-" + ccMask, GroupUtil.isIntersectionClosed(s3.SubgroupIntersections, family, familyMask),
+                    GroupUtil.isClassMaskClosed(s3.ClassIntersections, ccMask));
+            assertEquals("union-" + ccMask, GroupUtil.isUnionClosed(s3.SubgroupUnions, family, familyMask),
+                    GroupUtil.isClassMaskClosed(s3.ClassUnions, ccMask));
+        }
+    }
+}
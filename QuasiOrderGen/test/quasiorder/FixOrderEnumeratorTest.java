@@ -0,0 +1,297 @@
+package quasiorder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FixOrderEnumeratorTest extends QuasiOrderGenFixture
+{
+    private Group s3;
+
+    @Before
+    public void Setup() throws Exception
+    {
+        s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+    }
+
+    @Test
+    public void ParallelEnumerationOfS3MatchesSequential()
+    {
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(s3);
+
+        // a chunk size of 1 forces every ccMask into its own task.
+        for (int chunkSize=1;chunkSize<=4;chunkSize*=2)
+            assertFixOrderSetsAreEqual("chunk-" + chunkSize, expected,
+                    FixOrderEnumerator.GenerateAllFixOrdersInParallel(s3, FixOrderEnumerator.BruteForceEngine, 4, chunkSize));
+    }
+
+    @Test
+    public void ClosureEngineOnS3FindsTheSameFixOrdersAsBruteForce()
+    {
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(s3, FixOrderEnumerator.BruteForceEngine);
+        assertFixOrderSetsAreEqual("sequential", expected,
+                FixOrderEnumerator.GenerateAllFixOrders(s3, FixOrderEnumerator.ClosureEngine));
+
+        // each chunk must find its first closed family without starting from one.
+        for (int chunkSize=1;chunkSize<=4;chunkSize*=2)
+            assertFixOrderSetsAreEqual("chunk-" + chunkSize, expected,
+                    FixOrderEnumerator.GenerateAllFixOrdersInParallel(s3, FixOrderEnumerator.ClosureEngine, 4, chunkSize));
+    }
+
+    @Test
+    public void WideClosureEngineOnS3FindsTheSameFixOrdersAsBruteForce()
+    {
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(s3, FixOrderEnumerator.BruteForceEngine);
+        assertFixOrderSetsAreEqual("sequential", expected,
+                FixOrderEnumerator.GenerateAllFixOrders(s3, FixOrderEnumerator.WideClosureEngine));
+
+        for (int chunkSize=1;chunkSize<=4;chunkSize*=2)
+            assertFixOrderSetsAreEqual("chunk-" + chunkSize, expected,
+                    FixOrderEnumerator.GenerateAllFixOrdersInParallel(s3, FixOrderEnumerator.WideClosureEngine, 4, chunkSize));
+    }
+
+    @Test
+    public void WideClosureEngineOnC2To4MatchesBruteForce()
+    {
+        // C2^4 has 67 subgroups, each a class of its own, too many for a narrow ccMask. Its 2^66 families
+        //  cannot all be visited, so only ranges of cursors at either end are compared.
+        Group c2c2c2c2 = Group.FromCayleyTable(CayleyGroupTest.ElementaryAbelianTable(4), null, false);
+        assertTrue("wide", c2c2c2c2.HasWideClassMasks());
+
+        long maxIter = FixOrderEnumerator.MaxIter(c2c2c2c2);
+        int numLowClasses = c2c2c2c2.NumConjugacyClasses - 1 - 62;
+        for (long start : new long[] { 0, maxIter - 256 })
+        {
+            FixOrderSet expected = new FixOrderSet(c2c2c2c2.ClassMaskWords, true);
+            for (long s=start;s<start+256;s++)
+            {
+                // the classes below the cursor, in increasing order of ccMask.
+                for (long low=0;low<(1L << numLowClasses);low++)
+                {
+                    long[] ccMask = FixOrderEnumerator.WideMaskAt(c2c2c2c2, s);
+                    ccMask[0] |= low;
+                    if (FixOrderEnumerator.isClosed(c2c2c2c2, ccMask))
+                        FixOrderEnumerator.AddFixOrderOf(c2c2c2c2, expected, ccMask);
+                }
+            }
+
+            FixOrderSet actual = new FixOrderSet(c2c2c2c2.ClassMaskWords, true);
+            FixOrderEnumerator.WideClosureEngine.EnumerateRange(c2c2c2c2, actual, maxIter, start, start + 256);
+            assertTrue("closed-" + start, expected.InvestigatedCount() > 0);
+            assertFixOrderSetsAreEqual("range-" + start, expected, actual);
+        }
+    }
+
+    @Test
+    public void WideNextClosedMaskOfS3MatchesNarrow()
+    {
+        for (long ccMask=0x8L;ccMask<0x10L;ccMask++)
+        {
+            long[] wide = FixOrderEnumerator.WideMaskAt(s3, ccMask ^ 0x8L);
+            assertEquals("cursor-" + ccMask, ccMask ^ 0x8L, FixOrderEnumerator.WideCursorOf(s3, wide));
+
+            long next = FixOrderEnumerator.NextClosedMask(s3, ccMask);
+            long[] wideNext = FixOrderEnumerator.NextClosedMask(s3, wide);
+            assertEquals("next-" + ccMask, next, wideNext == null ? -1 : wideNext[0]);
+        }
+    }
+
+    @Test
+    public void CounterSinkOnS3CountsTheSameFixOrdersAsTheSet()
+    {
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(s3);
+        int numFaithful = 0;
+        int numNormal = 0;
+        for (FixOrder fixOrder : expected.FixOrders)
+        {
+            if (fixOrder.isFaithful) numFaithful++;
+            if (fixOrder.isNormal) numNormal++;
+        }
+
+        FixOrderCounter sequential = new FixOrderCounter();
+        FixOrderEnumerator.EnumerateFixOrders(s3, FixOrderEnumerator.BruteForceEngine, sequential);
+        FixOrderCounter parallel = new FixOrderCounter();
+        FixOrderEnumerator.EnumerateFixOrdersInParallel(s3, FixOrderEnumerator.ClosureEngine, 4, parallel, 1);
+
+        for (FixOrderCounter counter : new FixOrderCounter[]{sequential, parallel})
+        {
+            assertEquals("investigated", expected.InvestigatedCount(), counter.InvestigatedCount());
+            assertEquals("unique", expected.FixOrders.size(), counter.UniqueCount());
+            assertEquals("faithful", numFaithful, counter.FaithfulCount());
+            assertEquals("normal", numNormal, counter.NormalCount());
+        }
+    }
+
+    @Test
+    public void CheckpointedEnumerationOfS3ResumesFromAnyPoint() throws Exception
+    {
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(s3);
+        long maxIter = FixOrderEnumerator.MaxIter(s3);
+        File checkpointFile = File.createTempFile("quasiorder-s3", ".ckpt");
+        try
+        {
+            // ranges of one cursor each, so there is a block for every ccMask.
+            assertFixOrderSetsAreEqual("checkpointed", expected, FixOrderEnumerator.GenerateRangeWithCheckpoints(
+                    s3, FixOrderEnumerator.BruteForceEngine, 1, checkpointFile, false, 0, 0, maxIter, 1));
+            assertFixOrderSetsAreEqual("complete", expected, FixOrderEnumerator.GenerateRangeWithCheckpoints(
+                    s3, FixOrderEnumerator.BruteForceEngine, 1, checkpointFile, true, 0, 0, maxIter, 1));
+
+            // tear the last block, as if the run was killed while writing it.
+            RandomAccessFile raf = new RandomAccessFile(checkpointFile, "rw");
+            raf.setLength(raf.length() - 3);
+            raf.close();
+            assertFixOrderSetsAreEqual("torn", expected, FixOrderEnumerator.GenerateRangeWithCheckpoints(
+                    s3, FixOrderEnumerator.ClosureEngine, 2, checkpointFile, true, 0, 0, maxIter, 1));
+
+            // a torn first block, whose length claims far more than the file holds.
+            FixOrderCheckpoint.Create(checkpointFile, s3, maxIter, 0, maxIter).Close();
+            DataOutputStream garbage = new DataOutputStream(new FileOutputStream(checkpointFile, true));
+            garbage.writeInt(0x426C6B31); // the block magic
+            garbage.writeInt(Integer.MAX_VALUE - 8);
+            garbage.writeLong(0L);
+            garbage.close();
+            assertFixOrderSetsAreEqual("garbage length", expected, FixOrderEnumerator.GenerateRangeWithCheckpoints(
+                    s3, FixOrderEnumerator.ClosureEngine, 1, checkpointFile, true, 0, 0, maxIter, 1));
+        }
+        finally
+        {
+            checkpointFile.delete();
+        }
+    }
+
+    @Test
+    public void MergedShardsOfS3MatchSequential() throws Exception
+    {
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(s3);
+
+        // more shards than cursors leaves some shards empty.
+        for (int numShards=1;numShards<=10;numShards+=3)
+        {
+            File[] shardFiles = new File[numShards];
+            try
+            {
+                for (int i=0;i<numShards;i++)
+                {
+                    shardFiles[i] = File.createTempFile("quasiorder-s3-shard", ".ckpt");
+                    FixOrderEnumerator.GenerateShardWithCheckpoints(s3, FixOrderEnumerator.ClosureEngine, 1,
+                            shardFiles[i], false, 0, i + 1, numShards);
+                }
+                assertFixOrderSetsAreEqual("shards-" + numShards, expected, FixOrderEnumerator.MergeShards(s3, shardFiles));
+            }
+            finally
+            {
+                for (File shardFile : shardFiles)
+                    if (shardFile != null) shardFile.delete();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void MergingShardsOutOfOrderFails() throws Exception
+    {
+        File[] shardFiles = new File[2];
+        try
+        {
+            for (int i=0;i<2;i++)
+            {
+                shardFiles[i] = File.createTempFile("quasiorder-s3-shard", ".ckpt");
+                FixOrderEnumerator.GenerateShardWithCheckpoints(s3, FixOrderEnumerator.BruteForceEngine, 1,
+                        shardFiles[i], false, 0, i + 1, 2);
+            }
+            FixOrderEnumerator.MergeShards(s3, new File[] { shardFiles[1], shardFiles[0] });
+        }
+        finally
+        {
+            for (File shardFile : shardFiles)
+                if (shardFile != null) shardFile.delete();
+        }
+    }
+
+    @Test
+    public void EnumerationOfV4ByOrbitsMatchesSequential() throws Exception
+    {
+        Group v4 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(IsAutomorphismEquivalentTest.V4_JSON)), false);
+        assertTrue("can", FixOrderEnumerator.CanEnumerateByOrbits(v4));
+
+        // a closed family is fixed up to automorphism by whether it holds the trivial subgroup, and how many of
+        //  <a>, <b> and <c> it holds. Two or more of them always meet in the trivial subgroup.
+        FixOrderSet representatives = FixOrderEnumerator.GenerateOrbitRepresentatives(v4, 1);
+        assertEquals("representatives", 6, representatives.InvestigatedCount());
+
+        FixOrderSet expected = FixOrderEnumerator.GenerateAllFixOrders(v4);
+        assertFixOrderSetsAreEqual("sequential", expected, FixOrderEnumerator.GenerateAllFixOrdersByOrbits(v4, 1));
+        assertFixOrderSetsAreEqual("parallel", expected, FixOrderEnumerator.GenerateAllFixOrdersByOrbits(v4, 4));
+    }
+
+    @Test
+    public void CountingByOrbitsMatchesSequential() throws Exception
+    {
+        Group v4 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(IsAutomorphismEquivalentTest.V4_JSON)), false);
+        // the outer automorphism of D8 swaps classes of subgroups which are not normal.
+        Group d8 = Group.FromCayleyTable(CayleyGroupTest.DihedralTable(4), null, true);
+
+        for (Group group : new Group[] { v4, d8, s3 })
+        {
+            FixOrderCounter expected = new FixOrderCounter();
+            FixOrderEnumerator.EnumerateFixOrders(group, FixOrderEnumerator.ClosureEngine, expected);
+
+            for (int parallelism=1;parallelism<=4;parallelism*=4)
+            {
+                String title = group.NumConjugacyClasses + "-" + parallelism;
+                FixOrderCounter actual = new FixOrderCounter();
+                FixOrderEnumerator.CountFixOrdersByOrbits(group, parallelism, actual);
+
+                assertEquals(title + "-investigated", expected.InvestigatedCount(), actual.InvestigatedCount());
+                assertEquals(title + "-unique", expected.UniqueCount(), actual.UniqueCount());
+                assertEquals(title + "-faithful", expected.FaithfulCount(), actual.FaithfulCount());
+                assertEquals(title + "-normal", expected.NormalCount(), actual.NormalCount());
+                assertEquals(title + "-faithfulNormal", expected.FaithfulNormalCount(), actual.FaithfulNormalCount());
+            }
+        }
+        assertTrue("d8", FixOrderEnumerator.CanEnumerateByOrbits(d8));
+    }
+
+    @Test
+    public void NextClosedMaskOfS3VisitsOnlyClosedFamiliesInOrder()
+    {
+        long ccMask = FixOrderEnumerator.CloseClassMask(s3, 0);
+        assertEquals("first", 0x8L, ccMask); // the whole group on its own is closed.
+
+        long expected = ccMask;
+        while (ccMask != -1)
+        {
+            while (!FixOrderEnumerator.isClosed(s3, expected)) expected++;
+            assertEquals("next", expected++, ccMask);
+            ccMask = FixOrderEnumerator.NextClosedMask(s3, ccMask);
+        }
+        assertEquals("last", 0x10L, expected);
+    }
+
+    static void assertFixOrderSetsAreEqual(String title, FixOrderSet expected, FixOrderSet actual)
+    {
+        assertEquals(title + "-investigated", expected.InvestigatedCount(), actual.InvestigatedCount());
+        assertEquals(title + "-numFixOrders", expected.FixOrders.size(), actual.FixOrders.size());
+        for (int i=0;i<expected.FixOrders.size();i++)
+        {
+            FixOrder e = expected.FixOrders.get(i);
+            FixOrder a = actual.FixOrders.get(i);
+            assertEquals(title + "-relation-" + i, e.Relation, a.Relation);
+
+            ArrayList<long[]> expectedFamilies = expected.FamiliesOf(i);
+            ArrayList<long[]> actualFamilies = actual.FamiliesOf(i);
+            assertEquals(title + "-numFamilies-" + i, expectedFamilies.size(), actualFamilies.size());
+            for (int f=0;f<expectedFamilies.size();f++)
+                assertArrayEquals(title + "-family-" + i + "-" + f, expectedFamilies.get(f), actualFamilies.get(f));
+        }
+    }
+}
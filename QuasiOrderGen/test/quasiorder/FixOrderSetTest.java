@@ -3,9 +3,12 @@ package quasiorder;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.BitSet;
 
+import static org.junit.Assert.assertEquals;
+
 public class FixOrderSetTest extends QuasiOrderGenFixture
 {
     private static final int NumElem = 4;
@@ -84,6 +87,58 @@ public class FixOrderSetTest extends QuasiOrderGenFixture
         assertRelationEqual(inputGroup, "110", "1000"+"1111"+"1010"+"1111");
     }
 
+    @Test
+    public void BuildRelationMatchesPairwiseForAllFamiliesOfS3() throws Exception
+    {
+        Group s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+
+        // every family, closed or not, including the empty one.
+        for (long family=0;family<(1L << s3.NumSubgroups);family++)
+        {
+            BitSet familyMask = GroupUtil.MaskToBitSet(family, s3.NumSubgroups);
+            assertEquals("family-" + family, FixOrderSet.BuildRelationPairwise(s3, familyMask),
+                    FixOrderSet.BuildRelation(s3, familyMask));
+        }
+    }
+
+    @Test
+    public void BuildRelationMatchesPairwiseAcrossWordsForD16()
+    {
+        Group d16 = Group.FromCayleyTable(CayleyGroupTest.DihedralTable(8), null, true);
+
+        // 1, r^4, r^2 with r^6, the other rotations, and each reflection: rows of 12 bits, which straddle words.
+        assertEquals("numElementClasses", 12, d16.NumElementClasses);
+
+        for (long ccMask=0;ccMask<(1L << d16.NumConjugacyClasses);ccMask++)
+        {
+            BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(d16.NumSubgroups, d16.NumConjugacyClasses, ccMask,
+                    d16.ConjugacyClasses);
+            assertEquals("family-" + ccMask, FixOrderSet.BuildRelationPairwise(d16, familyMask),
+                    FixOrderSet.BuildRelation(d16, familyMask));
+        }
+    }
+
+    @Test
+    public void FixOrdersOfS3AreHeldOnElementClasses() throws Exception
+    {
+        Group s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+
+        // the two 3-cycles are in exactly the same subgroups.
+        assertEquals("numElementClasses", 5, s3.NumElementClasses);
+
+        FixOrderSet fixOrders = FixOrderEnumerator.GenerateAllFixOrders(s3);
+        for (int i=0;i<fixOrders.FixOrders.size();i++)
+        {
+            FixOrder fixOrder = fixOrders.FixOrders.get(i);
+            BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(s3.NumSubgroups, fixOrders.FamiliesOf(i).get(0),
+                    s3.ConjugacyClasses);
+            BitSet relation = FixOrderSet.BuildRelationPairwise(s3, familyMask);
+            assertEquals("relation-" + familyMask, relation, FixOrderSet.ExpandRelation(s3, fixOrder.Relation));
+            assertEquals("cardinality-" + familyMask, relation.cardinality(), fixOrder.Cardinality);
+            assertEquals("faithful-" + familyMask, FixOrder.IsFaithful(relation, s3.NumElements), fixOrder.isFaithful);
+        }
+    }
+
     @Test
     public void AddingDuplicatesChangesFamilyListButNotKeySet()
     {
@@ -91,36 +146,112 @@ public class FixOrderSetTest extends QuasiOrderGenFixture
         BitSet firstB = new BitSet(NumElem*NumElem);
         firstB.set(NumElem, NumElem*(NumElem-1)); // set some bits
         FixOrder first = ToFixOrder(firstB);
-        BitSet familyFirst = StringToBitSet("00110");
+        long familyFirst = 0x0CL;
         relations.Add(first, familyFirst);
 
         // test only the first relation exists
-        assertListEqual(relations.FixOrderToFamilyMap.keySet(), first);
-        assertListEqual(relations.FixOrderToFamilyMap.get(first), familyFirst);
+        assertListEqual(relations.FixOrders, first);
+        assertFamiliesEqual(relations, first, familyFirst);
 
         // add the same entry again, with a different family
         BitSet secondB = (BitSet)first.Relation.clone();
         FixOrder second = ToFixOrder(secondB);
-        BitSet familySecond = StringToBitSet("10100");
+        long familySecond = 0x05L;
         relations.Add(second, familySecond);
 
         // test that the first relation exists, but with two families:
-        assertListEqual(relations.FixOrderToFamilyMap.keySet(), first);
-        assertListEqual(relations.FixOrderToFamilyMap.keySet(), second);
-        assertListEqual(relations.FixOrderToFamilyMap.get(first), familyFirst, familySecond);
-        assertListEqual(relations.FixOrderToFamilyMap.get(second), familyFirst, familySecond);
+        assertListEqual(relations.FixOrders, first);
+        assertListEqual(relations.FixOrders, second);
+        assertFamiliesEqual(relations, first, familyFirst, familySecond);
+        assertFamiliesEqual(relations, second, familyFirst, familySecond);
 
         // add a different entry
         BitSet thirdB = new BitSet(NumElem*NumElem);
         thirdB.set(0);
         FixOrder third = ToFixOrder(thirdB);
-        BitSet familyThird = StringToBitSet("00011");
+        long familyThird = 0x18L;
         relations.Add(third, familyThird);
 
         // test that there are now two relations with appropriate families:
-        assertListEqual(relations.FixOrderToFamilyMap.keySet(), first, third);
-        assertListEqual(relations.FixOrderToFamilyMap.get(first), familyFirst, familySecond);
-        assertListEqual(relations.FixOrderToFamilyMap.get(second), familyFirst, familySecond);
-        assertListEqual(relations.FixOrderToFamilyMap.get(third), familyThird);
+        assertListEqual(relations.FixOrders, first, third);
+        assertFamiliesEqual(relations, first, familyFirst, familySecond);
+        assertFamiliesEqual(relations, second, familyFirst, familySecond);
+        assertFamiliesEqual(relations, third, familyThird);
+        assertEquals("investigated", 3, relations.InvestigatedCount());
+    }
+
+    @Test
+    public void ManyRelationsAreFoundAfterGrowingAndSorting()
+    {
+        // more relations than the initial table, with every relation added twice.
+        int numRelations = 1000;
+        for (int k=0;k<2;k++)
+        {
+            for (int i=0;i<numRelations;i++)
+            {
+                BitSet relation = new BitSet();
+                relation.set(i);
+                relation.set(i + 1, i + 1 + (i % 7));
+                relations.Add(ToFixOrder(relation), (long)(i + k * numRelations));
+            }
+        }
+        assertEquals("numFixOrders", numRelations, relations.FixOrders.size());
+
+        relations.SortRelations();
+        for (int i=0;i<numRelations;i++)
+        {
+            FixOrder fixOrder = relations.FixOrders.get(i);
+            assertEquals("index-" + i, i, relations.IndexOf(fixOrder));
+
+            int original = fixOrder.Relation.nextSetBit(0);
+            assertFamiliesEqual(relations, fixOrder, original, original + numRelations);
+        }
+        assertEquals("missing", -1, relations.IndexOf(ToFixOrder(new BitSet())));
+    }
+
+    @Test
+    public void OrderOfCanonicalFamiliesMatchesOrderOfRelations() throws Exception
+    {
+        Group s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+
+        // without logged families, the canonical families are found from the relations alone.
+        for (boolean logFamilies : new boolean[] { true, false })
+        {
+            FixOrderSet fixOrders = FixOrderEnumerator.GenerateAllFixOrders(s3, FixOrderEnumerator.ClosureEngine, logFamilies);
+            fixOrders.SortRelations();
+
+            long[][] families = fixOrders.CanonicalFamilies(s3);
+            for (int i=0;i<families.length;i++)
+            {
+                BitSet familyMask = GroupUtil.ToSubgroupFamilyBitSet(s3.NumSubgroups, families[i], s3.ConjugacyClasses);
+                assertEquals(logFamilies + "-relation-" + i, fixOrders.FixOrders.get(i).Relation,
+                        FixOrderSet.BuildClassRelation(s3, familyMask));
+                for (long[] family : fixOrders.FamiliesOf(i))
+                    assertEquals(logFamilies + "-family-" + i, family[0], family[0] & families[i][0]);
+            }
+
+            assertEquals(logFamilies + "-order", fixOrders.GenerateOverallQuasiOrder(1),
+                    fixOrders.GenerateOverallQuasiOrder(s3, 1));
+        }
+    }
+
+    @Test
+    public void UnloggedFamiliesAreOnlyCounted()
+    {
+        FixOrderSet unlogged = new FixOrderSet(1, false);
+        unlogged.Add(ToFixOrder(StringToBitSet("1011")), 0x1L);
+        unlogged.Add(ToFixOrder(StringToBitSet("1011")), 0x3L);
+
+        assertEquals("investigated", 2, unlogged.InvestigatedCount());
+        assertEquals("numFixOrders", 1, unlogged.FixOrders.size());
+        assertEquals("families", 0, unlogged.FamiliesOf(0).size());
+    }
+
+    static void assertFamiliesEqual(FixOrderSet relations, FixOrder fixOrder, long... expected)
+    {
+        ArrayList<long[]> actual = relations.FamiliesOf(relations.IndexOf(fixOrder));
+        assertEquals("numFamilies", expected.length, actual.size());
+        for (int i=0;i<expected.length;i++)
+            assertEquals("family-" + i, expected[i], actual.get(i)[0]);
     }
 }
@@ -0,0 +1,160 @@
+package quasiorder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupImageTest extends QuasiOrderGenFixture
+{
+    private File imageFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        imageFile = File.createTempFile("quasiorder-s3", ".grp");
+    }
+
+    @After
+    public void tearDown()
+    {
+        imageFile.delete();
+    }
+
+    @Test
+    public void TestImageOfS3LoadsTheSameGroup() throws Exception
+    {
+        Group expected = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+        GroupImage.Write(imageFile, expected, true);
+        Group actual = GroupImage.Read(imageFile, true);
+
+        assertArrayEquals("element names", expected.ElementNames, actual.ElementNames);
+        assertArrayEquals("subgroup names", expected.SubgroupNames, actual.SubgroupNames);
+        assertArrayEquals("element masks", expected.ElementMasks, actual.ElementMasks);
+        assertArrayEquals("subgroup masks", expected.SubgroupMasks, actual.SubgroupMasks);
+        assertArrayEquals("conjugacy classes", expected.ConjugacyClasses, actual.ConjugacyClasses);
+        assertEquals("normal", expected.IsSubgroupNormal, actual.IsSubgroupNormal);
+        assertEquals("automorphisms", expected.Automorphisms.length, actual.Automorphisms.length);
+        for (int p=0;p<expected.Automorphisms.length;p++)
+            assertArrayEquals("automorphism-" + p, expected.Automorphisms[p], actual.Automorphisms[p]);
+        assertArrayEquals("class intersections", expected.WideClassIntersections, actual.WideClassIntersections);
+        assertArrayEquals("class unions", expected.WideClassUnions, actual.WideClassUnions);
+
+        for (int i=0;i<expected.NumSubgroups;i++)
+        {
+            for (int j=0;j<expected.NumSubgroups;j++)
+            {
+                assertEquals("union-" + i + "-" + j, expected.SubgroupUnions.Get(i, j), actual.SubgroupUnions.Get(i, j));
+                assertEquals("intersection-" + i + "-" + j, expected.SubgroupIntersections.Get(i, j), actual.SubgroupIntersections.Get(i, j));
+            }
+        }
+
+        FixOrderEnumeratorTest.assertFixOrderSetsAreEqual("fix-orders", FixOrderEnumerator.GenerateAllFixOrders(expected),
+                FixOrderEnumerator.GenerateAllFixOrders(actual));
+    }
+
+    @Test
+    public void TestImageOfD64KeepsTheNormalSubgroups() throws Exception
+    {
+        // 69 subgroups in 17 classes, so the mask of normal subgroups needs more words than a ccMask.
+        Group expected = Group.FromCayleyTable(CayleyGroupTest.DihedralTable(32), null, true);
+        assertTrue("subgroups", expected.NumSubgroups > Long.SIZE);
+        GroupImage.Write(imageFile, expected, true);
+        Group actual = GroupImage.Read(imageFile, true);
+
+        assertEquals("normal", expected.IsSubgroupNormal, actual.IsSubgroupNormal);
+
+        FixOrderSet expectedFixOrders = FixOrderEnumerator.GenerateAllFixOrders(expected, FixOrderEnumerator.ClosureEngine);
+        FixOrderSet actualFixOrders = FixOrderEnumerator.GenerateAllFixOrders(actual, FixOrderEnumerator.ClosureEngine);
+        FixOrderEnumeratorTest.assertFixOrderSetsAreEqual("fix-orders", expectedFixOrders, actualFixOrders);
+        for (int i=0;i<expectedFixOrders.FixOrders.size();i++)
+        {
+            assertEquals("isNormal-" + i, expectedFixOrders.FixOrders.get(i).isNormal, actualFixOrders.FixOrders.get(i).isNormal);
+            assertEquals("isFaithful-" + i, expectedFixOrders.FixOrders.get(i).isFaithful, actualFixOrders.FixOrders.get(i).isFaithful);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestImageSortedOtherwiseIsRejected() throws Exception
+    {
+        GroupImage.Write(imageFile, Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), false), false);
+        GroupImage.Read(imageFile, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestTruncatedImageIsRejected() throws Exception
+    {
+        GroupImage.Write(imageFile, Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true), true);
+        RandomAccessFile raf = new RandomAccessFile(imageFile, "rw");
+        raf.setLength(raf.length() - 2);
+        raf.close();
+        GroupImage.Read(imageFile, true);
+    }
+
+    @Test
+    public void TestImageWithCountsBeyondItsEndIsRejected() throws Exception
+    {
+        Group s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+
+        // the number of elements, and the byte count of the first element name.
+        for (long offset : new long[] { 16, 28 })
+        {
+            GroupImage.Write(imageFile, s3, true);
+            RandomAccessFile raf = new RandomAccessFile(imageFile, "rw");
+            raf.seek(offset);
+            raf.writeInt(Integer.MAX_VALUE - 8);
+            raf.close();
+
+            try
+            {
+                GroupImage.Read(imageFile, true);
+                fail("offset-" + offset);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected, without allocating for the count.
+            }
+        }
+    }
+
+    @Test
+    public void TestImageIsWrittenOnceAndThenLoaded() throws Exception
+    {
+        File inputFile = File.createTempFile("quasiorder-s3", ".in");
+        try
+        {
+            FileWriter writer = new FileWriter(inputFile);
+            writer.write(InputParsingTest.JSON_STRING);
+            writer.close();
+            assertTrue(imageFile.delete());
+
+            Group built = Group.FromFileWithImage(inputFile.getPath(), imageFile, true, false);
+            assertTrue("written", imageFile.exists());
+            imageFile.setLastModified(inputFile.lastModified() + 1000);
+
+            // an unparseable input shows that the image was loaded instead.
+            writer = new FileWriter(inputFile);
+            writer.write("[");
+            writer.close();
+            inputFile.setLastModified(imageFile.lastModified() - 1000);
+
+            Group loaded = Group.FromFileWithImage(inputFile.getPath(), imageFile, true, false);
+            assertArrayEquals("element names", built.ElementNames, loaded.ElementNames);
+            assertArrayEquals("class intersections", built.ClassIntersections, loaded.ClassIntersections);
+            assertArrayEquals("class unions", built.ClassUnions, loaded.ClassUnions);
+        }
+        finally
+        {
+            inputFile.delete();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package quasiorder;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GroupReaderTest extends QuasiOrderGenFixture
+{
+    @Test
+    public void TestStreamedS3MatchesBoundS3() throws Exception
+    {
+        for (boolean sortElem : new boolean[] { false, true })
+            assertGroupsAreEqual("sorted-" + sortElem,
+                    Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), sortElem),
+                    GroupReader.Read(new StringReader(InputParsingTest.JSON_STRING), sortElem, false));
+    }
+
+    @Test
+    public void TestStreamedGeneratorsMatchBoundGenerators() throws Exception
+    {
+        assertGroupsAreEqual("generators",
+                Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(IsAutomorphismEquivalentTest.V4_GENERATORS_JSON)), false),
+                GroupReader.Read(new StringReader(IsAutomorphismEquivalentTest.V4_GENERATORS_JSON), false, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestUnknownElementIsRejected() throws Exception
+    {
+        GroupReader.Read(new StringReader(IsAutomorphismEquivalentTest.V4_JSON.replace("[\"c\", \"b\"]", "[\"c\", \"d\"]")), false, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestMisshapenInputIsRejected() throws Exception
+    {
+        GroupReader.Read(new StringReader("[ [ [ [ \"1\" ] ] ], [ \"1\" ], [ ] ]"), false, false);
+    }
+
+    private static void assertGroupsAreEqual(String title, Group expected, Group actual)
+    {
+        assertArrayEquals(title + "-element names", expected.ElementNames, actual.ElementNames);
+        assertArrayEquals(title + "-subgroup names", expected.SubgroupNames, actual.SubgroupNames);
+        assertArrayEquals(title + "-element masks", expected.ElementMasks, actual.ElementMasks);
+        assertArrayEquals(title + "-subgroup masks", expected.SubgroupMasks, actual.SubgroupMasks);
+        assertArrayEquals(title + "-conjugacy classes", expected.ConjugacyClasses, actual.ConjugacyClasses);
+        assertEquals(title + "-normal", expected.IsSubgroupNormal, actual.IsSubgroupNormal);
+        assertEquals(title + "-automorphisms", expected.Automorphisms.length, actual.Automorphisms.length);
+        for (int p=0;p<expected.Automorphisms.length;p++)
+            assertArrayEquals(title + "-automorphism-" + p, expected.Automorphisms[p], actual.Automorphisms[p]);
+        assertArrayEquals(title + "-class intersections", expected.WideClassIntersections, actual.WideClassIntersections);
+        assertArrayEquals(title + "-class unions", expected.WideClassUnions, actual.WideClassUnions);
+    }
+}
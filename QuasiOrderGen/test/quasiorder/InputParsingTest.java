@@ -21,30 +21,31 @@ public class InputParsingTest extends QuasiOrderGenFixture
             "\t\t[ [ \"()\", \"(1,3,2)\", \"(1,2,3)\" ] ],\n" +
             "\t\t[ [ \"()\", \"(1,3,2)\", \"(1,2,3)\", \"(2,3)\", \"(1,3)\", \"(1,2)\" ] ]\n" +
             "\t], \n" +
+            // the automorphisms: conjugation by (1,2), by (2,3) and by (1,2,3).
             "\t[\n" +
             "\t\t[ " +
-            "       [ \"()\", \"(1,3)\" ], " +
+            "       [ \"()\", \"()\" ], " +
             "       [\"(1,3)\" , \"(2,3)\"], " +
             "       [\"(1,2,3)\", \"(1,3,2)\"], " +
-            "       [\"(2,3)\" , \"()\"], " +
-            "       [\"(1,3,2)\", \"(1,2)\"], " +
-            "       [\"(1,2)\" , \"(1,2,3)\"] " +
+            "       [\"(2,3)\" , \"(1,3)\"], " +
+            "       [\"(1,3,2)\", \"(1,2,3)\"], " +
+            "       [\"(1,2)\" , \"(1,2)\"] " +
             "   ],\n" +
             "\t\t[ " +
-            "       [ \"()\", \"(1,3)\" ], " +
-            "       [\"(1,3)\" , \"()\"], " +
-            "       [\"(1,2,3)\", \"(1,2)\"], " +
-            "       [\"(2,3)\" , \"(1,2,3)\"], " +
-            "       [\"(1,3,2)\", \"(1,3,2)\"], " +
-            "       [\"(1,2)\" , \"(2,3)\"] " +
+            "       [ \"()\", \"()\" ], " +
+            "       [\"(1,3)\" , \"(1,2)\"], " +
+            "       [\"(1,2,3)\", \"(1,3,2)\"], " +
+            "       [\"(2,3)\" , \"(2,3)\"], " +
+            "       [\"(1,3,2)\", \"(1,2,3)\"], " +
+            "       [\"(1,2)\" , \"(1,3)\"] " +
             "   ],\n" +
             "\t\t[ " +
             "       [ \"()\", \"()\" ], " +
-            "       [\"(1,3)\" , \"(1,2,3)\"], " +
-            "       [\"(1,2,3)\", \"(1,3)\"], " +
-            "       [\"(2,3)\" , \"(2,3)\"], " +
-            "       [\"(1,3,2)\", \"(1,2)\"], " +
-            "       [\"(1,2)\" , \"(1,3,2)\"] " +
+            "       [\"(1,3)\" , \"(1,2)\"], " +
+            "       [\"(1,2,3)\", \"(1,2,3)\"], " +
+            "       [\"(2,3)\" , \"(1,3)\"], " +
+            "       [\"(1,3,2)\", \"(1,3,2)\"], " +
+            "       [\"(1,2)\" , \"(2,3)\"] " +
             "   ]\n" +
             "\t], \n" +
             "]";
@@ -84,6 +85,18 @@ public class InputParsingTest extends QuasiOrderGenFixture
                 AssertArraysAreEqual("Subgroup-" + i + "-" + j, CONJUGACY_CLASSES[i][j], actual.ConjugacyClasses[i][j]);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void TestPermutationWhichIsNotAnAutomorphismIsRejected() throws Exception
+    {
+        // (1,2) -> (1,2,3), but (1,2,3) -> (1,3,2) and (1,3,2) -> (1,2): the 3-cycles are not kept together.
+        String json = "[ [ [ [ \"()\", \"(1,3)\", \"(1,2,3)\", \"(2,3)\", \"(1,3,2)\", \"(1,2)\" ] ] ], " +
+                "[ [ [ \"()\" ] ], [ [ \"()\", \"(2,3)\" ], [ \"()\", \"(1,2)\" ], [ \"()\", \"(1,3)\" ] ], " +
+                "[ [ \"()\", \"(1,3,2)\", \"(1,2,3)\" ] ], [ [ \"()\", \"(1,3,2)\", \"(1,2,3)\", \"(2,3)\", \"(1,3)\", \"(1,2)\" ] ] ], " +
+                "[ [ [ \"()\", \"()\" ], [ \"(1,3)\", \"(2,3)\" ], [ \"(1,2,3)\", \"(1,3,2)\" ], [ \"(2,3)\", \"(1,3)\" ], " +
+                "[ \"(1,3,2)\", \"(1,2)\" ], [ \"(1,2)\", \"(1,2,3)\" ] ] ] ]";
+        Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(json)), true);
+    }
+
     @Test
     public void TestS3IsProcessedCorrectlyWhenSorted() throws Exception
     {
@@ -108,14 +121,14 @@ public class InputParsingTest extends QuasiOrderGenFixture
                 },
                 new int[][][]
                 {
-                        toPairs(0, 2, 2, 3, 4, 5, 3, 0, 5, 1, 1, 4), // (0 2 3) (4 5 1)
-                        toPairs(0, 2, 2, 0, 4, 1, 3, 4, 5, 5, 1, 3), // (0 2) (1 3 4) (5)
-                        toPairs(0, 0, 2, 4, 4, 2, 3, 3, 5, 1, 1, 5) // (0) (1 5) (3) (2 4)
+                        toPairs(0, 0, 2, 3, 4, 5, 3, 2, 5, 4, 1, 1), // (0) (1) (2 3) (4 5)
+                        toPairs(0, 0, 2, 1, 4, 5, 3, 3, 5, 4, 1, 2), // (0) (1 2) (3) (4 5)
+                        toPairs(0, 0, 2, 1, 4, 4, 3, 2, 5, 5, 1, 3) // (0) (1 3 2) (4) (5)
                 },
                 toPermutationArr(
-                        ToPermutation(4, 5, 1, 4, 2, 3, 0, 2),
-                        ToPermutation(3, 4, 1, 3, 0, 2),
-                        ToPermutation(2, 4, 1, 5)
+                        ToPermutation(4, 5, 2, 3),
+                        ToPermutation(4, 5, 1, 2),
+                        ToPermutation(3, 2, 1, 3)
                 )
         );
     }
@@ -144,14 +157,14 @@ public class InputParsingTest extends QuasiOrderGenFixture
                 },
                 new int[][][]
                 {
-                    toPairs(0, 1, 1, 3, 2, 4, 3, 0, 4, 5, 5, 2),    // (0 1 3) (2 4 5)
-                    toPairs(0, 1, 1, 0, 2, 5, 3, 2, 4, 4, 5, 3),    // (0 1) (2 5 3) (4)
-                    toPairs(0, 0, 1, 2, 2, 1, 3, 3, 4, 5, 5, 4)    // (0) (1 2) (3) (4 5)
+                    toPairs(0, 0, 1, 3, 2, 4, 3, 1, 4, 2, 5, 5),    // (0) (1 3) (2 4) (5)
+                    toPairs(0, 0, 1, 5, 2, 4, 3, 3, 4, 2, 5, 1),    // (0) (1 5) (2 4) (3)
+                    toPairs(0, 0, 1, 5, 2, 2, 3, 1, 4, 4, 5, 3)    // (0) (1 5 3) (2) (4)
                 },
                 toPermutationArr(
-                    ToPermutation(4, 5, 2, 4, 1, 3, 0, 1),
-                    ToPermutation(3, 5, 2, 5, 0, 1),
-                    ToPermutation(4, 5, 1, 2)
+                    ToPermutation(2, 4, 1, 3),
+                    ToPermutation(2, 4, 1, 5),
+                    ToPermutation(5, 3, 1, 5)
                 )
         );
     }
@@ -205,12 +218,10 @@ public class InputParsingTest extends QuasiOrderGenFixture
 
         for (int i=0;i<NumSubgroups;i++)
         {
-            int[] actualSubgroupIntersection = actual.SubgroupIntersections[i];
-            int[] actualSubgroupUnion=  actual.SubgroupUnions[i];
-            for (int j=0;j<actualSubgroupIntersection.length;j++)
+            for (int j=0;j<NumSubgroups;j++)
             {
-                assertEquals("SubgroupUnions-"+i+"-"+j, subgroupUnions[i][j], actualSubgroupUnion[j]);
-                assertEquals("SubgroupIntersections-"+i+"-"+j, subgroupIntersections[i][j], actualSubgroupIntersection[j]);
+                assertEquals("SubgroupUnions-"+i+"-"+j, subgroupUnions[i][j], actual.SubgroupUnions.Get(i, j));
+                assertEquals("SubgroupIntersections-"+i+"-"+j, subgroupIntersections[i][j], actual.SubgroupIntersections.Get(i, j));
             }
         }
 
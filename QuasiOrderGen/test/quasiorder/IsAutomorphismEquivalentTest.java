@@ -4,9 +4,11 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedList;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -159,4 +161,89 @@ public class IsAutomorphismEquivalentTest extends QuasiOrderGenFixture
             }
         }
     }
+
+    @Test
+    public void TestThatCanonicalImagesAreSharedByExactlyTheEquivalentRelations()
+    {
+        BitSet[] all = new BitSet[G1SIZE + G2SIZE];
+        System.arraycopy(G1, 0, all, 0, G1SIZE);
+        System.arraycopy(G2, 0, all, G1SIZE, G2SIZE);
+
+        List<ArrayList<Permutation>> groups = new ArrayList<ArrayList<Permutation>>();
+        groups.add(permutations);
+        groups.add(evenPermutations);
+
+        for (ArrayList<Permutation> ps : groups)
+            for(int i=0;i<all.length;i++)
+                for(int j=i+1;j<all.length;j++)
+                    assertEquals(String.format("[%d][%d]", i, j),
+                            Generate.AutomorphismHandler.isAutomorphismEquivalent(all[i], all[j], ps, numElem),
+                            Generate.AutomorphismHandler.CanonicalImage(all[i], ps, numElem).equals(
+                                    Generate.AutomorphismHandler.CanonicalImage(all[j], ps, numElem)));
+    }
+
+    // C2 x C2, with its 5 outer automorphisms: all the non-trivial permutations of a, b and c.
+    public static final String V4_JSON = "[ [ [ [ \"1\", \"a\", \"b\", \"c\" ] ] ], " +
+            "[ [ [ \"1\" ] ], [ [ \"1\", \"a\" ] ], [ [ \"1\", \"b\" ] ], [ [ \"1\", \"c\" ] ], [ [ \"1\", \"a\", \"b\", \"c\" ] ] ], " +
+            "[ " + Automorphism("b", "a", "c") + ", " + Automorphism("c", "b", "a") + ", " + Automorphism("a", "c", "b") + ", " +
+            Automorphism("b", "c", "a") + ", " + Automorphism("c", "a", "b") + " ] ]";
+
+    // the automorphism mapping a, b and c onto the given elements.
+    private static String Automorphism(String a, String b, String c)
+    {
+        return String.format("[ [\"1\", \"1\"], [\"a\", \"%s\"], [\"b\", \"%s\"], [\"c\", \"%s\"] ]", a, b, c);
+    }
+
+    @Test
+    public void TestPartitionByFamiliesMatchesPartitionByRelations() throws Exception
+    {
+        Group v4 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(V4_JSON)), false);
+        assertEquals("automorphisms", 5, v4.ConjugacyClassImages.length);
+        assertArrayEquals("(a b)", new int[] {0, 2, 1, 3, 4}, v4.ConjugacyClassImages[0]);
+        assertEquals("(a b) on {<a>, V4}", 0x14L, v4.ClassMaskImage(0, 0x12L));
+
+        FixOrderSet relations = FixOrderEnumerator.GenerateAllFixOrders(v4);
+        relations.SortRelations();
+        LinkedList<ArrayList<Integer>> expected = Generate.AutomorphismHandler.PartitionBy(
+                relations.FixOrders, v4.ElementClassPermutations, v4.NumElementClasses);
+        assertTrue("some orbits", expected.size() > 1);
+        assertEquals(expected, Generate.AutomorphismHandler.PartitionBy(relations, v4));
+    }
+
+    // C2 x C2 again, but given by two generators of its automorphism group: (a b) and (a b c).
+    public static final String V4_GENERATORS_JSON = "[ [ [ [ \"1\", \"a\", \"b\", \"c\" ] ] ], " +
+            "[ [ [ \"1\" ] ], [ [ \"1\", \"a\" ] ], [ [ \"1\", \"b\" ] ], [ [ \"1\", \"c\" ] ], [ [ \"1\", \"a\", \"b\", \"c\" ] ] ], " +
+            "[ ], [ " + Automorphism("b", "a", "c") + ", " + Automorphism("b", "c", "a") + " ] ]";
+
+    @Test
+    public void TestAutomorphismGeneratorsAreClosedIntoTheListedAutomorphisms() throws Exception
+    {
+        Group listed = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(V4_JSON)), false);
+        Group generated = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(V4_GENERATORS_JSON)), false);
+        assertEquals("automorphisms", 5, generated.ConjugacyClassImages.length);
+
+        FixOrderSet relations = FixOrderEnumerator.GenerateAllFixOrders(listed);
+        relations.SortRelations();
+        assertEquals(Generate.AutomorphismHandler.PartitionBy(relations, listed),
+                Generate.AutomorphismHandler.PartitionBy(relations, generated));
+        assertEquals(Generate.AutomorphismHandler.PartitionBy(relations.FixOrders, listed.ElementClassPermutations, listed.NumElementClasses),
+                Generate.AutomorphismHandler.PartitionBy(relations.FixOrders, generated.ElementClassPermutations, generated.NumElementClasses));
+    }
+
+    // S3, given by two inner automorphisms: conjugation by (1,2) and by (1,2,3).
+    private static final String S3_INNER_GENERATORS_JSON = "[ [ [ [ \"()\", \"(1,3)\", \"(1,2,3)\", \"(2,3)\", \"(1,3,2)\", \"(1,2)\" ] ] ], " +
+            "[ [ [ \"()\" ] ], [ [ \"()\", \"(2,3)\" ], [ \"()\", \"(1,2)\" ], [ \"()\", \"(1,3)\" ] ], " +
+            "[ [ \"()\", \"(1,3,2)\", \"(1,2,3)\" ] ], [ [ \"()\", \"(1,3,2)\", \"(1,2,3)\", \"(2,3)\", \"(1,3)\", \"(1,2)\" ] ] ], " +
+            "[ ], [ " +
+            "[ [\"()\", \"()\"], [\"(1,3)\", \"(2,3)\"], [\"(1,2,3)\", \"(1,3,2)\"], [\"(2,3)\", \"(1,3)\"], [\"(1,3,2)\", \"(1,2,3)\"], [\"(1,2)\", \"(1,2)\"] ], " +
+            "[ [\"()\", \"()\"], [\"(1,3)\", \"(1,2)\"], [\"(1,2,3)\", \"(1,2,3)\"], [\"(2,3)\", \"(1,3)\"], [\"(1,3,2)\", \"(1,3,2)\"], [\"(1,2)\", \"(2,3)\"] ] ] ]";
+
+    @Test
+    public void TestInnerAutomorphismGeneratorsCloseToNone() throws Exception
+    {
+        // inner automorphisms fix every conjugacy class of subgroups, so they fix every fix-order.
+        Group s3 = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(S3_INNER_GENERATORS_JSON)), false);
+        assertEquals("automorphisms", 0, s3.Automorphisms.length);
+        assertEquals("class images", 0, s3.ConjugacyClassImages.length);
+    }
 }
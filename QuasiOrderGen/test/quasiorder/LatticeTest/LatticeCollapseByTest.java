@@ -46,8 +46,8 @@ public class LatticeCollapseByTest extends LatticeFixture
         assertEquals(testTitle + "-full-latOrder", latOrder, latFullName.latOrder);
         assertEquals(testTitle + "-rep-latOrder", latOrder, latRepName.latOrder);
 
-        assertEquals(testTitle + "-full-relation", latBit, latFullName.latBit);
-        assertEquals(testTitle + "-rep-relation", latBit, latRepName.latBit);
+        assertEquals(testTitle + "-full-relation", latBit, latFullName.latBit.ToBitSet());
+        assertEquals(testTitle + "-rep-relation", latBit, latRepName.latBit.ToBitSet());
 
         AssertArrayEquals(testTitle + "-full-names", fullNames, latFullName.names, latOrder);
         AssertArrayEquals(testTitle + "-rep-names", repNames, latRepName.names, latOrder);
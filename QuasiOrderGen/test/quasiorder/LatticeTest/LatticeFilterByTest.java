@@ -67,7 +67,7 @@ public class LatticeFilterByTest extends LatticeFixture
         String testTitle = cur.title + testCaseTitle;
         Lattice lat = filterBy(faithfulOnly, normalOnly, cur);
         assertEquals(testTitle + "latOrder", latOrder, lat.latOrder);
-        assertEquals(testTitle + "relation", latBit, lat.latBit);
+        assertEquals(testTitle + "relation", latBit, lat.latBit.ToBitSet());
         AssertArrayEquals(testTitle + "names", names, lat.names, latOrder);
         AssertArrayEquals(testTitle + "colours", colours, lat.colours, latOrder);
         AssertListOfListEquals(testTitle + "subGraphs", subgraphs, lat.subGraphs);
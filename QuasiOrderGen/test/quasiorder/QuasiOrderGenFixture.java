@@ -68,9 +68,11 @@ public class QuasiOrderGenFixture
 
     static void AssertPermutationsAreEqual(String title, Permutation expected, Permutation actual)
     {
-        assertEquals(title + "-numTwoSwaps", expected.swaps.size(), actual.swaps.size());
-        for(int i=0;i<expected.swaps.size();i++)
-            AssertSwapsAreEqual(title + "-" + i, expected.swaps.get(i), actual.swaps.get(i));
+        ArrayList<TwoSwap> expectedSwaps = expected.Swaps();
+        ArrayList<TwoSwap> actualSwaps = actual.Swaps();
+        assertEquals(title + "-numTwoSwaps", expectedSwaps.size(), actualSwaps.size());
+        for(int i=0;i<expectedSwaps.size();i++)
+            AssertSwapsAreEqual(title + "-" + i, expectedSwaps.get(i), actualSwaps.get(i));
     }
 
     static void AssertSwapsAreEqual(String title, TwoSwap a, TwoSwap b)
@@ -2,6 +2,10 @@ package quasiorder;
 
 import org.junit.Before;
 import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
 import static junit.framework.Assert.*;
 public class RelationSetLatticeOfQuasiOrdersTest extends QuasiOrderGenFixture
 {
@@ -17,11 +21,11 @@ public class RelationSetLatticeOfQuasiOrdersTest extends QuasiOrderGenFixture
     public void BuildRelationOfS2()
     {
         // possible relations: 1011 (x2) and 1111
-        relations.Add(ToFixOrder(StringToBitSet("1011")), StringToBitSet("10"));
-        relations.Add(ToFixOrder(StringToBitSet("1111")), StringToBitSet("01"));
-        relations.Add(ToFixOrder(StringToBitSet("1011")), StringToBitSet("11"));
+        relations.Add(ToFixOrder(StringToBitSet("1011")), 0x1L);
+        relations.Add(ToFixOrder(StringToBitSet("1111")), 0x2L);
+        relations.Add(ToFixOrder(StringToBitSet("1011")), 0x3L);
         relations.SortRelations();
-        assertEquals(StringToBitSet("1011"), relations.GenerateOverallQuasiOrder());
+        assertEquals(StringToBitSet("1011"), relations.GenerateOverallQuasiOrder().ToBitSet());
     }
 
     @Test
@@ -34,14 +38,14 @@ public class RelationSetLatticeOfQuasiOrdersTest extends QuasiOrderGenFixture
         // 3: 100 000 110 000 101 000 100 100 100 011 100 011 [ 13 ]
 
         // add these relations, in order in which they would be generated by the program (which is 2, 3, 0, 1)
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"110"+"000"+"101"+"000"+"100"+"100"+"111"+"111"+"111"+"111")), StringToBitSet("10"));
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"110"+"000"+"101"+"000"+"100"+"100"+"100"+"011"+"100"+"011")), StringToBitSet("11"));
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111")), StringToBitSet("00"));
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"111"+"111"+"100"+"011"+"100"+"011")), StringToBitSet("01"));
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"110"+"000"+"101"+"000"+"100"+"100"+"111"+"111"+"111"+"111")), 0x1L);
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"110"+"000"+"101"+"000"+"100"+"100"+"100"+"011"+"100"+"011")), 0x3L);
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111")), 0x0L);
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"111"+"111"+"100"+"011"+"100"+"011")), 0x2L);
         relations.SortRelations();
 
         // expected overall relation:
-        assertEquals(StringToBitSet("1000"+"1100"+"1010"+"1111"), relations.GenerateOverallQuasiOrder());
+        assertEquals(StringToBitSet("1000"+"1100"+"1010"+"1111"), relations.GenerateOverallQuasiOrder().ToBitSet());
     }
 
     @Test
@@ -49,28 +53,59 @@ public class RelationSetLatticeOfQuasiOrdersTest extends QuasiOrderGenFixture
     {
         // possible relations: (family masks are not important here)
         // add these relations, in order in which they would be generated by the program (which is 3, 2, 1, 0)
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"000"+"111"+"000"+"100"+"100"+"100"+"010"+"100"+"001")), StringToBitSet("11"));
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"100"+"100"+"100"+"010"+"100"+"001")), StringToBitSet("10"));
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"000"+"111"+"000"+"111"+"111"+"111"+"111"+"111"+"111")), StringToBitSet("01"));
-        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111")), StringToBitSet("00"));
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"000"+"111"+"000"+"100"+"100"+"100"+"010"+"100"+"001")), 0x3L);
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"100"+"100"+"100"+"010"+"100"+"001")), 0x1L);
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"000"+"111"+"000"+"111"+"111"+"111"+"111"+"111"+"111")), 0x2L);
+        relations.Add(ToFixOrder(StringToBitSet("100"+"000"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111"+"111")), 0x0L);
         relations.SortRelations();
 
         // expected overall relation:
-        assertEquals(StringToBitSet("1000"+"1100"+"1010"+"1111"), relations.GenerateOverallQuasiOrder());
+        assertEquals(StringToBitSet("1000"+"1100"+"1010"+"1111"), relations.GenerateOverallQuasiOrder().ToBitSet());
     }
 
     @Test
     public void BuildRelationWhereCardinalityOfTwoRelationsAreEqual()
     {
         // relations here do not correspond to an acutal group: order of addition : 3, 1, 0, 2, 4
-        relations.Add(ToFixOrder(StringToBitSet("1100")), StringToBitSet("011"));
-        relations.Add(ToFixOrder(StringToBitSet("1110")), StringToBitSet("001"));
-        relations.Add(ToFixOrder(StringToBitSet("1111")), StringToBitSet("000"));
-        relations.Add(ToFixOrder(StringToBitSet("1101")), StringToBitSet("010"));
-        relations.Add(ToFixOrder(StringToBitSet("1000")), StringToBitSet("100"));
+        relations.Add(ToFixOrder(StringToBitSet("1100")), 0x6L);
+        relations.Add(ToFixOrder(StringToBitSet("1110")), 0x4L);
+        relations.Add(ToFixOrder(StringToBitSet("1111")), 0x0L);
+        relations.Add(ToFixOrder(StringToBitSet("1101")), 0x2L);
+        relations.Add(ToFixOrder(StringToBitSet("1000")), 0x1L);
         relations.SortRelations();
 
         // expected overall relation:
-        assertEquals(StringToBitSet("10000"+"11000"+"10100"+"11110"+"11111"), relations.GenerateOverallQuasiOrder());
+        assertEquals(StringToBitSet("10000"+"11000"+"10100"+"11110"+"11111"), relations.GenerateOverallQuasiOrder().ToBitSet());
+    }
+
+    @Test
+    public void BuildRelationInParallelMatchesPairwiseSubsets()
+    {
+        // random relations on 9 elements, so that each spans two words; sparse ones are subsets of others.
+        Random random = new Random(5);
+        for (int r=0;r<300;r++)
+        {
+            BitSet relation = new BitSet(81);
+            int density = 1 + random.nextInt(8);
+            for (int k=0;k<81;k++)
+                if (random.nextInt(8) < density) relation.set(k);
+            relations.Add(ToFixOrder(relation), r);
+        }
+        relations.SortRelations();
+
+        int numRels = relations.FixOrders.size();
+        BitMatrix overall = relations.GenerateOverallQuasiOrder(4);
+        for (int i=0;i<numRels;i++)
+        {
+            for (int j=0;j<numRels;j++)
+            {
+                BitSet ri = relations.FixOrders.get(i).Relation;
+                BitSet intersection = (BitSet)ri.clone();
+                intersection.and(relations.FixOrders.get(j).Relation);
+                boolean isSubset = intersection.equals(ri) && (i == j || ri.cardinality() != relations.FixOrders.get(j).Relation.cardinality());
+                assertEquals(i + "<=" + j, isSubset, overall.Get(i, j));
+            }
+        }
+        assertEquals("sequential", relations.GenerateOverallQuasiOrder(), overall);
     }
 }
@@ -0,0 +1,172 @@
+package quasiorder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubgroupCombinationsTest extends QuasiOrderGenFixture
+{
+    // every subset of 6 elements, which is closed under both intersection and union.
+    private static final int NumSets = 64;
+
+    private BitSet[] subsets;
+
+    @Before
+    public void setUp()
+    {
+        subsets = new BitSet[NumSets];
+        for (int i=0;i<NumSets;i++)
+            subsets[i] = BitSet.valueOf(new long[] { i });
+    }
+
+    @Test
+    public void TestParallelTablesMatchSequential()
+    {
+        int[][] intersections = GroupUtil.GenerateIntersections(NumSets, subsets);
+        int[][] unions = GroupUtil.GenerateUnions(NumSets, subsets);
+        for (int i=0;i<NumSets;i++)
+        {
+            for (int j=0;j<NumSets;j++)
+            {
+                assertEquals("intersection-" + i + "-" + j, i & j, intersections[i][j]);
+                assertEquals("union-" + i + "-" + j, i | j, unions[i][j]);
+            }
+        }
+
+        Group.IBitSetOperation and = new Group.IBitSetOperation()
+        {
+            public void combine(BitSet b1, BitSet b2) { b1.and(b2); }
+        };
+        assertArrayEquals("parallel", intersections, GroupUtil.GenerateCombinations(NumSets, subsets, and, false, 4));
+    }
+
+    @Test
+    public void TestUnionsWhichAreNotSubsetsAreMissing()
+    {
+        // without {0, 1}, the union of {0} and {1} has nowhere to go.
+        BitSet[] sets = subsets.clone();
+        sets[3] = sets[0];
+
+        int[][] unions = GroupUtil.GenerateCombinations(NumSets, sets, new Group.IBitSetOperation()
+        {
+            public void combine(BitSet b1, BitSet b2) { b1.or(b2); }
+        }, true, 4);
+        assertEquals("missing", -1, unions[1][2]);
+        assertEquals("first of equal sets", 0, unions[0][3]);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void TestIntersectionsWhichAreNotSubsetsThrow()
+    {
+        BitSet[] sets = subsets.clone();
+        sets[0] = sets[NumSets - 1];
+        GroupUtil.GenerateIntersections(NumSets, sets);
+    }
+
+    @Test
+    public void TestSparseUnionsMatchDense()
+    {
+        // without the sets holding both 0 and 1, those unions have nowhere to go.
+        BitSet[] sets = new BitSet[NumSets];
+        for (int i=0;i<NumSets;i++)
+            sets[i] = ((i & 3) == 3) ? subsets[i & ~1] : subsets[i];
+
+        int[][] dense = GroupUtil.GenerateUnions(NumSets, sets);
+        for (int parallelism=1;parallelism<=4;parallelism+=3)
+        {
+            GroupUtil.SparseSubgroupTable sparse = GroupUtil.GenerateSparseCombinations(NumSets, sets, new Group.IBitSetOperation()
+            {
+                public void combine(BitSet b1, BitSet b2) { b1.or(b2); }
+            }, parallelism);
+
+            int numEntries = 0;
+            int[] row = new int[NumSets];
+            for (int i=0;i<NumSets;i++)
+            {
+                sparse.GetRow(i, row);
+                assertArrayEquals("row-" + i, dense[i], row);
+                for (int j=0;j<NumSets;j++)
+                {
+                    assertEquals("union-" + i + "-" + j, dense[i][j], sparse.Get(i, j));
+                    if (i != j && dense[i][j] != -1) numEntries++;
+                }
+            }
+            assertEquals("entries", numEntries, sparse.NumEntries());
+            assertTrue("sparse", numEntries < NumSets * (NumSets - 1));
+        }
+    }
+
+    @Test
+    public void TestLazyIntersectionsKeepOnlyTheRowsLookedUp()
+    {
+        int[][] dense = GroupUtil.GenerateIntersections(NumSets, subsets);
+        GroupUtil.LazySubgroupTable lazy = (GroupUtil.LazySubgroupTable)GroupUtil.LazyIntersections(subsets);
+
+        int[] row = new int[NumSets];
+        for (int i=0;i<NumSets;i++)
+        {
+            lazy.GetRow(i, row);
+            assertArrayEquals("row-" + i, dense[i], row);
+        }
+        assertEquals("rows read", 0, lazy.NumCachedRows());
+
+        assertEquals("lookup", dense[5][6], lazy.Get(5, 6));
+        assertEquals("cached lookup", dense[5][7], lazy.Get(5, 7));
+        assertEquals("rows looked up", 1, lazy.NumCachedRows());
+    }
+
+    @Test
+    public void TestLazyIntersectionsOfS3MatchEager() throws Exception
+    {
+        Group eager = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true);
+        Group lazy = Group.FromRawGroup(Group.RawGroup.FromJSON(new StringReader(InputParsingTest.JSON_STRING)), true, true);
+
+        assertArrayEquals("class intersections", eager.ClassIntersections, lazy.ClassIntersections);
+        assertArrayEquals("class unions", eager.ClassUnions, lazy.ClassUnions);
+        for (int i=0;i<eager.NumSubgroups;i++)
+            for (int j=0;j<eager.NumSubgroups;j++)
+                assertEquals("intersection-" + i + "-" + j, eager.SubgroupIntersections.Get(i, j), lazy.SubgroupIntersections.Get(i, j));
+    }
+
+    @Test
+    public void TestClassTablesReadOneRowOfEachClass()
+    {
+        // D16 has classes of 2 and 4 conjugate subgroups, whose rows differ.
+        Group d16 = Group.FromCayleyTable(CayleyGroupTest.DihedralTable(8), null, true);
+
+        final BitSet rowsRead = new BitSet();
+        final Group.ISubgroupTable intersections = d16.SubgroupIntersections;
+        Group.ISubgroupTable countedIntersections = new Group.ISubgroupTable()
+        {
+            public int Get(int a, int b) { return intersections.Get(a, b); }
+            public void GetRow(int a, int[] row) { rowsRead.set(a); intersections.GetRow(a, row); }
+        };
+        Group counted = new Group(d16.NumElements, d16.NumSubgroups, d16.NumConjugacyClasses, d16.ElementMasks,
+                d16.ElementNames, d16.SubgroupMasks, d16.SubgroupNames, countedIntersections, d16.SubgroupUnions,
+                d16.ConjugacyClasses, d16.IsSubgroupNormal, d16.Automorphisms, d16.Permutations);
+        assertEquals("rows read", d16.NumConjugacyClasses, rowsRead.cardinality());
+
+        // every pair of subgroups, lifted to their classes.
+        for (Group.ISubgroupTable table : new Group.ISubgroupTable[] { d16.SubgroupIntersections, d16.SubgroupUnions })
+        {
+            long[][] expected = new long[d16.NumConjugacyClasses][d16.NumConjugacyClasses * d16.ClassMaskWords];
+            for (int a=0;a<d16.NumSubgroups;a++)
+            {
+                for (int b=0;b<d16.NumSubgroups;b++)
+                {
+                    int c = table.Get(a, b);
+                    if (c == -1) continue;
+                    int k = d16.SubgroupClasses[c];
+                    expected[d16.SubgroupClasses[a]][d16.SubgroupClasses[b] * d16.ClassMaskWords + k / Long.SIZE] |= 1L << k;
+                }
+            }
+            assertArrayEquals("lifted", expected, table == d16.SubgroupUnions ? counted.WideClassUnions : counted.WideClassIntersections);
+        }
+    }
+}
@@ -16,13 +16,12 @@ EmptyAuto := function(f,g)
 	AppendTo(f,"\t[ ]\n");	
 end;
 
-ExportTableOf := function(f,g)
-	local Outer, p, gi, firstP, firstG;
-	Outer:=Filtered(AutomorphismGroup(g), i -> not IsInnerAutomorphism(i));
+ExportTablesOf := function(f,g,autos)
+	local p, gi, firstP, firstG;
 
 	AppendTo(f,"\t[");	
 	firstP:=true;
-	for p in Outer do
+	for p in autos do
 		if firstP then 
 			firstP:=false;
 		else
@@ -45,6 +44,16 @@ ExportTableOf := function(f,g)
 	AppendTo(f,"\n\t]");
 end;
 
+ExportTableOf := function(f,g)
+	ExportTablesOf(f, g, Filtered(AutomorphismGroup(g), i -> not IsInnerAutomorphism(i)));
+end;
+
+# only the generators of the automorphism group, which QuasiOrderGen closes into the whole group.
+ExportGeneratorsOf := function(f,g)
+	AppendTo(f,"\t[ ],\n");
+	ExportTablesOf(f, g, GeneratorsOfGroup(AutomorphismGroup(g)));
+end;
+
 ExportWithGroup:= function(f,g,h,i)
 
 	local csg, first, es, cr, c;
@@ -80,7 +89,7 @@ end;
 
 ExportGroup:=function(f,g)
 	# ExportWithGroup(f, g, ExportTableOf, csg -> false );
-	ExportWithGroup(f, g, ExportTableOf, csg -> Length(csg) > 20);
+	ExportWithGroup(f, g, ExportGeneratorsOf, csg -> Length(csg) > 20);
 end;
 
 CountExportAllGroups := function(lb, ub)
@@ -25,7 +25,7 @@ for file in $1/*.lat
 do
 	echoE ""
 	echoE "Drawing: $file"
-	tred $file | dot -T$2 > ${file%.*}.$2
+	dot -T$2 $file > ${file%.*}.$2
 done
 
 mkdir $1/out